@@ -30,33 +30,44 @@ import com.thoughtworks.xstream.converters.DataHolder;
 import com.thoughtworks.xstream.converters.UnmarshallingContext;
 import com.thoughtworks.xstream.io.HierarchicalStreamDriver;
 import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import hudson.diagnosis.OldDataMonitor;
 import hudson.model.Descriptor;
 import hudson.util.AtomicFileWriter;
 import hudson.util.XStream2;
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.io.SequenceInputStream;
 import java.io.Serializable;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
+import java.nio.file.StandardOpenOption;
 import java.util.Collections;
 import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.xml.XMLConstants;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParserFactory;
+import jenkins.util.SystemProperties;
 import org.apache.commons.io.IOUtils;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
 import org.xml.sax.Attributes;
 import org.xml.sax.InputSource;
 import org.xml.sax.Locator;
@@ -161,6 +172,9 @@ public final class XmlFile {
         if (LOGGER.isLoggable(Level.FINE)) {
             LOGGER.fine("Reading " + file);
         }
+        if (POOLED_READERS && xs instanceof XStream2) {
+            return read(((XStream2) xs).getDriver(), xs::unmarshal);
+        }
         try (InputStream in = new BufferedInputStream(Files.newInputStream(file.toPath()))) {
             return xs.fromXML(in);
         } catch (RuntimeException | Error e) {
@@ -188,6 +202,9 @@ public final class XmlFile {
     }
 
     private Object unmarshal(Object o, boolean nullOut) throws IOException {
+        if (POOLED_READERS) {
+            return read(DEFAULT_DRIVER, reader -> nullOut ? ((XStream2) xs).unmarshal(reader, o, null, true) : xs.unmarshal(reader, o));
+        }
         try (InputStream in = new BufferedInputStream(Files.newInputStream(file.toPath()))) {
             // TODO: expose XStream the driver from XStream
             if (nullOut) {
@@ -200,6 +217,68 @@ public final class XmlFile {
         }
     }
 
+    /**
+     * Parses the file with a parser reused by the current thread, see {@link XStream2#createPooledReader}.
+     * A file small enough is read with as few reads as possible into a buffer, kept by the thread if it is small too.
+     */
+    private Object read(HierarchicalStreamDriver driver, Function<HierarchicalStreamReader, Object> unmarshaller) throws IOException {
+        // taken while in use, as unmarshalling may read another file
+        byte[] kept = BUFFER.get();
+        BUFFER.remove();
+        DetachableInputStream in = null;
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < MAX_BUFFER) {
+                byte[] buf = kept;
+                if (buf == null || buf.length <= size) {
+                    // room for the file to grow by a little before being read
+                    buf = new byte[Math.max(8192, (int) size + 1024)];
+                    if (buf.length <= MAX_KEPT_BUFFER) {
+                        kept = buf;
+                    }
+                }
+                ByteBuffer bb = ByteBuffer.wrap(buf);
+                while (ch.read(bb) >= 0 && bb.hasRemaining()) {
+                    // keep reading
+                }
+                in = new DetachableInputStream(bb.hasRemaining() ? new ByteArrayInputStream(buf, 0, bb.position())
+                        // it did grow, so read the rest from the file
+                        : new SequenceInputStream(new ByteArrayInputStream(buf), new BufferedInputStream(Channels.newInputStream(ch))));
+            } else {
+                in = new DetachableInputStream(new BufferedInputStream(Channels.newInputStream(ch)));
+            }
+            HierarchicalStreamReader reader = XStream2.createPooledReader(driver, in);
+            try {
+                return unmarshaller.apply(reader);
+            } finally {
+                reader.close();
+            }
+        } catch (RuntimeException | Error e) {
+            throw new IOException("Unable to read " + file, e);
+        } finally {
+            if (in != null) {
+                // the pooled parser holds on to its last input until it parses the next one
+                in.detach();
+            }
+            if (kept != null) {
+                BUFFER.set(kept);
+            }
+        }
+    }
+
+    /**
+     * Input which can be let go of while something else still refers to it.
+     */
+    private static final class DetachableInputStream extends FilterInputStream {
+        DetachableInputStream(InputStream in) {
+            super(in);
+        }
+
+        void detach() {
+            in = InputStream.nullInputStream();
+        }
+    }
+
     public void write(Object o) throws IOException {
         if (LOGGER.isLoggable(Level.FINEST)) {
             LOGGER.log(Level.FINEST, new Throwable(), () -> "Writing " + file);
@@ -382,6 +461,26 @@ public final class XmlFile {
 
     private static final Logger LOGGER = Logger.getLogger(XmlFile.class.getName());
 
+    /**
+     * Whether to parse files with parsers and buffers reused by each thread, which saves setting them up for every file
+     * when many are loaded in a row, as during startup.
+     */
+    @Restricted(NoExternalUse.class)
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* Script Console modifiable */ boolean POOLED_READERS = SystemProperties.getBoolean(XmlFile.class.getName() + ".pooledReaders", true);
+
+    /**
+     * Size of the largest file read into a buffer.
+     */
+    private static final int MAX_BUFFER = 1024 * 1024;
+
+    /**
+     * Size of the largest buffer kept by a thread for the next file; larger ones are only used once.
+     */
+    private static final int MAX_KEPT_BUFFER = 64 * 1024;
+
+    private static final ThreadLocal<byte[]> BUFFER = new ThreadLocal<>();
+
     private static final HierarchicalStreamDriver DEFAULT_DRIVER = XStream2.getDefaultDriver();
 
     private static final XStream DEFAULT_XSTREAM = new XStream2(DEFAULT_DRIVER);
@@ -0,0 +1,254 @@
+package hudson.console;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Console logs annotated as HTML, shared between everyone watching the same build.
+ *
+ * <p>
+ * {@link AnnotatedLargeText#writeHtmlTo} produces the same markup for the same bytes
+ * whenever it starts from the same {@link ConsoleAnnotator} state,
+ * so the markup of each range of a log it annotates is kept here,
+ * keyed by the log, the offset the range starts at and the serialized state it starts from.
+ * A later request from that offset in that state picks the markup up and carries on from the end of the range,
+ * so viewers polling a running build follow the same chain of ranges and only annotate what is new.
+ * The least recently used ranges are dropped once the markup kept exceeds {@link #MAX_SIZE}.
+ *
+ * <p>
+ * Off by default, as a {@link ConsoleAnnotator} or {@link ConsoleNote} marking up text differently for different users
+ * would have one user see what was annotated for another.
+ */
+@Restricted(NoExternalUse.class)
+public final class AnnotatedHtmlCache {
+    /**
+     * Whether to share annotated console output between requests.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* Script Console modifiable */ boolean ENABLED = SystemProperties.getBoolean(AnnotatedHtmlCache.class.getName() + ".enabled");
+
+    /**
+     * Approximate number of bytes of memory the cache may use.
+     * A single range larger than an eighth of this is not kept.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* Script Console modifiable */ long MAX_SIZE = SystemProperties.getLong(AnnotatedHtmlCache.class.getName() + ".maxSize", 32L * 1024 * 1024);
+
+    private static final AnnotatedHtmlCache INSTANCE = new AnnotatedHtmlCache();
+
+    /**
+     * In access order, so that the eldest is the least recently used.
+     */
+    private final LinkedHashMap<Key, Chunk> chunks = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+
+    static @NonNull AnnotatedHtmlCache get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Identifies a log file, telling it apart from a later one written at the same place.
+     */
+    static final class Log {
+        private final Path path;
+        private final Object identity;
+
+        private Log(Path path, Object identity) {
+            this.path = path;
+            this.identity = identity;
+        }
+
+        /**
+         * @return null if there is no such file
+         */
+        static @CheckForNull Log of(@CheckForNull File file) throws IOException {
+            if (file == null) {
+                return null;
+            }
+            Path path = file.toPath();
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                return null;
+            }
+            Object identity = attributes.fileKey();
+            return new Log(path, identity != null ? identity : attributes.creationTime());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Log)) {
+                return false;
+            }
+            Log that = (Log) o;
+            return path.equals(that.path) && identity.equals(that.identity);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, identity);
+        }
+    }
+
+    private static final class Key {
+        private final Log log;
+        private final long start;
+        private final ByteBuffer state;
+
+        Key(Log log, long start, byte[] state) {
+            this.log = log;
+            this.start = start;
+            this.state = ByteBuffer.wrap(state);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) o;
+            return start == that.start && log.equals(that.log) && state.equals(that.state);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(log, start, state);
+        }
+    }
+
+    /**
+     * Markup of a range of a log.
+     */
+    static final class Chunk {
+        /**
+         * Offset right after the range.
+         */
+        final long end;
+        final String html;
+        /**
+         * Serialized {@link ConsoleAnnotator} to annotate what follows with.
+         */
+        final byte[] state;
+
+        Chunk(long end, String html, byte[] state) {
+            this.end = end;
+            this.html = html;
+            this.state = state;
+        }
+
+        long size() {
+            return 2L * html.length() + state.length + 64;
+        }
+    }
+
+    /**
+     * Finds the markup of the range starting at an offset when annotated from a given state.
+     */
+    synchronized @CheckForNull Chunk get(@NonNull Log log, long start, @NonNull byte[] state) {
+        return chunks.get(new Key(log, start, state));
+    }
+
+    /**
+     * Keeps the markup of a range, unless a longer one from the same offset and state is already kept.
+     */
+    synchronized void put(@NonNull Log log, long start, @NonNull byte[] state, @NonNull Chunk chunk) {
+        long chunkSize = chunk.size();
+        if (chunkSize > MAX_SIZE / 8) {
+            return;
+        }
+        Key key = new Key(log, start, state);
+        Chunk old = chunks.get(key);
+        if (old != null) {
+            if (old.end >= chunk.end) {
+                return;
+            }
+            size -= old.size();
+        }
+        chunks.put(key, chunk);
+        size += chunkSize;
+        Iterator<Map.Entry<Key, Chunk>> it = chunks.entrySet().iterator();
+        while (size > MAX_SIZE && it.hasNext()) {
+            size -= it.next().getValue().size();
+            it.remove();
+        }
+    }
+
+    synchronized long size() {
+        return size;
+    }
+
+    synchronized void clear() {
+        chunks.clear();
+        size = 0;
+    }
+
+    /**
+     * Passes markup through while keeping a copy of it, as long as it is small enough to be cached.
+     */
+    static final class Capture extends Writer {
+        private final Writer out;
+        private StringBuilder copy = new StringBuilder();
+
+        Capture(Writer out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(@NonNull char[] buf, int off, int len) throws IOException {
+            out.write(buf, off, len);
+            if (copy != null) {
+                if (2L * (copy.length() + len) > MAX_SIZE / 8) {
+                    copy = null;
+                } else {
+                    copy.append(buf, off, len);
+                }
+            }
+        }
+
+        @Override
+        public void write(@NonNull String str, int off, int len) throws IOException {
+            out.write(str, off, len);
+            if (copy != null) {
+                if (2L * (copy.length() + len) > MAX_SIZE / 8) {
+                    copy = null;
+                } else {
+                    copy.append(str, off, off + len);
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+
+        /**
+         * @return what was written, or null if it was too large to keep
+         */
+        @CheckForNull String getCopy() {
+            return copy != null ? copy.toString() : null;
+        }
+    }
+}
@@ -28,19 +28,34 @@ package hudson.console;
 
 import static java.lang.Math.abs;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.CheckReturnValue;
+import edu.umd.cs.findbugs.annotations.NonNull;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import hudson.remoting.ObjectInputStreamEx;
+import hudson.util.BlockCompressedFile;
+import hudson.util.ByteArrayOutputStream2;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
 import java.util.Base64;
 import java.util.concurrent.TimeUnit;
 import java.util.zip.GZIPInputStream;
@@ -48,14 +63,19 @@ import java.util.zip.GZIPOutputStream;
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
 import javax.crypto.CipherOutputStream;
+import javax.servlet.http.HttpServletResponse;
 import jenkins.model.Jenkins;
 import jenkins.security.CryptoConfidentialKey;
+import org.apache.commons.io.IOUtils;
 import org.jenkinsci.remoting.util.AnonymousClassWarnings;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.Beta;
 import org.kohsuke.stapler.Stapler;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
 import org.kohsuke.stapler.framework.io.ByteBuffer;
 import org.kohsuke.stapler.framework.io.LargeText;
+import org.kohsuke.stapler.framework.io.WriterOutputStream;
 
 /**
  * Extension to {@link LargeText} that handles annotations by {@link ConsoleAnnotator}.
@@ -80,14 +100,56 @@ public class AnnotatedLargeText<T> extends LargeText {
      */
     private T context;
 
+    /**
+     * Where the text is read from instead, if compressed in blocks.
+     */
+    private final @CheckForNull BlockCompressedFile blocks;
+
+    /**
+     * The file the text is read from, if uncompressed.
+     */
+    private final @CheckForNull File file;
+
+    /**
+     * The file the text is read from, if compressed with gzip.
+     */
+    private final @CheckForNull File gzipped;
+
+    /**
+     * The text, if held in memory.
+     */
+    private final @CheckForNull ByteBuffer memory;
+
     public AnnotatedLargeText(File file, Charset charset, boolean completed, T context) {
         super(file, charset, completed, true);
         this.context = context;
+        this.blocks = null;
+        this.file = file != null && !file.getName().endsWith(".gz") ? file : null;
+        this.gzipped = file != null && file.getName().endsWith(".gz") ? file : null;
+        this.memory = null;
+    }
+
+    /**
+     * Serves a {@link BlockCompressedFile}, decompressing only the blocks from the requested offset.
+     * @since TODO
+     */
+    @Restricted(Beta.class)
+    public AnnotatedLargeText(@NonNull BlockCompressedFile blocks, Charset charset, boolean completed, T context) {
+        super(new ByteBuffer(), charset, completed);
+        this.context = context;
+        this.blocks = blocks;
+        this.file = null;
+        this.gzipped = null;
+        this.memory = null;
     }
 
     public AnnotatedLargeText(ByteBuffer memory, Charset charset, boolean completed, T context) {
         super(memory, charset, completed);
         this.context = context;
+        this.blocks = null;
+        this.file = null;
+        this.gzipped = null;
+        this.memory = memory;
     }
 
     public void doProgressiveHtml(StaplerRequest req, StaplerResponse rsp) throws IOException {
@@ -102,6 +164,182 @@ public class AnnotatedLargeText<T> extends LargeText {
         doProgressText(req, rsp);
     }
 
+    @Override
+    public long length() {
+        if (blocks == null) {
+            return super.length();
+        }
+        try {
+            return blocks.length();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Reader readAll() throws IOException {
+        if (blocks == null) {
+            return super.readAll();
+        }
+        return new InputStreamReader(blocks.read(0), charset);
+    }
+
+    /**
+     * Gets the offset at which a line starts, using the {@link LineOffsetIndex} of the log if there is one.
+     *
+     * @param line line number counted from 0
+     * @return the offset, or -1 if the text has fewer lines
+     * @since TODO
+     */
+    @Restricted(Beta.class)
+    public long getLineOffset(long line) throws IOException {
+        if (line < 0) {
+            throw new IllegalArgumentException("negative line " + line);
+        }
+        if (file != null) {
+            LineOffsetIndex index = LineOffsetIndex.of(file, isComplete());
+            if (index != null) {
+                return index.getOffset(line);
+            }
+        }
+        if (line == 0) {
+            return 0;
+        }
+        long remaining = line;
+        long pos = 0;
+        try (InputStream in = read(0)) {
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                for (int i = 0; i < n; i++) {
+                    if (buf[i] == '\n' && --remaining == 0) {
+                        return pos + i + 1;
+                    }
+                }
+                pos += n;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Like {@link LargeText#doProgressText}, also accepting a {@code line} parameter instead of {@code start}
+     * to begin with that line, counted from 0, or at the end if the text does not have that many lines yet.
+     */
+    @Override
+    public void doProgressText(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        String line = req.getParameter("line");
+        String s = req.getParameter("start");
+        File source = file != null ? file : gzipped;
+        if (blocks == null && (line == null || s != null || source != null && !source.exists())) {
+            super.doProgressText(req, rsp);
+            return;
+        }
+        // as in LargeText, for a source or a parameter it does not know about
+        setContentType(rsp);
+        rsp.setStatus(HttpServletResponse.SC_OK);
+
+        long start = 0;
+        if (s != null) {
+            start = Long.parseLong(s);
+        } else if (line != null) {
+            start = getLineOffset(Long.parseLong(line));
+            if (start < 0) {
+                start = length();
+            }
+        }
+        if (length() < start) {
+            start = 0; // text rolled over
+        }
+
+        if (isHtml()) {
+            // X-ConsoleAnnotator is only known once the text is annotated
+            StringWriter spool = new StringWriter();
+            long r = writeLogTo(start, spool);
+
+            rsp.addHeader("X-Text-Size", String.valueOf(r));
+            if (!isComplete()) {
+                rsp.addHeader("X-More-Data", "true");
+            }
+            try (Writer w = rsp.getCompressedWriter(req)) {
+                w.write(spool.toString());
+            }
+            return;
+        }
+
+        // work out where the complete lines end first, so the headers can be sent before the text is streamed
+        boolean complete = isComplete();
+        long end = endOfLines(start, complete);
+        rsp.addHeader("X-Text-Size", String.valueOf(end));
+        if (!complete) {
+            rsp.addHeader("X-More-Data", "true");
+        }
+        try (OutputStream out = new PlainTextConsoleOutputStream(new WriterOutputStream(rsp.getCompressedWriter(req), charset))) {
+            writeRawTo(start, end, out);
+        }
+    }
+
+    /**
+     * Offset just after the last complete line from {@code start}, or the end of a complete log.
+     */
+    private long endOfLines(long start, boolean complete) throws IOException {
+        long length = length();
+        if (complete) {
+            return length;
+        }
+        byte[] buf = new byte[8192];
+        long to = length;
+        while (to > start) {
+            long from = Math.max(start, to - buf.length);
+            int n = (int) (to - from);
+            try (InputStream in = read(from)) {
+                n = in.readNBytes(buf, 0, n);
+            }
+            for (int i = n - 1; i >= 0; i--) {
+                if (buf[i] == '\n') {
+                    return from + i + 1;
+                }
+            }
+            to = from;
+        }
+        return start;
+    }
+
+    /**
+     * Copies the log from {@code start} up to {@code end}.
+     */
+    private void writeRawTo(long start, long end, OutputStream out) throws IOException {
+        try (InputStream in = read(start)) {
+            byte[] buf = new byte[8192];
+            long remaining = end - start;
+            while (remaining > 0) {
+                int n = in.read(buf, 0, (int) Math.min(buf.length, remaining));
+                if (n == -1) {
+                    break;
+                }
+                out.write(buf, 0, n);
+                remaining -= n;
+            }
+        }
+    }
+
+    /**
+     * Reads the raw text from an offset.
+     */
+    private InputStream read(long start) throws IOException {
+        if (blocks != null) {
+            return blocks.read(start);
+        }
+        if (file != null) {
+            FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            ch.position(start);
+            return Channels.newInputStream(ch);
+        }
+        InputStream in = memory != null ? memory.newInputStream() : new GZIPInputStream(Files.newInputStream(gzipped.toPath()));
+        IOUtils.skip(in, start);
+        return in;
+    }
+
     /**
      * For reusing code between text/html and text/plain, we run them both through the same code path
      * and use this request attribute to differentiate.
@@ -150,6 +388,8 @@ public class AnnotatedLargeText<T> extends LargeText {
     public long writeLogTo(long start, Writer w) throws IOException {
         if (isHtml())
             return writeHtmlTo(start, w);
+        else if (blocks != null)
+            return writeLogTo(start, new WriterOutputStream(w, charset));
         else
             return super.writeLogTo(start, w);
     }
@@ -161,7 +401,7 @@ public class AnnotatedLargeText<T> extends LargeText {
     @CheckReturnValue
     @Override
     public long writeLogTo(long start, OutputStream out) throws IOException {
-        return super.writeLogTo(start, new PlainTextConsoleOutputStream(out));
+        return writeRawTo(start, new PlainTextConsoleOutputStream(out));
     }
 
     /**
@@ -170,20 +410,104 @@ public class AnnotatedLargeText<T> extends LargeText {
      */
     @CheckReturnValue
     public long writeRawLogTo(long start, OutputStream out) throws IOException {
-        return super.writeLogTo(start, out);
+        if (file != null && isComplete()) {
+            // nothing to look at in between, so send it straight from the file
+            try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                WritableByteChannel target = Channels.newChannel(out);
+                long pos = start;
+                long size = ch.size();
+                while (pos < size) {
+                    long n = ch.transferTo(pos, size - pos, target);
+                    if (n <= 0) {
+                        break;
+                    }
+                    pos += n;
+                }
+                out.flush();
+                return Math.max(start, pos);
+            } catch (NoSuchFileException e) {
+                // fall back to how LargeText deals with it
+            }
+        }
+        return writeRawTo(start, out);
+    }
+
+    /**
+     * Like {@link LargeText#writeLogTo(long, OutputStream)}, writing only complete lines of an incomplete log.
+     */
+    private long writeRawTo(long start, OutputStream out) throws IOException {
+        if (blocks == null) {
+            return super.writeLogTo(start, out);
+        }
+        long written = 0;
+        try (InputStream in = blocks.read(start)) {
+            ByteArrayOutputStream2 partial = new ByteArrayOutputStream2();
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                if (isComplete()) {
+                    out.write(buf, 0, n);
+                    written += n;
+                    continue;
+                }
+                int last = n - 1;
+                while (last >= 0 && buf[last] != '\n') {
+                    last--;
+                }
+                if (last < 0) {
+                    partial.write(buf, 0, n);
+                    continue;
+                }
+                partial.writeTo(out);
+                written += partial.size();
+                partial.reset();
+                out.write(buf, 0, last + 1);
+                written += last + 1;
+                partial.write(buf, last + 1, n - last - 1);
+            }
+        }
+        out.flush();
+        return start + written;
     }
 
     @CheckReturnValue
     public long writeHtmlTo(long start, Writer w) throws IOException {
-        ConsoleAnnotationOutputStream<T> caw = new ConsoleAnnotationOutputStream<>(
-                w, createAnnotator(Stapler.getCurrentRequest()), context, charset);
-        long r = super.writeLogTo(start, caw);
+        ConsoleAnnotator<T> ann = createAnnotator(Stapler.getCurrentRequest());
+        AnnotatedHtmlCache.Log log = AnnotatedHtmlCache.ENABLED ? AnnotatedHtmlCache.Log.of(blocks != null ? blocks.getFile() : file) : null;
+        long r;
+        if (log == null) {
+            ConsoleAnnotationOutputStream<T> caw = new ConsoleAnnotationOutputStream<>(w, ann, context, charset);
+            r = writeRawTo(start, caw);
+            ann = caw.getConsoleAnnotator();
+        } else {
+            // reuse what was already annotated from here in the same state, then annotate the rest
+            AnnotatedHtmlCache cache = AnnotatedHtmlCache.get();
+            byte[] state = serialize(ann);
+            long pos = start;
+            AnnotatedHtmlCache.Chunk chunk;
+            while ((chunk = cache.get(log, pos, state)) != null) {
+                w.write(chunk.html);
+                pos = chunk.end;
+                state = chunk.state;
+            }
+            if (pos > start) {
+                ann = deserialize(state);
+            }
+            AnnotatedHtmlCache.Capture capture = new AnnotatedHtmlCache.Capture(w);
+            ConsoleAnnotationOutputStream<T> caw = new ConsoleAnnotationOutputStream<>(capture, ann, context, charset);
+            r = writeRawTo(pos, caw);
+            ann = caw.getConsoleAnnotator();
+            String html = capture.getCopy();
+            if (r > pos && html != null) {
+                cache.put(log, pos, state, new AnnotatedHtmlCache.Chunk(r, html, serialize(ann)));
+            }
+        }
 
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         Cipher sym = PASSING_ANNOTATOR.encrypt();
         ObjectOutputStream oos = AnonymousClassWarnings.checkingObjectOutputStream(new GZIPOutputStream(new CipherOutputStream(baos, sym)));
         oos.writeLong(System.currentTimeMillis()); // send timestamp to prevent a replay attack
-        oos.writeObject(caw.getConsoleAnnotator());
+        oos.writeObject(ann);
         oos.close();
         StaplerResponse rsp = Stapler.getCurrentResponse();
         if (rsp != null)
@@ -191,6 +515,23 @@ public class AnnotatedLargeText<T> extends LargeText {
         return r;
     }
 
+    private static byte[] serialize(ConsoleAnnotator<?> ann) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = AnonymousClassWarnings.checkingObjectOutputStream(baos)) {
+            oos.writeObject(ann);
+        }
+        return baos.toByteArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    private ConsoleAnnotator<T> deserialize(byte[] state) throws IOException {
+        try (ObjectInputStream ois = new ObjectInputStreamEx(new ByteArrayInputStream(state), Jenkins.get().pluginManager.uberClassLoader)) {
+            return getConsoleAnnotator(ois);
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+
     /**
      * Used for sending the state of ConsoleAnnotator to the client, because we are deserializing this object later.
      */
@@ -107,9 +107,11 @@ public class ConsoleAnnotationOutputStream<T> extends LineTransformationOutputSt
 
                 int rest = sz - next;
                 ByteArrayInputStream b = new ByteArrayInputStream(in, next, rest);
+                int endOfNote = ConsoleNote.findEndOfNote(in, next, sz);
 
                 try {
-                    final ConsoleNote a = ConsoleNote.readFrom(new DataInputStream(b));
+                    // a well-formed note may well have been decoded before
+                    final ConsoleNote a = endOfNote >= 0 ? ConsoleNote.readFrom(in, next, endOfNote) : ConsoleNote.readFrom(new DataInputStream(b));
                     if (a != null) {
                         if (annotators == null)
                             annotators = new ArrayList<>();
@@ -125,7 +127,7 @@ public class ConsoleAnnotationOutputStream<T> extends LineTransformationOutputSt
                     LOGGER.log(Level.FINE, "Failed to resurrect annotation from \"" + SourceCodeEscapers.javaCharEscaper().escape(new String(in, next, rest, Charset.defaultCharset())) + "\"", e);
                 }
 
-                int bytesUsed = rest - b.available(); // bytes consumed by annotations
+                int bytesUsed = endOfNote >= 0 ? endOfNote - next : rest - b.available(); // bytes consumed by annotations
                 written += bytesUsed;
 
 
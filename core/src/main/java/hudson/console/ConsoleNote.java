@@ -289,6 +289,25 @@ public abstract class ConsoleNote<T> implements Serializable, Describable<Consol
         }
     }
 
+    /**
+     * Like {@link #readFrom(DataInputStream)}, for a note {@linkplain #findEndOfNote found} in a buffer,
+     * reusing what was decoded the last time the same note was read.
+     *
+     * @param start where the preamble starts
+     * @param end the offset following the postamble
+     */
+    static ConsoleNote<?> readFrom(byte[] buf, int start, int end) throws IOException, ClassNotFoundException {
+        DecodedNoteCache cache = DecodedNoteCache.get();
+        ConsoleNote<?> note = cache.lookup(buf, start, end);
+        if (note == null) {
+            note = readFrom(new DataInputStream(new ByteArrayInputStream(buf, start, end - start)));
+            if (note != null && !INSECURE) { // so signed
+                cache.put(buf, start, end, note);
+            }
+        }
+        return note;
+    }
+
     @SuppressFBWarnings(value = "OBJECT_DESERIALIZATION", justification = "Deserialization is protected by logic.")
     private static ConsoleNote getConsoleNote(ObjectInputStream ois) throws IOException, ClassNotFoundException {
         return (ConsoleNote) ois.readObject();
@@ -335,26 +354,63 @@ public abstract class ConsoleNote<T> implements Serializable, Describable<Consol
     @SuppressFBWarnings(value = "MS_PKGPROTECT", justification = "used in several plugins")
     public static final byte[] POSTAMBLE = POSTAMBLE_STR.getBytes(StandardCharsets.UTF_8);
 
+    /**
+     * How far {@link #findPreamble} may move on when the byte facing the end of the preamble is not part of a match.
+     */
+    private static final int[] PREAMBLE_SHIFT = new int[256];
+
+    static {
+        Arrays.fill(PREAMBLE_SHIFT, PREAMBLE.length);
+        for (int j = 0; j < PREAMBLE.length - 1; j++) {
+            PREAMBLE_SHIFT[PREAMBLE[j] & 0xFF] = PREAMBLE.length - 1 - j;
+        }
+    }
+
     /**
      * Locates the preamble in the given buffer.
      */
     public static int findPreamble(byte[] buf, int start, int len) {
-        int e = start + len - PREAMBLE.length + 1;
+        // Boyer-Moore-Horspool, as most lines have no note and so can mostly be skipped a preamble length at a time
+        int last = PREAMBLE.length - 1;
+        int e = start + len - last;
 
         OUTER:
-        for (int i = start; i < e; i++) {
-            if (buf[i] == PREAMBLE[0]) {
-                // check for the rest of the match
-                for (int j = 1; j < PREAMBLE.length; j++) {
-                    if (buf[i + j] != PREAMBLE[j])
-                        continue OUTER;
-                }
-                return i; // found it
+        for (int i = start; i < e; i += PREAMBLE_SHIFT[buf[i + last] & 0xFF]) {
+            for (int j = last; j >= 0; j--) {
+                if (buf[i + j] != PREAMBLE[j])
+                    continue OUTER;
             }
+            return i; // found it
         }
         return -1; // not found
     }
 
+    /**
+     * Locates the end of a well-formed note, as {@link #skip} would skip it.
+     *
+     * @param start where the preamble starts
+     * @return the offset following the postamble, or -1 if the bytes from {@code start} are not a well-formed note
+     */
+    static int findEndOfNote(byte[] buf, int start, int end) {
+        int i = start + PREAMBLE.length;
+        while (i < end && isBase64(buf[i])) {
+            i++;
+        }
+        if (i + POSTAMBLE.length > end) {
+            return -1;
+        }
+        for (int j = 0; j < POSTAMBLE.length; j++) {
+            if (buf[i + j] != POSTAMBLE[j]) {
+                return -1;
+            }
+        }
+        return i + POSTAMBLE.length;
+    }
+
+    static boolean isBase64(byte b) {
+        return b >= 'A' && b <= 'Z' || b >= 'a' && b <= 'z' || b >= '0' && b <= '9' || b == '+' || b == '/' || b == '=';
+    }
+
     /**
      * Removes the embedded console notes in the given log lines.
      *
@@ -373,12 +429,18 @@ public abstract class ConsoleNote<T> implements Serializable, Describable<Consol
      * @since 1.350
      */
     public static String removeNotes(String line) {
-        while (true) {
-            int idx = line.indexOf(PREAMBLE_STR);
-            if (idx < 0)  return line;
+        int idx = line.indexOf(PREAMBLE_STR);
+        if (idx < 0)  return line;
+        StringBuilder b = new StringBuilder(line.length());
+        int from = 0;
+        while (idx >= 0) {
             int e = line.indexOf(POSTAMBLE_STR, idx);
-            if (e < 0)    return line;
-            line = line.substring(0, idx) + line.substring(e + POSTAMBLE_STR.length());
+            if (e < 0)    break;
+            b.append(line, from, idx);
+            from = e + POSTAMBLE_STR.length();
+            idx = line.indexOf(PREAMBLE_STR, from);
         }
+        b.append(line, from, line.length());
+        return b.toString();
     }
 }
@@ -0,0 +1,145 @@
+package hudson.console;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import hudson.Extension;
+import hudson.model.PeriodicWork;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * {@link ConsoleNote}s decoded while rendering console output, keyed by their encoded form,
+ * so that a note repeated throughout a log, such as a link to the same job, is verified and deserialized only once.
+ *
+ * <p>
+ * The same instance is handed to everyone reading the same encoded note, across threads,
+ * which is only safe for notes which are not changed once written.
+ * So only notes of classes defined by core, which are known not to be, and which passed the signature check are kept,
+ * and the cache is disabled unless {@link #SIZE} is set.
+ * How well it does is logged to {@code hudson.console.DecodedNoteCache} at {@link Level#FINE} every few minutes.
+ */
+@Restricted(NoExternalUse.class)
+public final class DecodedNoteCache {
+    /**
+     * Maximum number of notes to keep, or 0, the default, to disable the cache.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* Script Console modifiable */ int SIZE = SystemProperties.getInteger(DecodedNoteCache.class.getName() + ".size", 0);
+
+    private static final Logger LOGGER = Logger.getLogger(DecodedNoteCache.class.getName());
+
+    private static final DecodedNoteCache INSTANCE = new DecodedNoteCache();
+
+    private final Map<ByteBuffer, ConsoleNote<?>> notes = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ByteBuffer, ConsoleNote<?>> eldest) {
+            if (size() > SIZE) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public static @NonNull DecodedNoteCache get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Looks up the note encoded in a range of bytes, from its preamble to its postamble.
+     */
+    @CheckForNull ConsoleNote<?> lookup(@NonNull byte[] buf, int start, int end) {
+        if (SIZE <= 0) {
+            return null;
+        }
+        ConsoleNote<?> note;
+        synchronized (notes) {
+            note = notes.get(ByteBuffer.wrap(buf, start, end - start));
+        }
+        (note != null ? hits : misses).incrementAndGet();
+        return note;
+    }
+
+    void put(@NonNull byte[] buf, int start, int end, @NonNull ConsoleNote<?> note) {
+        if (SIZE <= 0 || note.getClass().getClassLoader() != ConsoleNote.class.getClassLoader()) {
+            // plugin notes may hold state, and may come from a class loader which is later discarded
+            return;
+        }
+        synchronized (notes) {
+            notes.put(ByteBuffer.wrap(Arrays.copyOfRange(buf, start, end)), note);
+        }
+    }
+
+    /**
+     * Number of notes found in the cache.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Number of notes which had to be decoded.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Number of notes dropped to make room for others.
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public int size() {
+        synchronized (notes) {
+            return notes.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (notes) {
+            notes.clear();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "hits=" + getHits() + " misses=" + getMisses() + " evictions=" + getEvictions() + " size=" + size();
+    }
+
+    @Extension
+    @Restricted(NoExternalUse.class)
+    public static final class StatisticsLogger extends PeriodicWork {
+        private long lastLookups;
+
+        @Override
+        public long getRecurrencePeriod() {
+            return TimeUnit.MINUTES.toMillis(10);
+        }
+
+        @Override
+        protected void doRun() {
+            DecodedNoteCache cache = get();
+            long lookups = cache.getHits() + cache.getMisses();
+            if (lookups != lastLookups) {
+                lastLookups = lookups;
+                LOGGER.log(Level.FINE, "Decoded console notes: {0}", cache);
+            }
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package hudson.console;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.Beta;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Sparse index of where lines start in a console log, kept in a file next to it,
+ * so that finding a line of a large log reads at most {@link #INTERVAL} lines instead of the whole log.
+ *
+ * <p>
+ * The index records the offset of every {@link #INTERVAL}th line.
+ * It is written as the build runs by {@link #record}, or else built on first access to a completed log.
+ * {@link AnnotatedLargeText} uses it to start progressive output at a given line.
+ * Line {@code n} (counted from 0) starts at offset 0 for the first line, and right after the {@code n}th {@code '\n'} otherwise,
+ * so a log ending with a newline has an empty last line.
+ * Compressed logs are not indexed.
+ *
+ * @since TODO
+ */
+@Restricted(Beta.class)
+public final class LineOffsetIndex {
+    /**
+     * Whether to index console logs.
+     */
+    @Restricted(NoExternalUse.class)
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* Script Console modifiable */ boolean ENABLED = SystemProperties.getBoolean(LineOffsetIndex.class.getName() + ".enabled");
+
+    /**
+     * Number of lines between two entries of new indices.
+     */
+    @Restricted(NoExternalUse.class)
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* Script Console modifiable */ int INTERVAL = SystemProperties.getInteger(LineOffsetIndex.class.getName() + ".interval", 1000);
+
+    private static final int MAGIC = 0x4c4e4958;
+    private static final int HEADER = 8;
+    private static final int BUFFER = 64 * 1024;
+
+    private final File log;
+    private final int interval;
+    /**
+     * Offset of line {@code (i + 1) * interval} at index {@code i}.
+     */
+    private final long[] offsets;
+
+    private LineOffsetIndex(File log, int interval, long[] offsets) {
+        this.log = log;
+        this.interval = interval;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Gets the file holding the index of a log.
+     */
+    public static @NonNull File getIndexFile(@NonNull File log) {
+        return new File(log.getParentFile(), log.getName() + "-lines");
+    }
+
+    /**
+     * Reads the index of a log.
+     *
+     * @param complete whether the log is no longer written to, in which case a missing or partial index is completed
+     * @return null if indexing is disabled, or the log is missing or compressed
+     */
+    public static @CheckForNull LineOffsetIndex of(@NonNull File log, boolean complete) throws IOException {
+        if (!ENABLED || !log.isFile() || log.getName().endsWith(".gz")) {
+            return null;
+        }
+        File file = getIndexFile(log);
+        long length = log.length();
+        int interval = INTERVAL;
+        long[] offsets = new long[0];
+        if (file.isFile()) {
+            try (DataInputStream in = new DataInputStream(Files.newInputStream(file.toPath()))) {
+                if (in.readInt() == MAGIC) {
+                    int i = in.readInt();
+                    // a record may be half written by a running build
+                    int count = (int) ((file.length() - HEADER) / 8);
+                    long[] read = new long[count];
+                    for (int k = 0; k < count; k++) {
+                        read[k] = in.readLong();
+                    }
+                    if (i > 0 && isConsistent(read, length)) {
+                        interval = i;
+                        offsets = read;
+                    } else {
+                        LOGGER.fine(() -> "discarding stale " + file);
+                    }
+                }
+            } catch (EOFException e) {
+                LOGGER.log(Level.FINE, "discarding truncated " + file, e);
+            }
+        }
+        LineOffsetIndex index = new LineOffsetIndex(log, interval, offsets);
+        if (complete) {
+            index = index.complete(file, length);
+        }
+        return index;
+    }
+
+    private static boolean isConsistent(long[] offsets, long length) {
+        long last = 0;
+        for (long o : offsets) {
+            if (o <= last || o > length) {
+                return false;
+            }
+            last = o;
+        }
+        return true;
+    }
+
+    /**
+     * Adds the entries missing for the part of the log after the last one and saves them.
+     */
+    private LineOffsetIndex complete(File file, long length) throws IOException {
+        long start = offsets.length == 0 ? 0 : offsets[offsets.length - 1];
+        if (length - start < interval) {
+            // too short to hold another interval of lines
+            return this;
+        }
+        long[] more = new long[16];
+        int count = 0;
+        long lines = 0;
+        try (FileChannel ch = FileChannel.open(log.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocate(BUFFER);
+            long pos = start;
+            int n;
+            while (pos < length && (n = ch.read(buf, pos)) > 0) {
+                byte[] a = buf.array();
+                for (int k = 0; k < n && pos + k < length; k++) {
+                    if (a[k] == '\n' && ++lines % interval == 0) {
+                        if (count == more.length) {
+                            more = Arrays.copyOf(more, count * 2);
+                        }
+                        more[count++] = pos + k + 1;
+                    }
+                }
+                pos += n;
+                buf.clear();
+            }
+        }
+        if (count == 0) {
+            return this;
+        }
+        long[] all = Arrays.copyOf(offsets, offsets.length + count);
+        System.arraycopy(more, 0, all, offsets.length, count);
+        LineOffsetIndex index = new LineOffsetIndex(log, interval, all);
+        try {
+            index.save(file);
+        } catch (IOException e) {
+            // still usable from memory
+            LOGGER.log(Level.FINE, "failed to save " + file, e);
+        }
+        return index;
+    }
+
+    private void save(File file) throws IOException {
+        ByteBuffer out = ByteBuffer.allocate(HEADER + offsets.length * 8);
+        out.putInt(MAGIC).putInt(interval);
+        for (long o : offsets) {
+            out.putLong(o);
+        }
+        Path target = file.toPath();
+        Path tmp = target.resolveSibling(file.getName() + ".tmp");
+        try {
+            Files.write(tmp, out.array());
+            try {
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the offset at which a line starts.
+     *
+     * @param line line number counted from 0
+     * @return the offset, or -1 if the log has fewer lines
+     */
+    public long getOffset(long line) throws IOException {
+        if (line < 0) {
+            throw new IllegalArgumentException("negative line " + line);
+        }
+        int entry = (int) Math.min(line / interval, offsets.length);
+        long base = entry == 0 ? 0 : offsets[entry - 1];
+        long remaining = line - (long) entry * interval;
+        if (remaining == 0) {
+            return base;
+        }
+        try (FileChannel ch = FileChannel.open(log.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocate(BUFFER);
+            long pos = base;
+            int n;
+            while ((n = ch.read(buf, pos)) > 0) {
+                byte[] a = buf.array();
+                for (int k = 0; k < n; k++) {
+                    if (a[k] == '\n' && --remaining == 0) {
+                        return pos + k + 1;
+                    }
+                }
+                pos += n;
+                buf.clear();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Counts the newlines in the log.
+     * The number of lines is one more, as the last line need not end with a newline.
+     */
+    public long countNewlines() throws IOException {
+        long newlines = (long) offsets.length * interval;
+        long base = offsets.length == 0 ? 0 : offsets[offsets.length - 1];
+        try (FileChannel ch = FileChannel.open(log.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocate(BUFFER);
+            long pos = base;
+            int n;
+            while ((n = ch.read(buf, pos)) > 0) {
+                byte[] a = buf.array();
+                for (int k = 0; k < n; k++) {
+                    if (a[k] == '\n') {
+                        newlines++;
+                    }
+                }
+                pos += n;
+                buf.clear();
+            }
+        }
+        return newlines;
+    }
+
+    /**
+     * Wraps the stream a log is written through so as to index it as it grows.
+     * If the log already has content, as when a build is resumed, its index is first brought up to date
+     * and then continued.
+     */
+    public static @NonNull OutputStream record(@NonNull File log, @NonNull OutputStream out) {
+        if (!ENABLED || log.getName().endsWith(".gz")) {
+            return out;
+        }
+        File file = getIndexFile(log);
+        long position = log.length();
+        int interval = INTERVAL;
+        long lines = 0;
+        OutputStream index;
+        try {
+            if (position == 0) {
+                index = Files.newOutputStream(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                index.write(ByteBuffer.allocate(HEADER).putInt(MAGIC).putInt(interval).array());
+            } else {
+                LineOffsetIndex existing = of(log, true);
+                if (existing == null) {
+                    return out;
+                }
+                // rewritten even if up to date, in case the last record was only half written
+                existing.save(file);
+                interval = existing.interval;
+                lines = existing.countNewlines();
+                index = Files.newOutputStream(file.toPath(), StandardOpenOption.APPEND);
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "failed to create " + file, e);
+            return out;
+        }
+        return new Recorder(out, index, interval, position, lines);
+    }
+
+    private static final class Recorder extends FilterOutputStream {
+        private final OutputStream index;
+        private final int interval;
+        private final byte[] entry = new byte[8];
+        private long position;
+        private long lines;
+        private boolean failed;
+
+        Recorder(OutputStream out, OutputStream index, int interval, long position, long lines) {
+            super(out);
+            this.index = index;
+            this.interval = interval;
+            this.position = position;
+            this.lines = lines;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            position++;
+            if (b == '\n') {
+                newline(position);
+            }
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            for (int k = 0; k < len; k++) {
+                if (b[off + k] == '\n') {
+                    newline(position + k + 1);
+                }
+            }
+            position += len;
+        }
+
+        private void newline(long next) {
+            if (++lines % interval != 0 || failed) {
+                return;
+            }
+            try {
+                // unbuffered, so that readers see the entry as soon as the line
+                index.write(ByteBuffer.wrap(entry).putLong(next).array());
+            } catch (IOException e) {
+                // later readers will index the rest of the log themselves
+                LOGGER.log(Level.WARNING, "failed to index console log", e);
+                failed = true;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                index.close();
+            }
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(LineOffsetIndex.class.getName());
+}
@@ -78,10 +78,25 @@ public abstract class LineTransformationOutputStream extends OutputStream {
 
     @Override
     public void write(byte[] b, int off, int len) throws IOException {
+        // same as calling write(int) for each byte, but copying whole runs of bytes into the line
         int end = off + len;
-
-        for (int i = off; i < end; i++)
-            write(b[i]);
+        int start = off;
+        for (int i = off; i < end; i++) {
+            byte c = b[i];
+            if (sawCR && c != '\n') {
+                buf.write(b, start, i - start);
+                start = i;
+                eol();
+            }
+            if (c == '\n') {
+                buf.write(b, start, i + 1 - start);
+                start = i + 1;
+                eol();
+            } else if (c == '\r') {
+                sawCR = true;
+            }
+        }
+        buf.write(b, start, end - start);
     }
 
     @Override
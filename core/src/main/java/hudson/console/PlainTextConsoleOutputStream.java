@@ -67,6 +67,14 @@ public class PlainTextConsoleOutputStream extends LineTransformationOutputStream
                 assert next == written;
             }
 
+            int endOfNote = ConsoleNote.findEndOfNote(in, next, sz);
+            if (endOfNote >= 0) {
+                // the usual case, without having to decode the note
+                written = endOfNote;
+                next = ConsoleNote.findPreamble(in, written, sz - written);
+                continue;
+            }
+
             int rest = sz - next;
             ByteArrayInputStream b = new ByteArrayInputStream(in, next, rest);
 
@@ -0,0 +1,302 @@
+package hudson.console;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.servlet.http.HttpServletResponse;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * A completed console log with its {@linkplain ConsoleNote notes} located,
+ * so that the text around them can be sent straight from the file with {@link FileChannel#transferTo}
+ * rather than through {@link PlainTextConsoleOutputStream}.
+ *
+ * <p>
+ * Where the notes are is kept by {@link #of} in a file next to the log, alongside its {@link LineOffsetIndex},
+ * so that the log is only scanned once rather than on every request.
+ */
+@Restricted(NoExternalUse.class)
+public final class PlainTextLog {
+    /**
+     * Whether to keep where the notes of a log are in a file next to it.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* Script Console modifiable */ boolean SAVE_NOTES = SystemProperties.getBoolean(PlainTextLog.class.getName() + ".saveNotes", true);
+
+    private static final int MAGIC = 0x4c4e4f54;
+
+    /**
+     * Size of the buffer the log is scanned through.
+     * Kept small and on the heap as it is allocated per request;
+     * the JDK reads into it through a temporary direct buffer of the same size it caches per thread.
+     */
+    private static final int BUFFER = 64 * 1024;
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+
+    private final File file;
+    private final long fileLength;
+    /**
+     * Starts and ends of the notes in the file, alternately.
+     */
+    private final long[] notes;
+    private final int noteCount;
+    private final long length;
+
+    private PlainTextLog(File file, long fileLength, long[] notes, int noteCount) {
+        this.file = file;
+        this.fileLength = fileLength;
+        this.notes = notes;
+        this.noteCount = noteCount;
+        long removed = 0;
+        for (int i = 0; i < noteCount; i++) {
+            removed += notes[2 * i + 1] - notes[2 * i];
+        }
+        this.length = fileLength - removed;
+    }
+
+    /**
+     * Gets the file keeping where the notes of a log are.
+     */
+    public static @NonNull File getNotesFile(@NonNull File log) {
+        return new File(log.getParentFile(), log.getName() + "-notes");
+    }
+
+    /**
+     * Like {@link #scan}, reusing where the notes were found the last time
+     * unless the log has changed since, as told by its length and modification time.
+     */
+    public static @CheckForNull PlainTextLog of(@NonNull File file) throws IOException {
+        if (!SAVE_NOTES) {
+            return scan(file);
+        }
+        File notesFile = getNotesFile(file);
+        long fileLength = file.length();
+        long lastModified = file.lastModified();
+        if (notesFile.isFile()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(notesFile.toPath())))) {
+                if (in.readInt() == MAGIC && in.readLong() == fileLength && in.readLong() == lastModified) {
+                    int count = in.readInt();
+                    if (count < 0) {
+                        return null;
+                    }
+                    long[] notes = new long[2 * count];
+                    for (int i = 0; i < notes.length; i++) {
+                        notes[i] = in.readLong();
+                    }
+                    return new PlainTextLog(file, fileLength, notes, count);
+                }
+                LOGGER.fine(() -> "discarding stale " + notesFile);
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "discarding unreadable " + notesFile, e);
+            }
+        }
+        PlainTextLog log = scan(file);
+        ByteBuffer out = ByteBuffer.allocate(24 + (log == null ? 0 : 16 * log.noteCount));
+        out.putInt(MAGIC).putLong(fileLength).putLong(lastModified).putInt(log == null ? -1 : log.noteCount);
+        if (log != null) {
+            out.asLongBuffer().put(log.notes, 0, 2 * log.noteCount);
+        }
+        Path target = notesFile.toPath();
+        Path tmp = target.resolveSibling(notesFile.getName() + ".tmp");
+        try {
+            Files.write(tmp, out.array());
+            try {
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            // scanned again next time
+            LOGGER.log(Level.FINE, "failed to save " + notesFile, e);
+            Files.deleteIfExists(tmp);
+        }
+        return log;
+    }
+
+    /**
+     * Locates the notes in a log which is no longer written to.
+     *
+     * @return null if the log holds something which looks like a note but is not a complete one,
+     *     which {@link PlainTextConsoleOutputStream} deals with in its own way
+     */
+    public static @CheckForNull PlainTextLog scan(@NonNull File file) throws IOException {
+        long[] notes = new long[16];
+        int count = 0;
+        byte[] preamble = ConsoleNote.PREAMBLE;
+        byte[] postamble = ConsoleNote.POSTAMBLE;
+        // 0: text, 1: in preamble, 2: in note, 3: in postamble
+        int state = 0;
+        int matched = 0;
+        long noteStart = 0;
+        long fileLength;
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            fileLength = ch.size();
+            ByteBuffer buf = ByteBuffer.allocate(BUFFER);
+            long pos = 0;
+            while (pos < fileLength && ch.read(buf, pos) > 0) {
+                buf.flip();
+                while (buf.hasRemaining() && pos < fileLength) {
+                    byte b = buf.get();
+                    if (state == 1) {
+                        if (b == preamble[matched]) {
+                            if (++matched == preamble.length) {
+                                state = 2;
+                            }
+                            pos++;
+                            continue;
+                        }
+                        // look at it as text again
+                        state = 0;
+                    }
+                    if (state == 0) {
+                        if (b == preamble[0]) {
+                            state = 1;
+                            matched = 1;
+                            noteStart = pos;
+                        }
+                    } else if (state == 2) {
+                        if (b == postamble[0]) {
+                            state = 3;
+                            matched = 1;
+                        } else if (!ConsoleNote.isBase64(b)) {
+                            return null;
+                        }
+                    } else {
+                        if (b != postamble[matched]) {
+                            return null;
+                        }
+                        if (++matched == postamble.length) {
+                            if (2 * count + 2 > notes.length) {
+                                notes = Arrays.copyOf(notes, notes.length * 2);
+                            }
+                            notes[2 * count] = noteStart;
+                            notes[2 * count + 1] = pos + 1;
+                            count++;
+                            state = 0;
+                        }
+                    }
+                    pos++;
+                }
+                buf.clear();
+            }
+        }
+        if (state >= 2) {
+            return null;
+        }
+        return new PlainTextLog(file, fileLength, notes, count);
+    }
+
+    /**
+     * Length of the text without the notes.
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * Sends part of the text without the notes.
+     *
+     * @param start offset in the text without the notes
+     * @param end offset in the text without the notes, exclusive
+     */
+    public void transferTo(long start, long end, @NonNull WritableByteChannel target) throws IOException {
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long textPos = 0; // offset in the text of filePos
+            long filePos = 0;
+            for (int i = 0; i <= noteCount && textPos < end; i++) {
+                long segmentEnd = i < noteCount ? notes[2 * i] : fileLength;
+                long segmentLength = segmentEnd - filePos;
+                long from = Math.max(start, textPos);
+                long to = Math.min(end, textPos + segmentLength);
+                if (from < to) {
+                    transferFully(ch, filePos + from - textPos, to - from, target);
+                }
+                textPos += segmentLength;
+                if (i < noteCount) {
+                    filePos = notes[2 * i + 1];
+                }
+            }
+        }
+    }
+
+    private static void transferFully(FileChannel ch, long position, long count, WritableByteChannel target) throws IOException {
+        while (count > 0) {
+            long n = ch.transferTo(position, count, target);
+            if (n <= 0) {
+                throw new IOException("log truncated at " + position);
+            }
+            position += n;
+            count -= n;
+        }
+    }
+
+    /**
+     * Serves the text without the notes, honoring a single byte range requested by {@code Range}.
+     * The content type should already be set.
+     */
+    public void serve(@NonNull StaplerRequest req, @NonNull StaplerResponse rsp) throws IOException {
+        long start = 0;
+        long end = length;
+        rsp.setHeader("Accept-Ranges", "bytes");
+        String range = req.getHeader("Range");
+        if (range != null) {
+            Matcher m = RANGE.matcher(range.trim());
+            // anything else, such as several ranges, is served whole
+            if (m.matches() && !(m.group(1).isEmpty() && m.group(2).isEmpty())) {
+                if (m.group(1).isEmpty()) {
+                    // last bytes
+                    start = Math.max(0, length - parse(m.group(2)));
+                } else {
+                    start = parse(m.group(1));
+                    if (!m.group(2).isEmpty()) {
+                        end = Math.min(length - 1, parse(m.group(2))) + 1;
+                    }
+                }
+                if (start >= length || start >= end) {
+                    rsp.setHeader("Content-Range", "bytes */" + length);
+                    rsp.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                    return;
+                }
+                rsp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                rsp.setHeader("Content-Range", "bytes " + start + "-" + (end - 1) + "/" + length);
+            }
+        }
+        rsp.setHeader("Content-Length", Long.toString(end - start));
+        WritableByteChannel target = Channels.newChannel(rsp.getOutputStream());
+        transferTo(start, end, target);
+        rsp.getOutputStream().flush();
+    }
+
+    private static long parse(String s) {
+        try {
+            return Long.parseLong(s);
+        } catch (NumberFormatException e) {
+            // too large
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(PlainTextLog.class.getName());
+}
@@ -221,7 +221,7 @@ public abstract class AbstractCIBase extends Node implements ItemGroup<TopLevelI
         if (createNewComputerForNode(n, automaticAgentLaunch) == null) {
             return;
         }
-        getQueue().scheduleMaintenance();
+        getQueue().scheduleMaintenanceForExecutors();
         Listeners.notify(ComputerListener.class, false, ComputerListener::onConfigurationChange);
     }
 
@@ -274,7 +274,7 @@ public abstract class AbstractCIBase extends Node implements ItemGroup<TopLevelI
             // when we get to here, the number of executors should be zero so this call should not need the Queue.lock
             killComputer(c);
         }
-        getQueue().scheduleMaintenance();
+        getQueue().scheduleMaintenanceForExecutors();
         Listeners.notify(ComputerListener.class, false, ComputerListener::onConfigurationChange);
     }
 
@@ -78,6 +78,7 @@ import jenkins.model.Jenkins;
 import jenkins.model.Loadable;
 import jenkins.model.queue.ItemDeletion;
 import jenkins.security.NotReallyRoleSensitiveCallable;
+import jenkins.util.SaveScheduler;
 import jenkins.util.SystemProperties;
 import jenkins.util.xml.XMLUtils;
 import org.apache.tools.ant.Project;
@@ -622,6 +623,7 @@ public abstract class AbstractItem extends Actionable implements Loadable, Item,
     @Override
     public synchronized void save() throws IOException {
         if (BulkChange.contains(this))   return;
+        if (SaveScheduler.defer(this))   return;
         getConfigFile().write(this);
         SaveableListener.fireOnChange(this, getConfigFile());
     }
@@ -820,6 +822,9 @@ public abstract class AbstractItem extends Actionable implements Loadable, Item,
                     }
                 }
             }
+            // so that nothing is written back into the directory once deleted, such as a build of this job
+            SaveScheduler.cancel(this);
+            SaveScheduler.cancelAll(s -> s instanceof Run && ((Run<?, ?>) s).getParent() == this);
             synchronized (this) { // could just make performDelete synchronized but overriders might not honor that
                 performDelete();
             } // JENKINS-19446: leave synch block, but JENKINS-22001: still notify synchronously
@@ -872,6 +877,7 @@ public abstract class AbstractItem extends Actionable implements Loadable, Item,
     @Restricted(NoExternalUse.class)
     public void writeConfigDotXml(OutputStream os) throws IOException {
         checkPermission(EXTENDED_READ);
+        SaveScheduler.flush(this);
         XmlFile configFile = getConfigFile();
         if (hasPermission(CONFIGURE)) {
             IOUtils.copy(configFile.getFile(), os);
@@ -961,6 +967,7 @@ public abstract class AbstractItem extends Actionable implements Loadable, Item,
     @Override
     public void load() throws IOException {
         checkPermission(CONFIGURE);
+        SaveScheduler.flush(this);
 
         // try to reflect the changes by reloading
         getConfigFile().unmarshal(this);
@@ -776,7 +776,7 @@ public abstract class AbstractProject<P extends AbstractProject<P, R>, R extends
         updateTransientActions();
 
         // notify the queue as the project might be now tied to different node
-        Jenkins.get().getQueue().scheduleMaintenance();
+        Jenkins.get().getQueue().scheduleMaintenance(this);
 
         // this is to reflect the upstream build adjustments done above
         Jenkins.get().rebuildDependencyGraphAsync();
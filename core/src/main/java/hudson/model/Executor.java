@@ -328,13 +328,13 @@ public class Executor extends Thread implements ModelObject {
             if (!owner.isOnline()) {
                 resetWorkUnit("went off-line before the task's worker thread started");
                 owner.removeExecutor(this);
-                queue.scheduleMaintenance();
+                queue.scheduleMaintenanceForExecutors();
                 return;
             }
             if (owner.getNode() == null) {
                 resetWorkUnit("was removed before the task's worker thread started");
                 owner.removeExecutor(this);
-                queue.scheduleMaintenance();
+                queue.scheduleMaintenanceForExecutors();
                 return;
             }
         }
@@ -508,7 +508,12 @@ public class Executor extends Thread implements ModelObject {
             owner.remove((OneOffExecutor) this);
         }
         executableEstimatedDuration = DEFAULT_ESTIMATED_DURATION;
-        queue.scheduleMaintenance();
+        WorkUnit workUnit = getCurrentWorkUnit();
+        if (workUnit != null) {
+            queue.scheduleMaintenance(workUnit.context.task);
+        } else {
+            queue.scheduleMaintenanceForExecutors();
+        }
     }
 
     @Restricted(NoExternalUse.class)
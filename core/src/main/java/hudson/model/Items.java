@@ -51,6 +51,7 @@ import java.util.Stack;
 import java.util.StringTokenizer;
 import java.util.function.Predicate;
 import jenkins.model.DirectlyModifiableTopLevelItemGroup;
+import jenkins.model.ItemSnapshot;
 import jenkins.model.Jenkins;
 import jenkins.util.MemoryReductionUtil;
 import org.apache.commons.io.FileUtils;
@@ -372,7 +373,7 @@ public class Items {
      *      The directory that contains the config file, not the config file itself.
      */
     public static Item load(ItemGroup parent, File dir) throws IOException {
-        Item item = (Item) getConfigFile(dir).read();
+        Item item = (Item) ItemSnapshot.read(getConfigFile(dir));
         item.onLoad(parent, parent.getItemName(dir, item));
         return item;
     }
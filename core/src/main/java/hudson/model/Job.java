@@ -95,6 +95,8 @@ import jenkins.model.ModelObjectWithChildren;
 import jenkins.model.PeepholePermalink;
 import jenkins.model.ProjectNamingStrategy;
 import jenkins.model.RunIdMigrator;
+import jenkins.model.lazy.AbstractLazyLoadRunMap;
+import jenkins.model.lazy.BuildSummaryIndex;
 import jenkins.model.lazy.LazyBuildMixIn;
 import jenkins.scm.RunWithSCM;
 import jenkins.security.HexStringConfidentialKey;
@@ -800,6 +802,21 @@ public abstract class Job<JobT extends Job<JobT, RunT>, RunT extends Run<JobT, R
         return _getRuns().get(n);
     }
 
+    /**
+     * Gets summaries of the completed builds of this job, which can be listed without loading the builds.
+     *
+     * @return null unless {@link BuildSummaryIndex#ENABLED} and the builds of this job are lazily loaded
+     * @since TODO
+     */
+    @Restricted(Beta.class)
+    public @CheckForNull BuildSummaryIndex getBuildSummaries() {
+        if (!BuildSummaryIndex.ENABLED) {
+            return null;
+        }
+        SortedMap<Integer, ? extends RunT> runs = _getRuns();
+        return runs instanceof AbstractLazyLoadRunMap ? ((AbstractLazyLoadRunMap<?>) runs).getSummaries() : null;
+    }
+
     /**
      * Obtains a list of builds, in the descending order, that are within the specified time range [start,end).
      *
@@ -34,6 +34,7 @@ import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.Util;
+import hudson.model.labels.CompiledLabelExpression;
 import hudson.model.labels.LabelAtom;
 import hudson.model.labels.LabelExpression;
 import hudson.model.labels.LabelExpression.And;
@@ -58,8 +59,11 @@ import java.io.Serializable;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.stream.Collectors;
@@ -71,6 +75,7 @@ import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.CommonTokenStream;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.DoNotUse;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
 import org.kohsuke.stapler.export.Exported;
@@ -93,6 +98,8 @@ public abstract class Label extends Actionable implements Comparable<Label>, Mod
     private transient volatile Set<Node> nodes;
     private transient volatile Set<Cloud> clouds;
     private transient volatile int tiedJobsCount;
+    private transient volatile MatchCache matchCache;
+    private transient volatile Optional<CompiledLabelExpression> compiled;
 
     @Exported
     @NonNull
@@ -186,6 +193,13 @@ public abstract class Label extends Actionable implements Comparable<Label>, Mod
      * {@link LabelAtom}s.
      */
     public final boolean matches(final Collection<LabelAtom> labels) {
+        MatchCache c = matchCache;
+        if (c == null) {
+            matchCache = c = MatchCache.of(this);
+        }
+        if (c != MatchCache.NONE) {
+            return c.matches(this, labels);
+        }
         return matches(new VariableResolver<>() {
             @Override
             public Boolean resolve(String name) {
@@ -232,6 +246,15 @@ public abstract class Label extends Actionable implements Comparable<Label>, Mod
 
         Set<Node> r = new HashSet<>();
         Jenkins h = Jenkins.get();
+        CompiledLabelExpression c = getCompiled();
+        if (c != null) {
+            CompiledLabelExpression.NodeLabels nodeLabels = CompiledLabelExpression.getNodeLabels(h);
+            for (int i = 0; i < nodeLabels.nodes.size(); i++) {
+                if (c.matches(nodeLabels.bits.get(i)))
+                    r.add(nodeLabels.nodes.get(i));
+            }
+            return this.nodes = Collections.unmodifiableSet(r);
+        }
         if (this.matches(h))
             r.add(h);
         for (Node n : h.getNodes()) {
@@ -435,7 +458,24 @@ public abstract class Label extends Actionable implements Comparable<Label>, Mod
         return getNodes().isEmpty() && getClouds().isEmpty();
     }
 
+    /**
+     * Gets this label compiled for faster matching against many nodes, if enabled and possible.
+     */
+    @CheckForNull
+    @Restricted(NoExternalUse.class)
+    public CompiledLabelExpression getCompiled() {
+        if (!CompiledLabelExpression.ENABLED) {
+            return null;
+        }
+        Optional<CompiledLabelExpression> c = compiled;
+        if (c == null) {
+            compiled = c = Optional.ofNullable(CompiledLabelExpression.compile(this));
+        }
+        return c.orElse(null);
+    }
+
     /*package*/ void reset() {
+        CompiledLabelExpression.invalidate();
         nodes = null;
         clouds = null;
         tiedJobsCount = -1;
@@ -631,6 +671,85 @@ public abstract class Label extends Actionable implements Comparable<Label>, Mod
         return parser.expr().l;
     }
 
+    /**
+     * Remembers the outcome of {@link #matches(Collection)} for each combination of the atoms a label consists of,
+     * so that matching the same label against the label sets of many nodes does not walk the expression every time.
+     *
+     * <p>
+     * The outcome only depends on which of those atoms the matched set contains, and only that is looked up,
+     * so the cache never needs to be invalidated when the labels of a node change.
+     * This only holds for the label classes of core, so labels containing anything else are not cached.
+     */
+    private static final class MatchCache {
+        /**
+         * Labels with more atoms than this are evaluated directly, as their truth table would get too large.
+         */
+        private static final int MAX_ATOMS = 10;
+
+        private static final MatchCache NONE = new MatchCache(Map.of());
+
+        /**
+         * Position of each atom name in the bit mask indexing {@link #results}.
+         */
+        private final Map<String, Integer> atoms;
+
+        /**
+         * 0 if not evaluated yet, 1 if false, 2 if true.
+         */
+        private final byte[] results;
+
+        private MatchCache(Map<String, Integer> atoms) {
+            this.atoms = atoms;
+            this.results = new byte[1 << atoms.size()];
+        }
+
+        static MatchCache of(Label l) {
+            Map<String, Integer> atoms = new HashMap<>();
+            return collectAtoms(l, atoms) ? new MatchCache(atoms) : NONE;
+        }
+
+        private static boolean collectAtoms(Label l, Map<String, Integer> atoms) {
+            Class<?> c = l.getClass();
+            if (c == LabelAtom.class) {
+                atoms.putIfAbsent(l.name, atoms.size());
+                return atoms.size() <= MAX_ATOMS;
+            }
+            if (c == Not.class) {
+                return collectAtoms(((Not) l).base, atoms);
+            }
+            if (c == Paren.class) {
+                return collectAtoms(((Paren) l).base, atoms);
+            }
+            if (c == And.class || c == Or.class || c == Iff.class || c == Implies.class) {
+                Binary b = (Binary) l;
+                return collectAtoms(b.lhs, atoms) && collectAtoms(b.rhs, atoms);
+            }
+            return false;
+        }
+
+        boolean matches(Label l, Collection<LabelAtom> labels) {
+            int key = 0;
+            for (LabelAtom a : labels) {
+                Integer i = atoms.get(a.getName());
+                if (i != null) {
+                    key |= 1 << i;
+                }
+            }
+            byte r = results[key];
+            if (r == 0) {
+                final int present = key;
+                boolean b = l.matches(name -> {
+                    Integer i = atoms.get(name);
+                    return i != null && (present & 1 << i) != 0;
+                });
+                // racing threads compute the same value
+                results[key] = (byte) (b ? 2 : 1);
+                return b;
+            }
+            return r == 2;
+        }
+    }
+
     /**
      * Collects all the atoms in the expression.
      */
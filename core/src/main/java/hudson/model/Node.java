@@ -69,6 +69,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import jenkins.model.Jenkins;
 import jenkins.model.Nodes;
+import jenkins.util.SaveScheduler;
 import jenkins.util.SystemProperties;
 import jenkins.util.io.OnMaster;
 import net.sf.json.JSONObject;
@@ -147,6 +148,7 @@ public abstract class Node extends AbstractModelObject implements Reconfigurable
             return;
         }
         if (BulkChange.contains(this))   return;
+        if (SaveScheduler.defer(this))   return;
         getConfigFile().write(this);
         SaveableListener.fireOnChange(this, getConfigFile());
     }
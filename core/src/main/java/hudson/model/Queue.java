@@ -91,7 +91,9 @@ import java.util.Collections;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -100,13 +102,17 @@ import java.util.Objects;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletResponse;
 import jenkins.model.Jenkins;
@@ -186,6 +192,12 @@ public class Queue extends ResourceController implements Saveable {
      */
     private final Set<WaitingItem> waitingList = new TreeSet<>();
 
+    /**
+     * Number of modifications of {@link #waitingList}, the counterpart of {@link ItemList#getModCount}.
+     */
+    @GuardedBy("lock")
+    private transient int waitingListModCount;
+
     /**
      * {@link Task}s that can be built immediately
      * but blocked because another build is in progress,
@@ -208,7 +220,12 @@ public class Queue extends ResourceController implements Saveable {
      */
     private final ItemList<BuildableItem> pendings = new ItemList<>();
 
-    private transient volatile Snapshot snapshot = new Snapshot(waitingList, blockedProjects, buildables, pendings);
+    private transient volatile Snapshot snapshot = new Snapshot(0, 0, waitingList, blockedProjects, buildables, pendings);
+
+    /**
+     * How long it took to create the current {@link #snapshot}, in nanoseconds.
+     */
+    private transient volatile long snapshotPublicationNanos;
 
     /**
      * Items that left queue would stay here for a while to enable tracking via {@link Item#getId()}.
@@ -323,14 +340,81 @@ public class Queue extends ResourceController implements Saveable {
         }
     }
 
+    /**
+     * The {@link JobOffer}s of one maintenance pass, grouped by {@link Node}.
+     *
+     * <p>
+     * {@link Node#canTake(BuildableItem)} rejects any item whose assigned {@link Label} does not contain the node,
+     * so for such items it is enough to ask the nodes of that label rather than every parked executor.
+     * Nodes overriding that method may not perform that check and are therefore always asked.
+     */
+    private static final class ParkedOffers {
+        private static final ClassValue<Boolean> CUSTOM_CAN_TAKE = new ClassValue<>() {
+            @Override
+            protected Boolean computeValue(Class<?> type) {
+                return Util.isOverridden(Node.class, type, "canTake", BuildableItem.class);
+            }
+        };
+
+        /**
+         * Offers on nodes which are known to reject items with a label they do not have.
+         */
+        private final Map<Node, List<JobOffer>> indexed = new HashMap<>();
+
+        /**
+         * Offers on nodes which have to be asked about every item.
+         */
+        private final Map<Node, List<JobOffer>> unindexed = new HashMap<>();
+
+        ParkedOffers(Collection<JobOffer> offers) {
+            for (JobOffer offer : offers) {
+                Node node = offer.getNode();
+                Map<Node, List<JobOffer>> m = node == null || CUSTOM_CAN_TAKE.get(node.getClass()) ? unindexed : indexed;
+                m.computeIfAbsent(node, k -> new ArrayList<>()).add(offer);
+            }
+        }
+
+        /**
+         * Finds the offers which may be able to take an item with the given label.
+         */
+        Collection<Map.Entry<Node, List<JobOffer>>> lookup(@CheckForNull Label label) {
+            List<Map.Entry<Node, List<JobOffer>>> r = new ArrayList<>(unindexed.entrySet());
+            if (label == null || !LABEL_INDEXED_OFFERS) {
+                r.addAll(indexed.entrySet());
+                return r;
+            }
+            Set<Node> nodes = label.getNodes();
+            if (nodes.size() < indexed.size()) {
+                for (Node n : nodes) {
+                    List<JobOffer> o = indexed.get(n);
+                    if (o != null) {
+                        r.add(Map.entry(n, o));
+                    }
+                }
+            } else {
+                for (Map.Entry<Node, List<JobOffer>> e : indexed.entrySet()) {
+                    if (nodes.contains(e.getKey())) {
+                        r.add(e);
+                    }
+                }
+            }
+            return r;
+        }
+    }
+
     private transient volatile LoadBalancer loadBalancer;
 
+    /**
+     * Changes since the last {@link #save()}, if {@link #JOURNAL} is enabled.
+     */
+    private transient volatile QueueJournal journal;
+
     private transient volatile QueueSorter sorter;
 
     private final transient AtmostOneTaskExecutor<Void> maintainerThread = new AtmostOneTaskExecutor<>(new Callable<>() {
         @Override
         public Void call() throws Exception {
-            maintain();
+            maintain(fullMaintenanceRequested.getAndSet(false) || !INCREMENTAL_MAINTENANCE);
             return null;
         }
 
@@ -344,6 +428,41 @@ public class Queue extends ResourceController implements Saveable {
 
     private final transient Condition condition = lock.newCondition();
 
+    /**
+     * @see #getTaskLock
+     */
+    private final transient Lock[] taskLocks = Stream.generate(ReentrantLock::new).limit(64).toArray(Lock[]::new);
+
+    /**
+     * Set by {@link #scheduleMaintenance()}, which is how the rest of Jenkins reports a change that can
+     * affect any item in the queue.
+     */
+    private final transient AtomicBoolean fullMaintenanceRequested = new AtomicBoolean(true);
+
+    /**
+     * Set by {@link #scheduleMaintenanceForExecutors()} when buildable items already offered to the parked executors
+     * should be offered again.
+     */
+    private final transient AtomicBoolean executorsChanged = new AtomicBoolean();
+
+    /**
+     * Tasks whose {@link BlockedItem}s the next pass should re-evaluate, as reported by {@link #scheduleMaintenance(Task)}.
+     */
+    private final transient Set<Task> dirtyTasks = ConcurrentHashMap.newKeySet();
+
+    /**
+     * {@link BuildableItem}s that entered {@link #buildables} since the last maintenance pass,
+     * and therefore have not been offered to the currently parked executors yet.
+     */
+    @GuardedBy("lock")
+    private final transient Set<BuildableItem> freshBuildables = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * The executors that were parked during the last maintenance pass.
+     */
+    @GuardedBy("lock")
+    private transient Set<Executor> lastParkedExecutors = Collections.emptySet();
+
     public Queue(@NonNull LoadBalancer loadBalancer) {
         this.loadBalancer =  loadBalancer.sanitize();
         // if all the executors are busy doing something, then the queue won't be maintained in
@@ -394,9 +513,13 @@ public class Queue extends ResourceController implements Saveable {
         try { try {
             // Clear items, for the benefit of reloading.
             waitingList.clear();
+            waitingListModCount++;
             blockedProjects.clear();
             buildables.clear();
             pendings.clear();
+            freshBuildables.clear();
+            // nothing that happens while loading needs to be journaled
+            getJournal().close();
 
             File queueFile = getXMLQueueFile();
             if (Files.exists(queueFile.toPath())) {
@@ -414,6 +537,16 @@ public class Queue extends ResourceController implements Saveable {
                     state.items.addAll(items);
                 }
                 QueueIdStrategy.get().load(state);
+                if (JOURNAL) {
+                    items = replayJournal(state, items);
+                }
+                List<Item> loaded = new ArrayList<>();
+                for (Object o : items) {
+                    if (o instanceof Item) {
+                        loaded.add((Item) o);
+                    }
+                }
+                QueueIdStrategy.get().loaded(loaded);
 
 
                 for (Object o : items) {
@@ -447,6 +580,11 @@ public class Queue extends ResourceController implements Saveable {
                 File bk = new File(queueFile.getPath() + ".bak");
                 Files.move(queueFile.toPath(), bk.toPath(), StandardCopyOption.REPLACE_EXISTING);
             }
+            if (JOURNAL) {
+                // start over from what was just loaded, which save() reads from the snapshot
+                updateSnapshot();
+                save();
+            }
         } catch (IOException | InvalidPathException e) {
             LOGGER.log(Level.WARNING, "Failed to load the queue file " + getXMLQueueFile(), e);
         } finally { updateSnapshot(); } } finally {
@@ -475,9 +613,18 @@ public class Queue extends ResourceController implements Saveable {
                 if (item.task instanceof TransientTask)  continue;
                 state.items.add(item);
             }
+            long generation = 0;
+            if (JOURNAL) {
+                // strictly increasing across restarts, so that no older journal ever matches
+                generation = Math.max(getJournal().getGeneration() + 1, System.currentTimeMillis());
+                state.properties.put(JOURNAL_GENERATION, generation);
+            }
 
             try {
                 queueFile.write(state);
+                if (JOURNAL) {
+                    getJournal().start(generation);
+                }
             } catch (IOException e) {
                 LOGGER.log(e instanceof ClosedByInterruptException ? Level.FINE : Level.WARNING, "Failed to write out the queue file " + getXMLQueueFile(), e);
             }
@@ -506,6 +653,43 @@ public class Queue extends ResourceController implements Saveable {
         scheduleMaintenance();
     }
 
+    /**
+     * Applies the journal written since {@code queue.xml} was saved to the items read from it.
+     */
+    private List replayJournal(State state, List items) throws IOException {
+        Object generation = state.properties.get(JOURNAL_GENERATION);
+        if (!(generation instanceof Long)) {
+            // saved without a journal
+            return items;
+        }
+        List result = new ArrayList<>();
+        Map<Long, Item> byId = new LinkedHashMap<>();
+        for (Object o : items) {
+            if (o instanceof Item) {
+                byId.put(((Item) o).getId(), (Item) o);
+            } else {
+                result.add(o);
+            }
+        }
+        QueueJournal.replay(getJournal().getFile(), (Long) generation, byId);
+        result.addAll(byId.values());
+        return result;
+    }
+
+    private QueueJournal getJournal() {
+        QueueJournal j = journal;
+        if (j == null) {
+            File queueFile = getXMLQueueFile();
+            String name = queueFile.getName();
+            journal = j = new QueueJournal(new File(queueFile.getParentFile(), name.substring(0, name.length() - ".xml".length()) + ".journal"));
+        }
+        return j;
+    }
+
+    /*package*/ File getJournalFile() {
+        return getJournal().getFile();
+    }
+
     /*package*/ File getXMLQueueFile() {
         String id = SystemProperties.getString(Queue.class.getName() + ".id");
         if (id != null) {
@@ -581,11 +765,29 @@ public class Queue extends ResourceController implements Saveable {
         actions = new ArrayList<>(actions);
         actions.removeIf(Objects::isNull);
 
+        if (STRIPED_LOCKING && !lock.isHeldByCurrentThread()) {
+            Lock taskLock = getTaskLock(p);
+            taskLock.lock();
+            try {
+                if (!shouldSchedule(p, actions)) {
+                    return ScheduleResult.refused();
+                }
+                lock.lock();
+                try { try {
+                    return scheduleInternal(p, quietPeriod, actions);
+                } finally { updateSnapshot(); } } finally {
+                    lock.unlock();
+                }
+            } finally {
+                taskLock.unlock();
+            }
+        }
+
         lock.lock();
         try { try {
-            for (QueueDecisionHandler h : QueueDecisionHandler.all())
-                if (!h.shouldSchedule(p, actions))
-                    return ScheduleResult.refused();    // veto
+            if (!shouldSchedule(p, actions)) {
+                return ScheduleResult.refused();
+            }
 
             return scheduleInternal(p, quietPeriod, actions);
         } finally { updateSnapshot(); } } finally {
@@ -593,6 +795,25 @@ public class Queue extends ResourceController implements Saveable {
         }
     }
 
+    private static boolean shouldSchedule(Task p, List<Action> actions) {
+        for (QueueDecisionHandler h : QueueDecisionHandler.all())
+            if (!h.shouldSchedule(p, actions))
+                return false;    // veto
+        return true;
+    }
+
+    /**
+     * Gets the lock guarding the part of {@link #schedule2(Task, int, List)}
+     * that only concerns the given task, when {@link #STRIPED_LOCKING} is enabled.
+     * Equal tasks always get the same lock.
+     * It must never be acquired while holding the queue lock.
+     */
+    private Lock getTaskLock(Task p) {
+        int h = p.hashCode();
+        h ^= h >>> 16;
+        return taskLocks[h & (taskLocks.length - 1)];
+    }
+
     /**
      * Schedules an execution of a task.
      *
@@ -632,7 +853,7 @@ public class Queue extends ResourceController implements Saveable {
                 // put the item in the queue
                 WaitingItem added = new WaitingItem(due, p, actions);
                 added.enter(this);
-                scheduleMaintenance();   // let an executor know that a new item is in the queue.
+                scheduleIncrementalMaintenance();   // let an executor know that a new item is in the queue.
                 return ScheduleResult.created(added);
             }
 
@@ -661,7 +882,7 @@ public class Queue extends ResourceController implements Saveable {
                 queueUpdated = true;
             }
 
-            if (queueUpdated) scheduleMaintenance();
+            if (queueUpdated) scheduleIncrementalMaintenance();
 
             // REVISIT: when there are multiple existing items in the queue that matches the incoming one,
             // whether the new one should affect all existing ones or not is debatable. I for myself
@@ -732,8 +953,17 @@ public class Queue extends ResourceController implements Saveable {
         }
     }
 
+    /**
+     * Publishes the current state of the queue for lock-free readers, unless it did not change since the last time.
+     */
     private void updateSnapshot() {
-        Snapshot revised = new Snapshot(waitingList, blockedProjects, buildables, pendings);
+        long modStamp = (long) waitingListModCount + blockedProjects.getModCount() + buildables.getModCount() + pendings.getModCount();
+        if (modStamp == snapshot.modStamp) {
+            return;
+        }
+        long start = System.nanoTime();
+        Snapshot revised = new Snapshot(snapshot.version + 1, modStamp, waitingList, blockedProjects, buildables, pendings);
+        snapshotPublicationNanos = System.nanoTime() - start;
         if (LOGGER.isLoggable(Level.FINEST)) {
             LOGGER.log(Level.FINEST, "{0} → {1}; leftItems={2}", new Object[] {snapshot, revised, leftItems.asMap()});
         }
@@ -896,6 +1126,41 @@ public class Queue extends ResourceController implements Saveable {
         return Arrays.asList(getItems());
     }
 
+    /**
+     * Gets the version of the state that {@link #getItems()} and the other read-only methods currently see.
+     * It increases every time a modification of the queue is published to them.
+     *
+     * @since TODO
+     */
+    @Restricted(Beta.class)
+    public long getSnapshotVersion() {
+        return snapshot.version;
+    }
+
+    /**
+     * Gets how long ago the state that {@link #getItems()} and the other read-only methods currently see was published.
+     * Note that this grows as long as the queue does not change, so it is only meaningful for a busy queue.
+     *
+     * @return the age in milliseconds
+     * @since TODO
+     */
+    @Restricted(Beta.class)
+    public long getSnapshotAge() {
+        return System.currentTimeMillis() - snapshot.timestamp;
+    }
+
+    /**
+     * Gets how long it took to publish the state that {@link #getItems()} and the other read-only methods currently see,
+     * which is spent while holding the queue lock.
+     *
+     * @return the duration in nanoseconds
+     * @since TODO
+     */
+    @Restricted(Beta.class)
+    public long getSnapshotPublicationTime() {
+        return snapshotPublicationNanos;
+    }
+
     public Item getItem(long id) {
         Snapshot snapshot = this.snapshot;
         for (Item item : snapshot.blockedProjects) {
@@ -1196,9 +1461,54 @@ public class Queue extends ResourceController implements Saveable {
     @WithBridgeMethods(void.class)
     public Future<?> scheduleMaintenance() {
         // LOGGER.info("Scheduling maintenance");
+        fullMaintenanceRequested.set(true);
         return maintainerThread.submit();
     }
 
+    /**
+     * Like {@link #scheduleMaintenance()}, for a change to the executors of Jenkins, such as a node going online or offline,
+     * which does not unblock any {@link BlockedItem}.
+     * An {@link #INCREMENTAL_MAINTENANCE incremental} pass then offers every buildable item to the parked executors again,
+     * without re-evaluating the blocked items.
+     */
+    @Restricted(NoExternalUse.class)
+    public Future<?> scheduleMaintenanceForExecutors() {
+        if (!INCREMENTAL_MAINTENANCE) {
+            return scheduleMaintenance();
+        }
+        executorsChanged.set(true);
+        return maintainerThread.submit();
+    }
+
+    /**
+     * Like {@link #scheduleMaintenanceForExecutors()}, for a change concerning a task,
+     * such as its build completing and freeing up an executor, or its configuration changing.
+     * An {@link #INCREMENTAL_MAINTENANCE incremental} pass then also re-evaluates the blocked items of that task,
+     * of its owner, and of the projects up- and downstream of it, which may have been waiting for it.
+     */
+    @Restricted(NoExternalUse.class)
+    public Future<?> scheduleMaintenance(@NonNull Task changed) {
+        if (!INCREMENTAL_MAINTENANCE) {
+            return scheduleMaintenance();
+        }
+        dirtyTasks.add(changed);
+        dirtyTasks.add(changed.getOwnerTask());
+        if (changed instanceof AbstractProject) {
+            DependencyGraph graph = Jenkins.get().getDependencyGraph();
+            dirtyTasks.addAll(graph.getTransitiveUpstream((AbstractProject) changed));
+            dirtyTasks.addAll(graph.getTransitiveDownstream((AbstractProject) changed));
+        }
+        return scheduleMaintenanceForExecutors();
+    }
+
+    /**
+     * Like {@link #scheduleMaintenance()}, but for changes that only concern items the queue tracks by itself
+     * (such as a new {@link WaitingItem}), so that an {@link #INCREMENTAL_MAINTENANCE incremental} pass is enough.
+     */
+    private void scheduleIncrementalMaintenance() {
+        maintainerThread.submit();
+    }
+
     /**
      * Checks if the given item should be prevented from entering into the {@link #buildables} state
      * and instead stay in the {@link #blockedProjects} state.
@@ -1486,6 +1796,26 @@ public class Queue extends ResourceController implements Saveable {
      * and it also gets invoked periodically (see {@link Queue.MaintainTask}.)
      */
     public void maintain() {
+        maintain(true);
+    }
+
+    /**
+     * Queue maintenance, optionally limited to what changed since the last pass.
+     *
+     * <p>
+     * A full pass re-evaluates every blocked and buildable item. Otherwise only {@link WaitingItem}s whose
+     * quiet period expired are moved, and only the {@link BuildableItem}s that became buildable since the
+     * last pass are offered to the parked executors, unless the set of parked executors itself changed.
+     * The outcome of either kind of pass is the same as long as nothing outside of the queue changed in between,
+     * which is what {@link #scheduleMaintenance()} reports. Changes reported more precisely, through
+     * {@link #scheduleMaintenanceForExecutors()} or {@link #scheduleMaintenance(Task)}, have an incremental pass
+     * offer every buildable item again or re-evaluate the blocked items of some tasks.
+     *
+     * @param full whether to re-evaluate every item in the queue
+     * @see #INCREMENTAL_MAINTENANCE
+     */
+    @Restricted(NoExternalUse.class)
+    public void maintain(boolean full) {
         Jenkins jenkins = Jenkins.getInstanceOrNull();
         if (jenkins == null) {
             return;
@@ -1493,7 +1823,7 @@ public class Queue extends ResourceController implements Saveable {
         lock.lock();
         try { try {
 
-            LOGGER.log(Level.FINE, "Queue maintenance started on {0} with {1}", new Object[] {this, snapshot});
+            LOGGER.log(Level.FINE, "Queue maintenance ({0}) started on {1} with {2}", new Object[] {full ? "full" : "incremental", this, snapshot});
 
             // The executors that are currently waiting for a job to run.
             Map<Executor, JobOffer> parked = new HashMap<>();
@@ -1535,11 +1865,21 @@ public class Queue extends ResourceController implements Saveable {
                 }
             }
 
+            // previously buildable items may fit an executor that was not parked during the last pass
+            boolean reoffer = executorsChanged.getAndSet(false) || !lastParkedExecutors.containsAll(parked.keySet());
+            Set<Task> dirty = new HashSet<>(dirtyTasks);
+            dirtyTasks.removeAll(dirty);
+            lastParkedExecutors = new HashSet<>(parked.keySet());
+            ParkedOffers offers = new ParkedOffers(parked.values());
+
             final QueueSorter s = sorter;
 
-            { // blocked -> buildable
+            if (full || !dirty.isEmpty()) { // blocked -> buildable; only changes outside of the queue can unblock an item
                 // copy as we'll mutate the list and we want to process in a potentially different order
                 List<BlockedItem> blockedItems = new ArrayList<>(blockedProjects.values());
+                if (!full) {
+                    blockedItems.removeIf(p -> !dirty.contains(p.task) && !dirty.contains(p.task.getOwnerTask()));
+                }
                 // if facing a cycle of blocked tasks, ensure we process in the desired sort order
                 if (s != null) {
                     s.sortBlockedItems(blockedItems);
@@ -1614,8 +1954,12 @@ public class Queue extends ResourceController implements Saveable {
             updateSnapshot();
 
             // allocate buildable jobs to executors
-            for (BuildableItem p : new ArrayList<>(
-                    buildables)) { // copy as we'll mutate the list in the loop
+            List<BuildableItem> toAllocate = new ArrayList<>(buildables); // copy as we'll mutate the list in the loop
+            if (!full && !reoffer) {
+                // the others were already offered to the same executors and nothing else changed since
+                toAllocate.removeIf(p -> !freshBuildables.contains(p));
+            }
+            for (BuildableItem p : toAllocate) {
                 // one last check to make sure this build is not blocked.
                 CauseOfBlockage causeOfBlockage = getCauseOfBlockageForItem(p);
                 if (causeOfBlockage != null) {
@@ -1640,24 +1984,22 @@ public class Queue extends ResourceController implements Saveable {
                     }
                 } else {
 
-                    List<JobOffer> candidates = new ArrayList<>(parked.size());
+                    List<JobOffer> candidates = new ArrayList<>();
                     Map<Node, CauseOfBlockage> reasonMap = new HashMap<>();
-                    for (JobOffer j : parked.values()) {
-                        Node offerNode = j.getNode();
-                        CauseOfBlockage reason;
-                        if (reasonMap.containsKey(offerNode)) {
-                            reason = reasonMap.get(offerNode);
-                        } else {
-                            reason = j.getCauseOfBlockage(p);
-                            reasonMap.put(offerNode, reason);
-                        }
-                        if (reason == null) {
-                            LOGGER.log(Level.FINEST,
-                                    "{0} is a potential candidate for task {1}",
-                                    new Object[]{j, taskDisplayName});
-                            candidates.add(j);
-                        } else {
-                            LOGGER.log(Level.FINEST, "{0} rejected {1}: {2}", new Object[] {j, taskDisplayName, reason});
+                    for (Map.Entry<Node, List<JobOffer>> e : offers.lookup(p.getAssignedLabel())) {
+                        Node offerNode = e.getKey();
+                        // all executors of a node give the same answer, so only ask the first one
+                        CauseOfBlockage reason = e.getValue().get(0).getCauseOfBlockage(p);
+                        reasonMap.put(offerNode, reason);
+                        for (JobOffer j : e.getValue()) {
+                            if (reason == null) {
+                                LOGGER.log(Level.FINEST,
+                                        "{0} is a potential candidate for task {1}",
+                                        new Object[]{j, taskDisplayName});
+                                candidates.add(j);
+                            } else {
+                                LOGGER.log(Level.FINEST, "{0} rejected {1}: {2}", new Object[] {j, taskDisplayName, reason});
+                            }
                         }
                     }
 
@@ -1700,6 +2042,8 @@ public class Queue extends ResourceController implements Saveable {
                     updateSnapshot();
                 }
             }
+
+            freshBuildables.clear();
         } finally { updateSnapshot(); } } finally {
             lock.unlock();
         }
@@ -2571,6 +2915,7 @@ public class Queue extends ResourceController implements Saveable {
         @Override
         /*package*/ void enter(Queue q) {
             if (q.waitingList.add(this)) {
+                q.waitingListModCount++;
                 Listeners.notify(QueueListener.class, true, l -> l.onEnterWaiting(this));
             }
         }
@@ -2578,6 +2923,9 @@ public class Queue extends ResourceController implements Saveable {
         @Override
         /*package*/ boolean leave(Queue q) {
             boolean r = q.waitingList.remove(this);
+            if (r) {
+                q.waitingListModCount++;
+            }
             if (r) {
                 Listeners.notify(QueueListener.class, true, l -> l.onLeaveWaiting(this));
             }
@@ -2754,12 +3102,14 @@ public class Queue extends ResourceController implements Saveable {
         @Override
         /*package*/ void enter(Queue q) {
             q.buildables.add(this);
+            q.freshBuildables.add(this);
             Listeners.notify(QueueListener.class, true, l -> l.onEnterBuildable(this));
         }
 
         @Override
         /*package*/ boolean leave(Queue q) {
             boolean r = q.buildables.remove(this);
+            q.freshBuildables.remove(this);
             if (r) {
                 LOGGER.log(Level.FINE, "{0} no longer blocked", this);
                 Listeners.notify(QueueListener.class, true, l -> l.onLeaveBuildable(this));
@@ -2830,6 +3180,57 @@ public class Queue extends ResourceController implements Saveable {
 
     private static final Logger LOGGER = Logger.getLogger(Queue.class.getName());
 
+    /**
+     * Opt-in switch to let maintenance runs that were triggered by changes inside the queue, or by changes reported through
+     * {@link #scheduleMaintenanceForExecutors()} and {@link #scheduleMaintenance(Task)}, only look at the
+     * items affected by those changes, rather than re-evaluating every blocked and buildable item.
+     * This keeps {@link #maintain} cheap when thousands of items are waiting for the same few executors.
+     * {@link MaintainTask} still runs a full pass every few seconds, for changes nobody reported.
+     *
+     * @see #maintain(boolean)
+     */
+    @Restricted(NoExternalUse.class)
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* Script Console modifiable */ boolean INCREMENTAL_MAINTENANCE = SystemProperties.getBoolean(Queue.class.getName() + ".incrementalMaintenance");
+
+    /**
+     * Whether {@link BuildableItem}s with an assigned {@link Label} are only offered to the executors parked on
+     * the nodes of that label. Set to false to ask every parked executor again, which also keeps the reasons
+     * reported by non-matching nodes in {@link BuildableItem#getCauseOfBlockage()}.
+     */
+    @Restricted(NoExternalUse.class)
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* Script Console modifiable */ boolean LABEL_INDEXED_OFFERS = SystemProperties.getBoolean(Queue.class.getName() + ".labelIndexedOffers", true);
+
+    /**
+     * Opt-in switch to run the parts of {@link #schedule2(Task, int, List)} which only
+     * concern the task at hand, such as consulting {@link QueueDecisionHandler}s, under a lock striped by task
+     * rather than the queue lock, so that callers scheduling unrelated tasks do not wait for each other there.
+     * Changing the contents of the queue, including {@link #cancel(Task)}, and {@link #maintain} still require the queue lock.
+     * Note that {@link QueueDecisionHandler}s may then be called concurrently.
+     */
+    @Restricted(NoExternalUse.class)
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* Script Console modifiable */ boolean STRIPED_LOCKING = SystemProperties.getBoolean(Queue.class.getName() + ".stripedLocking");
+
+    /**
+     * Whether items entering and leaving the queue are appended to a journal next to {@code queue.xml},
+     * so that {@link Queue.Saver} only needs to rewrite {@code queue.xml} once the journal has grown
+     * larger than the queue, rather than after every change.
+     */
+    @Restricted(NoExternalUse.class)
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* Script Console modifiable */ boolean JOURNAL = SystemProperties.getBoolean(Queue.class.getName() + ".journal");
+
+    /**
+     * Minimum number of journal records before {@link Queue.Saver} compacts the journal into {@code queue.xml}.
+     */
+    @Restricted(NoExternalUse.class)
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* Script Console modifiable */ int JOURNAL_COMPACTION_THRESHOLD = SystemProperties.getInteger(Queue.class.getName() + ".journalCompactionThreshold", 1000);
+
+    private static final String JOURNAL_GENERATION = "journalGeneration";
+
     /**
      * This {@link XStream} instance is used to persist {@link Task}s.
      */
@@ -2976,6 +3377,21 @@ public class Queue extends ResourceController implements Saveable {
             return this;
         }
 
+        /**
+         * Lets {@link #updateSnapshot} tell whether this list changed since the last {@link Snapshot}.
+         * Since every change increments it, the sum over all lists changes whenever any of them does.
+         */
+        int getModCount() {
+            return modCount;
+        }
+
+        @Override
+        public T set(int index, T element) {
+            // ArrayList does not count this as a structural modification, but it reorders the queue
+            modCount++;
+            return super.set(index, element);
+        }
+
         /**
          * Works like {@link #remove(Task)} but also marks the {@link Item} as cancelled.
          */
@@ -2996,13 +3412,24 @@ public class Queue extends ResourceController implements Saveable {
     }
 
     private static class Snapshot {
+        /**
+         * Incremented with every published snapshot.
+         */
+        private final long version;
+        /**
+         * The sum of the modification counts of the lists this snapshot was taken from.
+         */
+        private final long modStamp;
+        private final long timestamp = System.currentTimeMillis();
         private final Set<WaitingItem> waitingList;
         private final List<BlockedItem> blockedProjects;
         private final List<BuildableItem> buildables;
         private final List<BuildableItem> pendings;
 
-        Snapshot(Set<WaitingItem> waitingList, List<BlockedItem> blockedProjects, List<BuildableItem> buildables,
+        Snapshot(long version, long modStamp, Set<WaitingItem> waitingList, List<BlockedItem> blockedProjects, List<BuildableItem> buildables,
                         List<BuildableItem> pendings) {
+            this.version = version;
+            this.modStamp = modStamp;
             this.waitingList = new LinkedHashSet<>(waitingList);
             this.blockedProjects = new ArrayList<>(blockedProjects);
             this.buildables = new ArrayList<>(buildables);
@@ -3011,7 +3438,7 @@ public class Queue extends ResourceController implements Saveable {
 
         @Override
         public String toString() {
-            return "Queue.Snapshot{waitingList=" + waitingList + ";blockedProjects=" + blockedProjects + ";buildables=" + buildables + ";pendings=" + pendings + "}";
+            return "Queue.Snapshot{version=" + version + ";waitingList=" + waitingList + ";blockedProjects=" + blockedProjects + ";buildables=" + buildables + ";pendings=" + pendings + "}";
         }
     }
 
@@ -3120,11 +3547,17 @@ public class Queue extends ResourceController implements Saveable {
 
         @Override
         public void onEnterWaiting(WaitingItem wi) {
+            if (JOURNAL && !(wi.task instanceof TransientTask)) {
+                Jenkins.get().getQueue().getJournal().enter(wi);
+            }
             push();
         }
 
         @Override
         public void onLeft(Queue.LeftItem li) {
+            if (JOURNAL) {
+                Jenkins.get().getQueue().getJournal().leave(li.getId());
+            }
             push();
         }
 
@@ -3143,7 +3576,13 @@ public class Queue extends ResourceController implements Saveable {
             try {
                 Jenkins j = Jenkins.getInstanceOrNull();
                 if (j != null) {
-                    j.getQueue().save();
+                    Queue q = j.getQueue();
+                    QueueJournal journal = q.getJournal();
+                    if (JOURNAL && journal.isOpen() && journal.getRecords() < Math.max(JOURNAL_COMPACTION_THRESHOLD, q.getItems().length)) {
+                        journal.force();
+                    } else {
+                        q.save();
+                    }
                 }
             } finally {
                 synchronized (lock) {
@@ -0,0 +1,211 @@
+package hudson.model;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of items entering and leaving the {@link Queue}, replayed on top of {@code queue.xml} when loading.
+ *
+ * <p>
+ * Each record holds the type, the item id, the item as XML when it enters, and a checksum,
+ * so that a record torn by a crash ends the replay instead of corrupting it.
+ * The file starts with a generation number which {@link Queue#save()} also writes into {@code queue.xml}:
+ * saving writes {@code queue.xml} with a new generation and then starts a new journal with it,
+ * so a journal left over from before the last successful save is never replayed twice.
+ */
+final class QueueJournal {
+    private static final int MAGIC = 0x514a4e4c;
+    private static final byte ENTER = '+';
+    private static final byte LEAVE = '-';
+    private static final int MAX_RECORD = 64 * 1024 * 1024;
+
+    private final File file;
+    private long generation;
+    private FileChannel channel;
+    private int records;
+
+    QueueJournal(File file) {
+        this.file = file;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Number of records written since the journal was started.
+     */
+    synchronized int getRecords() {
+        return records;
+    }
+
+    /**
+     * Whether records are being appended, as opposed to dropped until the next {@link #start(long)}
+     * after {@link #close()}, a failure to append, or {@link Queue#JOURNAL} being enabled since the last save.
+     */
+    synchronized boolean isOpen() {
+        return channel != null;
+    }
+
+    /**
+     * Replaces the journal with an empty one of the given generation and starts appending to it.
+     */
+    synchronized void start(long generation) throws IOException {
+        close();
+        Path target = file.toPath();
+        Files.createDirectories(target.getParent());
+        Path tmp = target.resolveSibling(file.getName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(12).putInt(MAGIC).putLong(generation);
+            header.flip();
+            while (header.hasRemaining()) {
+                ch.write(header);
+            }
+            ch.force(true);
+        }
+        try {
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        channel = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.generation = generation;
+        this.records = 0;
+    }
+
+    /**
+     * Stops appending, for example while the queue is being loaded. Records are dropped until the next {@link #start(long)}.
+     */
+    synchronized void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Failed to close " + file, e);
+            }
+            channel = null;
+        }
+    }
+
+    synchronized void enter(Queue.Item item) {
+        append(ENTER, item.getId(), Queue.XSTREAM.toXML(item).getBytes(StandardCharsets.UTF_8));
+    }
+
+    synchronized void leave(long id) {
+        append(LEAVE, id, new byte[0]);
+    }
+
+    /**
+     * Makes sure the records written so far survive a crash of the operating system, not just of Jenkins.
+     */
+    synchronized void force() {
+        if (channel != null) {
+            try {
+                channel.force(false);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to sync " + file, e);
+            }
+        }
+    }
+
+    private void append(byte type, long id, byte[] payload) {
+        if (channel == null) {
+            return;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(1 + 8 + 4 + payload.length + 8);
+        buf.put(type).putLong(id).putInt(payload.length).put(payload);
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), 0, buf.position());
+        buf.putLong(crc.getValue());
+        buf.flip();
+        try {
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            records++;
+        } catch (IOException e) {
+            // the next save writes everything to queue.xml and starts over
+            LOGGER.log(Level.WARNING, "Failed to append to " + file, e);
+            close();
+        }
+    }
+
+    /**
+     * Applies the records of a journal to the items loaded from {@code queue.xml}.
+     * Does nothing if the journal is of a different generation, and stops at the first incomplete or corrupt record.
+     *
+     * @param items items by id, in queue order
+     */
+    static void replay(File file, long generation, Map<Long, Queue.Item> items) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        int replayed = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            if (in.readInt() != MAGIC || in.readLong() != generation) {
+                LOGGER.log(Level.FINE, "Ignoring {0} from another generation", file);
+                return;
+            }
+            while (true) {
+                byte type = in.readByte();
+                long id = in.readLong();
+                int length = in.readInt();
+                if (length < 0 || length > MAX_RECORD) {
+                    LOGGER.log(Level.WARNING, "Corrupt record in {0} after {1} records", new Object[] {file, replayed});
+                    return;
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                long checksum = in.readLong();
+
+                CRC32 crc = new CRC32();
+                crc.update(ByteBuffer.allocate(13).put(type).putLong(id).putInt(length).array());
+                crc.update(payload);
+                if (crc.getValue() != checksum) {
+                    LOGGER.log(Level.WARNING, "Corrupt record in {0} after {1} records", new Object[] {file, replayed});
+                    return;
+                }
+
+                if (type == ENTER) {
+                    try {
+                        Object o = Queue.XSTREAM.fromXML(new String(payload, StandardCharsets.UTF_8));
+                        if (o instanceof Queue.Item) {
+                            items.put(id, (Queue.Item) o);
+                        }
+                    } catch (RuntimeException e) {
+                        // for example the job was deleted
+                        LOGGER.log(Level.WARNING, "Failed to restore queue item " + id + " from " + file, e);
+                    }
+                } else if (type == LEAVE) {
+                    items.remove(id);
+                }
+                replayed++;
+            }
+        } catch (EOFException e) {
+            // end of the journal, possibly in the middle of a record torn by a crash
+        } finally {
+            LOGGER.log(Level.FINE, "Replayed {0} records from {1}", new Object[] {replayed, file});
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(QueueJournal.class.getName());
+}
@@ -50,8 +50,10 @@ import hudson.cli.declarative.CLIMethod;
 import hudson.console.AnnotatedLargeText;
 import hudson.console.ConsoleLogFilter;
 import hudson.console.ConsoleNote;
+import hudson.console.LineOffsetIndex;
 import hudson.console.ModelHyperlinkNote;
 import hudson.console.PlainTextConsoleOutputStream;
+import hudson.console.PlainTextLog;
 import hudson.model.Descriptor.FormException;
 import hudson.model.listeners.RunListener;
 import hudson.model.listeners.SaveableListener;
@@ -64,6 +66,8 @@ import hudson.security.PermissionGroup;
 import hudson.security.PermissionScope;
 import hudson.tasks.BuildWrapper;
 import hudson.tasks.Fingerprinter.FingerprintAction;
+import hudson.util.BlockCompressedFile;
+import hudson.util.ByteArrayOutputStream2;
 import hudson.util.FormApply;
 import hudson.util.LogTaskListener;
 import hudson.util.ProcessTree;
@@ -87,6 +91,7 @@ import java.nio.file.StandardOpenOption;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.time.Instant;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
@@ -119,6 +124,7 @@ import jenkins.model.StandardArtifactManager;
 import jenkins.model.lazy.BuildReference;
 import jenkins.model.lazy.LazyBuildMixIn;
 import jenkins.security.MasterToSlaveCallable;
+import jenkins.util.SaveScheduler;
 import jenkins.util.SystemProperties;
 import jenkins.util.VirtualFile;
 import jenkins.util.io.OnMaster;
@@ -365,6 +371,7 @@ public abstract class Run<JobT extends Job<JobT, RunT>, RunT extends Run<JobT, R
     public void reload() throws IOException {
         this.state = State.COMPLETED;
         this.result = Result.ABORTED;  // defensive measure. value should be overwritten by unmarshal, but just in case the saved data is inconsistent
+        SaveScheduler.flush(this);
         getDataFile().unmarshal(this); // load the rest of the data
 
         if (state == State.COMPLETED) {
@@ -1508,6 +1515,10 @@ public abstract class Run<JobT extends Job<JobT, RunT>, RunT extends Run<JobT, R
                 throw new IOException(e);
             }
         }
+        BlockCompressedFile blocks = getBlockCompressedLog();
+        if (blocks.exists()) {
+            return blocks.read(0);
+        }
 
         String message = "No such file: " + logFile;
         return new ByteArrayInputStream(charset != null ? message.getBytes(charset) : message.getBytes(Charset.defaultCharset()));
@@ -1568,7 +1579,21 @@ public abstract class Run<JobT extends Job<JobT, RunT>, RunT extends Run<JobT, R
      * @return A {@link Run} log with annotations
      */
     public @NonNull AnnotatedLargeText getLogText() {
-        return new AnnotatedLargeText(getLogFile(), getCharset(), !isLogUpdated(), this);
+        File logFile = getLogFile();
+        if (!logFile.exists()) {
+            BlockCompressedFile blocks = getBlockCompressedLog();
+            if (blocks.exists()) {
+                return new AnnotatedLargeText(blocks, getCharset(), !isLogUpdated(), this);
+            }
+        }
+        return new AnnotatedLargeText(logFile, getCharset(), !isLogUpdated(), this);
+    }
+
+    /**
+     * Gets the log as written when {@link #COMPRESS_LOG} is set, which is used when there is no {@link #getLogFile}.
+     */
+    private BlockCompressedFile getBlockCompressedLog() {
+        return new BlockCompressedFile(new File(getRootDir(), "log.blocks"));
     }
 
     @Override
@@ -1625,6 +1650,8 @@ public abstract class Run<JobT extends Job<JobT, RunT>, RunT extends Run<JobT, R
 
             isPendingDelete = true;
         }
+        // so that nothing is written back into the directory once deleted
+        SaveScheduler.cancel(this);
 
         File rootDir = getRootDir();
         if (!rootDir.isDirectory()) {
@@ -1972,7 +1999,11 @@ public abstract class Run<JobT extends Job<JobT, RunT>, RunT extends Run<JobT, R
         // gets reflected to the file immediately, which can then be
         // served to the browser immediately
         try {
-            return Files.newOutputStream(getLogFile().toPath(), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            File logFile = getLogFile();
+            if (COMPRESS_LOG && !logFile.exists()) {
+                return getBlockCompressedLog().write();
+            }
+            return LineOffsetIndex.record(logFile, Files.newOutputStream(logFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.APPEND));
         } catch (InvalidPathException e) {
             throw new IOException(e);
         }
@@ -2058,6 +2089,7 @@ public abstract class Run<JobT extends Job<JobT, RunT>, RunT extends Run<JobT, R
     @Override
     public synchronized void save() throws IOException {
         if (BulkChange.contains(this))   return;
+        if (SaveScheduler.defer(this))   return;
         getDataFile().write(this);
         SaveableListener.fireOnChange(this, getDataFile());
     }
@@ -2091,7 +2123,16 @@ public abstract class Run<JobT extends Job<JobT, RunT>, RunT extends Run<JobT, R
      */
     @Deprecated
     public @NonNull String getLog() throws IOException {
-        return Util.loadFile(getLogFile(), getCharset());
+        File logFile = getLogFile();
+        if (!logFile.exists()) {
+            BlockCompressedFile blocks = getBlockCompressedLog();
+            if (blocks.exists()) {
+                try (InputStream in = blocks.read(0)) {
+                    return new String(in.readAllBytes(), getCharset());
+                }
+            }
+        }
+        return Util.loadFile(logFile, getCharset());
     }
 
     /**
@@ -2107,6 +2148,20 @@ public abstract class Run<JobT extends Job<JobT, RunT>, RunT extends Run<JobT, R
         if (maxLines == 0) {
             return Collections.emptyList();
         }
+        if (maxLines > 0) {
+            LineOffsetIndex index = LineOffsetIndex.of(getLogFile(), !isLogUpdated());
+            if (index != null) {
+                return getLog(index, maxLines);
+            }
+            if (!getLogFile().exists()) {
+                BlockCompressedFile blocks = getBlockCompressedLog();
+                if (blocks.exists()) {
+                    try (InputStream in = blocks.read(0)) {
+                        return getLog(in, 0, maxLines, false);
+                    }
+                }
+            }
+        }
 
         int lines = 0;
         long filePointer;
@@ -2148,6 +2203,87 @@ public abstract class Run<JobT extends Job<JobT, RunT>, RunT extends Run<JobT, R
         return ConsoleNote.removeNotes(lastLines);
     }
 
+    /**
+     * Same as {@link #getLog(int)}, but seeks to the first line to return using the index.
+     */
+    private List<String> getLog(LineOffsetIndex index, int maxLines) throws IOException {
+        File logFile = getLogFile();
+        long newlines = index.countNewlines();
+        boolean endsWithNewline;
+        try (RandomAccessFile fileHandler = new RandomAccessFile(logFile, "r")) {
+            long length = fileHandler.length();
+            endsWithNewline = length > 0 && readByteAt(fileHandler, length - 1) == '\n';
+        }
+        // a newline ending the log does not start another line here
+        long total = endsWithNewline ? newlines : newlines + 1;
+        long first = Math.max(0, total - maxLines);
+        long start = index.getOffset(first);
+        if (start < 0) {
+            // the log was replaced meanwhile
+            start = 0;
+        }
+
+        try (InputStream in = Files.newInputStream(logFile.toPath())) {
+            IOUtils.skipFully(in, start);
+            return getLog(in, start, maxLines, total > maxLines);
+        }
+    }
+
+    /**
+     * Same as {@link #getLog(int)}, but reads the log forward.
+     *
+     * @param offset the offset of the log {@code in} starts at, which must be the start of a line
+     * @param truncated whether there are lines before {@code offset}
+     */
+    private List<String> getLog(InputStream in, long offset, int maxLines, boolean truncated) throws IOException {
+        ArrayDeque<String> lastLines = new ArrayDeque<>(Math.min(maxLines, 128));
+        ArrayDeque<Long> starts = new ArrayDeque<>(Math.min(maxLines, 128));
+        ByteArrayOutputStream2 line = new ByteArrayOutputStream2();
+        long pos = offset;
+        long lineStart = offset;
+        int last = -1;
+        int b;
+        in = new BufferedInputStream(in);
+        while ((b = in.read()) != -1) {
+            pos++;
+            if (b == '\n') {
+                lastLines.addLast(new String(line.getBuffer(), 0, line.size(), getCharset()));
+                starts.addLast(lineStart);
+                line.reset();
+                lineStart = pos;
+            } else if (b != '\r') {
+                line.write(b);
+            }
+            if (lastLines.size() > maxLines) {
+                lastLines.removeFirst();
+                starts.removeFirst();
+                truncated = true;
+            }
+            last = b;
+        }
+        // a newline ending the log does not start another line here
+        if (line.size() > 0 || last != '\n') {
+            lastLines.addLast(new String(line.getBuffer(), 0, line.size(), getCharset()));
+            starts.addLast(lineStart);
+            if (lastLines.size() > maxLines) {
+                lastLines.removeFirst();
+                starts.removeFirst();
+                truncated = true;
+            }
+        }
+
+        List<String> result = new ArrayList<>(lastLines);
+        if (truncated && !result.isEmpty()) {
+            result.set(0, "[...truncated " + Functions.humanReadableByteSize(starts.getFirst() - 2) + "...]");
+        }
+        return ConsoleNote.removeNotes(result);
+    }
+
+    private static int readByteAt(RandomAccessFile fileHandler, long position) throws IOException {
+        fileHandler.seek(position);
+        return fileHandler.read();
+    }
+
     private String convertBytesToString(List<Byte> bytes) {
         Collections.reverse(bytes);
         byte[] byteArray = new byte[bytes.size()];
@@ -2285,6 +2421,18 @@ public abstract class Run<JobT extends Job<JobT, RunT>, RunT extends Run<JobT, R
      */
     public void doConsoleText(StaplerRequest req, StaplerResponse rsp) throws IOException {
         rsp.setContentType("text/plain;charset=UTF-8");
+        File logFile = getLogFile();
+        if (!isLogUpdated() && logFile.isFile() && !logFile.getName().endsWith(".gz")) {
+            // unless compressing the response anyway, send it straight from the file
+            String encoding = req.getHeader("Accept-Encoding");
+            if (req.getHeader("Range") != null || encoding == null || !encoding.contains("gzip")) {
+                PlainTextLog log = PlainTextLog.of(logFile);
+                if (log != null) {
+                    log.serve(req, rsp);
+                    return;
+                }
+            }
+        }
         try (InputStream input = getLogInputStream();
              OutputStream os = rsp.getCompressedOutputStream(req);
              PlainTextConsoleOutputStream out = new PlainTextConsoleOutputStream(os)) {
@@ -2667,6 +2815,15 @@ public abstract class Run<JobT extends Job<JobT, RunT>, RunT extends Run<JobT, R
     @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
     public static /* Script Console modifiable */ boolean SKIP_PERMISSION_CHECK = SystemProperties.getBoolean(Run.class.getName() + ".skipPermissionCheck");
 
+    /**
+     * Whether to write the log of new builds compressed as it is written, as a {@link BlockCompressedFile} named {@code log.blocks}.
+     * Such logs are served through {@link #getLogText()}, {@link #getLogInputStream()} and {@link #getLog(int)},
+     * but not {@link #getLogFile()}.
+     */
+    @Restricted(NoExternalUse.class)
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* Script Console modifiable */ boolean COMPRESS_LOG = SystemProperties.getBoolean(Run.class.getName() + ".compressLog");
+
 
     public static class RedirectUp {
         public void doDynamic(StaplerRequest req, StaplerResponse rsp) throws IOException {
@@ -48,6 +48,7 @@ import java.util.logging.Logger;
 import jenkins.model.RunIdMigrator;
 import jenkins.model.lazy.AbstractLazyLoadRunMap;
 import jenkins.model.lazy.BuildReference;
+import jenkins.model.lazy.BuildSummaryIndex;
 import jenkins.model.lazy.LazyBuildMixIn;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
@@ -271,6 +272,10 @@ public final class RunMap<R extends Run<?, R>> extends AbstractLazyLoadRunMap<R>
             try {
                 R b = cons.create(d);
                 b.onLoad();
+                if (BuildSummaryIndex.ENABLED && job != null) {
+                    // fill in builds completed before the index was enabled
+                    getSummaries().record(b);
+                }
                 if (LOGGER.isLoggable(FINEST)) {
                     LOGGER.log(FINEST, "Loaded " + b.getFullDisplayName() + " in " + Thread.currentThread().getName(), new ThisIsHowItsLoaded());
                 }
@@ -76,6 +76,7 @@ import jenkins.scm.RunWithSCM;
 import jenkins.security.ImpersonatingUserDetailsService2;
 import jenkins.security.LastGrantedAuthoritiesProperty;
 import jenkins.security.UserDetailsCache;
+import jenkins.util.SaveScheduler;
 import jenkins.util.SystemProperties;
 import net.sf.json.JSONObject;
 import org.jenkinsci.Symbol;
@@ -819,6 +820,9 @@ public class User extends AbstractModelObject implements AccessControlled, Descr
         if (BulkChange.contains(this)) {
             return;
         }
+        if (SaveScheduler.defer(this)) {
+            return;
+        }
         XmlFile xmlFile = new XmlFile(XSTREAM, constructUserConfigFile());
         xmlFile.write(this);
         SaveableListener.fireOnChange(this, xmlFile);
@@ -838,6 +842,8 @@ public class User extends AbstractModelObject implements AccessControlled, Descr
      * @throws IOException if we fail to delete.
      */
     public void delete() throws IOException {
+        // so that nothing is written back into the directory once deleted
+        SaveScheduler.cancel(this);
         String idKey = idStrategy().keyFor(id);
         File existingUserFolder = getExistingUserFolder();
         UserIdMapper.getInstance().remove(id);
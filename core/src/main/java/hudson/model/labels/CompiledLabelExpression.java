@@ -0,0 +1,264 @@
+package hudson.model.labels;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.model.Label;
+import hudson.model.Node;
+import hudson.util.VariableResolver;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * A {@link Label} compiled into a flat program over bit sets of interned {@link LabelAtom}s.
+ *
+ * <p>
+ * Every atom name gets a number, so that a set of labels can be represented as a bit set,
+ * and the expression tree is flattened into postfix operations on a stack of bits kept in a single {@code long}.
+ * Matching then neither allocates nor walks the tree nor looks up names,
+ * which pays off when the label sets of all the nodes are computed once and matched against many labels,
+ * as {@link Label#getNodes()} and trimming unused labels do.
+ *
+ * <p>
+ * The result is the same as {@link Label#matches(VariableResolver)} with a resolver checking the names of the atoms.
+ * Only labels consisting of the core {@link LabelExpression}s and {@link LabelAtom} can be compiled,
+ * as anything else may implement matching arbitrarily.
+ * Neither can labels naming atoms beyond the first {@link #MAX_ATOMS} seen, which keeps the table of atom numbers bounded.
+ *
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+public final class CompiledLabelExpression {
+    /**
+     * Whether {@link Label#getNodes()} and trimming unused labels use compiled labels.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* Script Console modifiable */ boolean ENABLED = SystemProperties.getBoolean(CompiledLabelExpression.class.getName() + ".enabled");
+
+    /**
+     * Maximum number of distinct atom names to number.
+     * Numbers are never reused, as compiled labels and the labels of nodes may still refer to them,
+     * so once there are that many, labels with other atoms are evaluated as usual instead.
+     * Not final for tests only.
+     */
+    static int MAX_ATOMS = SystemProperties.getInteger(CompiledLabelExpression.class.getName() + ".maxAtoms", 10000);
+
+    private static final int NOT = -1;
+    private static final int AND = -2;
+    private static final int OR = -3;
+    private static final int IFF = -4;
+    private static final int IMPLIES = -5;
+
+    /**
+     * Number of each atom name seen so far, up to {@link #MAX_ATOMS}.
+     */
+    private static final Map<String, Integer> IDS = new ConcurrentHashMap<>();
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+    /**
+     * Incremented whenever labels are reset, which is when {@link #nodeLabels} needs to be recomputed.
+     */
+    private static final AtomicLong GENERATION = new AtomicLong();
+    private static volatile NodeLabels nodeLabels;
+
+    /**
+     * Atom numbers, which are non-negative, and operators.
+     */
+    private final int[] program;
+
+    private CompiledLabelExpression(int[] program) {
+        this.program = program;
+    }
+
+    /**
+     * Compiles a label.
+     *
+     * @return null if the label cannot be compiled, in which case it has to be evaluated as usual
+     */
+    @CheckForNull
+    public static CompiledLabelExpression compile(@NonNull Label label) {
+        List<Integer> program = new ArrayList<>();
+        if (compile(label, program, 0) < 0) {
+            return null;
+        }
+        return new CompiledLabelExpression(program.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    /**
+     * @param depth the number of bits on the stack before evaluating this label
+     * @return the maximum depth of the stack while evaluating this label, or -1 if it cannot be compiled
+     */
+    private static int compile(Label l, List<Integer> program, int depth) {
+        if (depth >= Long.SIZE) {
+            return -1;
+        }
+        Class<?> c = l.getClass();
+        if (c == LabelAtom.class) {
+            int id = idOf(l.getName());
+            if (id < 0) {
+                return -1;
+            }
+            program.add(id);
+            return depth + 1;
+        }
+        if (c == LabelExpression.Paren.class) {
+            return compile(((LabelExpression.Paren) l).base, program, depth);
+        }
+        if (c == LabelExpression.Not.class) {
+            int max = compile(((LabelExpression.Not) l).base, program, depth);
+            program.add(NOT);
+            return max;
+        }
+        int op;
+        if (c == LabelExpression.And.class) {
+            op = AND;
+        } else if (c == LabelExpression.Or.class) {
+            op = OR;
+        } else if (c == LabelExpression.Iff.class) {
+            op = IFF;
+        } else if (c == LabelExpression.Implies.class) {
+            op = IMPLIES;
+        } else {
+            return -1;
+        }
+        LabelExpression.Binary b = (LabelExpression.Binary) l;
+        int lhs = compile(b.lhs, program, depth);
+        if (lhs < 0) {
+            return -1;
+        }
+        int rhs = compile(b.rhs, program, depth + 1);
+        if (rhs < 0) {
+            return -1;
+        }
+        program.add(op);
+        return Math.max(lhs, rhs);
+    }
+
+    /**
+     * @return the number of the atom, or -1 if it has none and there are already {@link #MAX_ATOMS}
+     */
+    private static int idOf(String name) {
+        Integer id = IDS.get(name);
+        if (id != null) {
+            return id;
+        }
+        if (IDS.size() >= MAX_ATOMS) {
+            return -1;
+        }
+        // labels of nodes computed before may have left this atom out
+        invalidate();
+        return IDS.computeIfAbsent(name, k -> NEXT_ID.getAndIncrement());
+    }
+
+    /**
+     * Converts a set of labels into the bit set expected by {@link #matches(long[])}.
+     * Atoms left without a number can be left out, as no compiled label refers to them, nor ever will.
+     */
+    @NonNull
+    public static long[] toBits(@NonNull Collection<LabelAtom> labels) {
+        long[] bits = new long[0];
+        for (LabelAtom a : labels) {
+            int id = idOf(a.getName());
+            if (id < 0) {
+                continue;
+            }
+            if (id >>> 6 >= bits.length) {
+                bits = Arrays.copyOf(bits, (id >>> 6) + 1);
+            }
+            bits[id >>> 6] |= 1L << id;
+        }
+        return bits;
+    }
+
+    /**
+     * Checks whether a set of labels, as obtained from {@link #toBits(Collection)}, satisfies this label.
+     */
+    public boolean matches(@NonNull long[] bits) {
+        long stack = 0;
+        for (int i : program) {
+            switch (i) {
+                case NOT:
+                    stack ^= 1;
+                    break;
+                case AND:
+                case OR:
+                case IFF:
+                case IMPLIES:
+                    boolean a = (stack & 2) != 0;
+                    boolean b = (stack & 1) != 0;
+                    boolean r;
+                    if (i == AND) {
+                        r = a && b;
+                    } else if (i == OR) {
+                        r = a || b;
+                    } else if (i == IFF) {
+                        r = a == b;
+                    } else {
+                        r = !a || b;
+                    }
+                    stack = stack >>> 2 << 1 | (r ? 1 : 0);
+                    break;
+                default:
+                    boolean set = i >>> 6 < bits.length && (bits[i >>> 6] & 1L << i) != 0;
+                    stack = stack << 1 | (set ? 1 : 0);
+            }
+        }
+        return (stack & 1) != 0;
+    }
+
+    /**
+     * Gets the nodes of Jenkins with their labels converted by {@link #toBits(Collection)}.
+     * These are computed once and reused until labels get {@linkplain #invalidate() reset} or the list of nodes changes.
+     */
+    @NonNull
+    public static NodeLabels getNodeLabels(@NonNull Jenkins j) {
+        long generation = GENERATION.get();
+        List<Node> nodes = new ArrayList<>();
+        nodes.add(j);
+        nodes.addAll(j.getNodes());
+        NodeLabels current = nodeLabels;
+        if (current != null && current.generation == generation && current.nodes.equals(nodes)) {
+            return current;
+        }
+        List<long[]> bits = new ArrayList<>(nodes.size());
+        for (Node n : nodes) {
+            bits.add(toBits(n.getAssignedLabels()));
+        }
+        return nodeLabels = new NodeLabels(generation, nodes, bits);
+    }
+
+    /**
+     * Called whenever labels are reset, as the labels of some node may have changed.
+     */
+    public static void invalidate() {
+        GENERATION.incrementAndGet();
+    }
+
+    /**
+     * The nodes of Jenkins and their labels.
+     */
+    public static final class NodeLabels {
+        private final long generation;
+        public final List<Node> nodes;
+        /**
+         * The labels of the node at the same index.
+         */
+        public final List<long[]> bits;
+
+        private NodeLabels(long generation, List<Node> nodes, List<long[]> bits) {
+            this.generation = generation;
+            this.nodes = nodes;
+            this.bits = bits;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package hudson.model.queue;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.model.Computer;
+import hudson.model.Executor;
+import hudson.model.Item;
+import hudson.model.Label;
+import hudson.model.Node;
+import hudson.model.Queue;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.Beta;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * {@link LoadPredictor} which forecasts when busy executors become free
+ * from how long the same job has recently taken on the same node.
+ *
+ * <p>
+ * {@link Run#getEstimatedDuration()} averages over builds wherever they ran,
+ * which is off when nodes differ in speed or in how warm their workspaces are.
+ * This predictor learns a moving average of durations per job and node as builds complete,
+ * and falls back to {@link Executor#getEstimatedRemainingTimeMillis()} where it has not seen the job on the node yet.
+ *
+ * <p>
+ * When enabled with {@code hudson.model.queue.HistoricalLoadPredictor.enabled}, it replaces
+ * {@link LoadPredictor.CurrentlyRunningTasks} for {@link MappingWorksheet},
+ * and {@link hudson.slaves.NodeProvisioner.StandardStrategyImpl} counts executors forecast to be free
+ * within {@link #PROVISIONING_HORIZON} as capacity, so that clouds are not provisioned for load about to clear.
+ *
+ * <p>
+ * How well forecasts match actual durations is tracked, see {@link #getForecastCount()}.
+ *
+ * @since TODO
+ */
+@Extension
+public class HistoricalLoadPredictor extends LoadPredictor {
+    @Restricted(NoExternalUse.class)
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* Script Console modifiable */ boolean ENABLED = SystemProperties.getBoolean(HistoricalLoadPredictor.class.getName() + ".enabled");
+
+    /**
+     * Milliseconds within which executors forecast to become free are counted as available for provisioning decisions.
+     */
+    @Restricted(NoExternalUse.class)
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* Script Console modifiable */ long PROVISIONING_HORIZON = SystemProperties.getLong(HistoricalLoadPredictor.class.getName() + ".provisioningHorizon", TimeUnit.SECONDS.toMillis(30));
+
+    /**
+     * Weight of the latest duration in the moving average.
+     */
+    private static final double WEIGHT = 0.3;
+
+    private static final int MAX_ENTRIES = 10000;
+
+    /**
+     * Moving average of durations in milliseconds, keyed by {@link #key(String, String)}, most recently used last.
+     */
+    private final Map<String, Long> durations = Collections.synchronizedMap(new LinkedHashMap<String, Long>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    });
+
+    /**
+     * Forecasts made when builds started, to be compared with their actual durations.
+     */
+    private final Map<Run<?, ?>, long[]> forecasts = new ConcurrentHashMap<>();
+
+    private long forecastCount;
+    private long absoluteError;
+    private long signedError;
+    private long baselineAbsoluteError;
+
+    public static HistoricalLoadPredictor get() {
+        return ExtensionList.lookupSingleton(HistoricalLoadPredictor.class);
+    }
+
+    @Override
+    public Iterable<FutureLoad> predict(MappingWorksheet plan, Computer computer, long start, long eternity) {
+        if (!ENABLED) {
+            return Collections.emptyList();
+        }
+        long now = System.currentTimeMillis();
+        List<FutureLoad> fl = new ArrayList<>();
+        for (Executor e : computer.getExecutors()) {
+            if (e.isIdle())     continue;
+
+            long eta = getEstimatedRemainingTimeMillis(e);
+            long end = eta < 0 ? eternity : now + eta;
+            if (end < start)    continue;
+            fl.add(new FutureLoad(start, end - start, 1));
+        }
+        return fl;
+    }
+
+    /**
+     * Forecasts how long the build on a busy executor still takes.
+     *
+     * @return -1 if unknown
+     */
+    public long getEstimatedRemainingTimeMillis(@NonNull Executor e) {
+        Queue.Executable x = e.getCurrentExecutable();
+        Long d = null;
+        if (x != null) {
+            String job = jobOf(x.getParent().getOwnerTask());
+            if (job != null) {
+                d = durations.get(key(job, e.getOwner().getName()));
+            }
+        }
+        if (d != null) {
+            long eta = d - e.getElapsedTime();
+            if (eta > 0) {
+                return eta;
+            }
+        }
+        return e.getEstimatedRemainingTimeMillis();
+    }
+
+    /**
+     * Counts the busy executors of the nodes matching the label which are forecast to become free within the given time.
+     *
+     * @param label as in {@link hudson.slaves.NodeProvisioner}, null for nodes taking any build
+     */
+    public int countFreeWithin(@CheckForNull Label label, long millis) {
+        int n = 0;
+        for (Computer c : Jenkins.get().getComputers()) {
+            Node node = c.getNode();
+            if (node == null || !c.isOnline() || !c.isAcceptingTasks()) {
+                continue;
+            }
+            if (label == null ? node.getMode() != Node.Mode.NORMAL : !label.contains(node)) {
+                continue;
+            }
+            for (Executor e : c.getExecutors()) {
+                if (e.isIdle()) continue;
+                long eta = getEstimatedRemainingTimeMillis(e);
+                if (eta >= 0 && eta <= millis) {
+                    n++;
+                }
+            }
+        }
+        return n;
+    }
+
+    private void started(Run<?, ?> r) {
+        Executor e = r.getExecutor();
+        if (e == null) {
+            return;
+        }
+        Long d = durations.get(key(r.getParent().getFullName(), e.getOwner().getName()));
+        long baseline = r.getEstimatedDuration();
+        long forecast = d != null ? d : baseline;
+        if (forecast >= 0 && baseline >= 0) {
+            forecasts.put(r, new long[] {forecast, baseline});
+        }
+    }
+
+    private void completed(Run<?, ?> r) {
+        Executor e = r.getExecutor();
+        long duration = r.getDuration();
+        long[] f = forecasts.remove(r);
+        if (f != null) {
+            synchronized (this) {
+                forecastCount++;
+                absoluteError += Math.abs(f[0] - duration);
+                signedError += f[0] - duration;
+                baselineAbsoluteError += Math.abs(f[1] - duration);
+            }
+        }
+        if (e == null || r.getResult() == null || r.getResult().isWorseThan(Result.UNSTABLE)) {
+            // failed builds tend to end early and would skew the average
+            return;
+        }
+        record(r.getParent().getFullName(), e.getOwner().getName(), duration);
+    }
+
+    /**
+     * Adds how long a build of a job took on a node to the moving average.
+     */
+    /*package*/ void record(@NonNull String job, @NonNull String node, long duration) {
+        durations.merge(key(job, node), duration, (old, latest) -> Math.round(old + WEIGHT * (latest - old)));
+    }
+
+    private static String key(String job, String node) {
+        return job + '\0' + node;
+    }
+
+    @CheckForNull
+    private static String jobOf(Queue.Task t) {
+        return t instanceof Item ? ((Item) t).getFullName() : null;
+    }
+
+    /**
+     * Number of builds whose duration was forecast when they started.
+     */
+    @Restricted(Beta.class)
+    public synchronized long getForecastCount() {
+        return forecastCount;
+    }
+
+    /**
+     * Mean absolute difference between forecast and actual durations, in milliseconds.
+     */
+    @Restricted(Beta.class)
+    public synchronized long getMeanAbsoluteError() {
+        return forecastCount == 0 ? 0 : absoluteError / forecastCount;
+    }
+
+    /**
+     * Mean of forecast minus actual durations, in milliseconds; positive when forecasts are too pessimistic.
+     */
+    @Restricted(Beta.class)
+    public synchronized long getMeanError() {
+        return forecastCount == 0 ? 0 : signedError / forecastCount;
+    }
+
+    /**
+     * Mean absolute error of {@link Run#getEstimatedDuration()} for the same builds, to compare with {@link #getMeanAbsoluteError()}.
+     */
+    @Restricted(Beta.class)
+    public synchronized long getBaselineMeanAbsoluteError() {
+        return forecastCount == 0 ? 0 : baselineAbsoluteError / forecastCount;
+    }
+
+    @Restricted(NoExternalUse.class)
+    @Extension
+    public static final class Listener extends RunListener<Run<?, ?>> {
+        @Override
+        public void onStarted(Run<?, ?> r, TaskListener listener) {
+            if (ENABLED) {
+                get().started(r);
+            }
+        }
+
+        @Override
+        public void onCompleted(Run<?, ?> r, @NonNull TaskListener listener) {
+            if (ENABLED) {
+                get().completed(r);
+            }
+        }
+
+        @Override
+        public void onFinalized(Run<?, ?> r) {
+            get().forecasts.remove(r);
+        }
+    }
+}
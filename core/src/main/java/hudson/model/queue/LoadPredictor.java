@@ -86,11 +86,15 @@ public abstract class LoadPredictor implements ExtensionPoint {
 
     /**
      * Considers currently running tasks and their completion.
+     * Steps aside for {@link HistoricalLoadPredictor} when that is enabled.
      */
     @Extension
     public static class CurrentlyRunningTasks extends LoadPredictor {
         @Override
         public Iterable<FutureLoad> predict(MappingWorksheet plan, final Computer computer, long start, long eternity) {
+            if (HistoricalLoadPredictor.ENABLED) {
+                return Collections.emptyList();
+            }
             long now = System.currentTimeMillis();
             List<FutureLoad> fl = new ArrayList<>();
             for (Executor e : computer.getExecutors()) {
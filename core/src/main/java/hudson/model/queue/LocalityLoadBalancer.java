@@ -0,0 +1,193 @@
+package hudson.model.queue;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.FilePath;
+import hudson.model.Computer;
+import hudson.model.LoadBalancer;
+import hudson.model.MultiStageTimeSeries.TimeScale;
+import hudson.model.Queue.Task;
+import hudson.model.TopLevelItem;
+import hudson.model.queue.MappingWorksheet.ExecutorChunk;
+import hudson.model.queue.MappingWorksheet.Mapping;
+import hudson.model.queue.MappingWorksheet.WorkChunk;
+import hudson.node_monitors.DiskSpaceMonitor;
+import hudson.node_monitors.DiskSpaceMonitorDescriptor.DiskSpace;
+import hudson.util.ConsistentHash;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * {@link LoadBalancer} that packs builds onto the nodes where their workspaces are likely to be warm.
+ *
+ * <p>
+ * Each {@link ExecutorChunk} that can take a {@link WorkChunk} is scored by
+ * <ul>
+ *     <li>locality: whether the work was last built there or has been sent there before, so that a workspace is likely left,
+ *         and that workspace is not held by another build
+ *         (in which case {@link hudson.slaves.WorkspaceList} would hand out a fresh {@code @2} workspace),
+ *     <li>load: how busy the node has recently been according to {@link Computer#getLoadStatistics()},
+ *         preferring busier nodes so that builds are packed rather than spread,
+ *     <li>free disk space as last reported by {@link DiskSpaceMonitor}, relative to the size of the disk.
+ * </ul>
+ * Chunks with equal scores are tried in the same order as {@link LoadBalancer#CONSISTENT_HASH} would,
+ * so that work which has never been built tends to go to the same node.
+ *
+ * <p>
+ * Selected instead of {@link LoadBalancer#CONSISTENT_HASH} when {@code hudson.model.queue.LocalityLoadBalancer.enabled} is set,
+ * or installed with {@link hudson.model.Queue#setLoadBalancer(LoadBalancer)}.
+ *
+ * @since TODO
+ */
+public class LocalityLoadBalancer extends LoadBalancer {
+    /**
+     * Whether Jenkins uses this instead of {@link LoadBalancer#CONSISTENT_HASH} from startup.
+     */
+    @Restricted(NoExternalUse.class)
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* Script Console modifiable */ boolean ENABLED = SystemProperties.getBoolean(LocalityLoadBalancer.class.getName() + ".enabled");
+
+    static final double LOCALITY_WEIGHT = 4;
+    static final double LOAD_WEIGHT = 2;
+    static final double DISK_WEIGHT = 1;
+
+    /**
+     * Names of the nodes where work has been sent, keyed by affinity key, for the most recently scheduled work.
+     */
+    private final Map<String, Set<String>> sentTo = new LinkedHashMap<String, Set<String>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Set<String>> eldest) {
+            return size() > 10000;
+        }
+    };
+
+    @CheckForNull
+    @Override
+    public synchronized Mapping map(@NonNull Task task, MappingWorksheet ws) {
+        String key = affinityKey(task);
+        List<List<ExecutorChunk>> candidates = new ArrayList<>(ws.works.size());
+        for (int i = 0; i < ws.works.size(); i++) {
+            WorkChunk wc = ws.works(i);
+            String k = key + (i > 0 ? String.valueOf(i) : "");
+            candidates.add(rank(wc, k));
+        }
+
+        Mapping m = ws.new Mapping();
+        if (!assignGreedily(m, candidates, 0)) {
+            return null;
+        }
+        assert m.isCompletelyValid();
+        for (int i = 0; i < m.size(); i++) {
+            sentTo.computeIfAbsent(key + (i > 0 ? String.valueOf(i) : ""), k -> new HashSet<>()).add(m.assigned(i).getName());
+        }
+        return m;
+    }
+
+    /**
+     * Orders the executor chunks applicable to the given work from the best to the worst.
+     */
+    private List<ExecutorChunk> rank(WorkChunk wc, String key) {
+        List<ExecutorChunk> chunks = wc.applicableExecutorChunks();
+        ConsistentHash<ExecutorChunk> hash = new ConsistentHash<>(ExecutorChunk::getName);
+        Map<ExecutorChunk, Integer> toAdd = new HashMap<>();
+        for (ExecutorChunk ec : chunks) {
+            toAdd.put(ec, ec.size() * 100);
+        }
+        hash.addAll(toAdd);
+
+        Set<String> previous = sentTo.getOrDefault(key, Collections.emptySet());
+        Map<ExecutorChunk, Double> scores = new HashMap<>();
+        List<ExecutorChunk> ranked = new ArrayList<>(chunks.size());
+        for (ExecutorChunk ec : hash.list(key)) {
+            boolean warm = wc.lastBuiltOn == ec || previous.contains(ec.getName());
+            if (warm && isWorkspaceInUse(wc, ec)) {
+                warm = false;
+            }
+            scores.put(ec, score(warm, utilization(ec.computer), freeDisk(ec.computer)));
+            ranked.add(ec);
+        }
+        // stable, so chunks with the same score keep the order of the consistent hash
+        ranked.sort(Comparator.comparingDouble(scores::get).reversed());
+        return ranked;
+    }
+
+    /**
+     * Combines the factors described in the class documentation, each between 0 and 1.
+     */
+    static double score(boolean warm, double utilization, double freeDisk) {
+        return (warm ? LOCALITY_WEIGHT : 0) + LOAD_WEIGHT * utilization + DISK_WEIGHT * freeDisk;
+    }
+
+    private static boolean isWorkspaceInUse(WorkChunk wc, ExecutorChunk ec) {
+        SubTask s = wc.get(0);
+        if (!(s instanceof TopLevelItem)) {
+            return false;
+        }
+        FilePath ws = ec.node.getWorkspaceFor((TopLevelItem) s);
+        return ws != null && ec.computer.getWorkspaceList().isInUse(ws);
+    }
+
+    private static double utilization(Computer c) {
+        int total = c.countExecutors();
+        if (total == 0) {
+            return 0;
+        }
+        double busy = c.getLoadStatistics().busyExecutors.getLatest(TimeScale.SEC10);
+        return Math.min(1, Math.max(0, busy / total));
+    }
+
+    private static double freeDisk(Computer c) {
+        if (DiskSpaceMonitor.DESCRIPTOR == null) {
+            return 1;
+        }
+        DiskSpace ds = DiskSpaceMonitor.DESCRIPTOR.get(c);
+        if (ds == null) {
+            return 1;
+        }
+        if (ds.isTriggered() || ds.isWarning()) {
+            return 0;
+        }
+        if (ds.getTotalSize() <= 0) {
+            return 1;
+        }
+        return Math.min(1, (double) ds.size / ds.getTotalSize());
+    }
+
+    private static String affinityKey(Task task) {
+        try {
+            return task.getAffinityKey();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.FINE, null, e);
+            return task.getFullDisplayName();
+        }
+    }
+
+    private static boolean assignGreedily(Mapping m, List<List<ExecutorChunk>> candidates, int i) {
+        if (i == candidates.size()) {
+            return true;
+        }
+        for (ExecutorChunk ec : candidates.get(i)) {
+            m.assign(i, ec);
+            if (m.isPartiallyValid() && assignGreedily(m, candidates, i + 1)) {
+                return true;
+            }
+        }
+        m.assign(i, null);
+        return false;
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(LocalityLoadBalancer.class.getName());
+}
@@ -40,6 +40,7 @@ import hudson.model.MultiStageTimeSeries.TimeScale;
 import hudson.model.Node;
 import hudson.model.PeriodicWork;
 import hudson.model.Queue;
+import hudson.model.queue.HistoricalLoadPredictor;
 import java.awt.Color;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -406,11 +407,11 @@ public class NodeProvisioner {
         private int additionalPlannedCapacity;
 
         /**
-         * Should only be instantiated by {@link NodeProvisioner#update()}
+         * Should only be instantiated by {@link NodeProvisioner#update()}, or by tests.
          * @param label the label.
          * @param plannedCapacitySnapshot the planned executor count.
          */
-        private StrategyState(LoadStatistics.LoadStatisticsSnapshot snapshot, @CheckForNull Label label, int plannedCapacitySnapshot) {
+        /*package*/ StrategyState(LoadStatistics.LoadStatisticsSnapshot snapshot, @CheckForNull Label label, int plannedCapacitySnapshot) {
             this.snapshot = snapshot;
             this.label = label;
             this.plannedCapacitySnapshot = plannedCapacitySnapshot;
@@ -675,6 +676,10 @@ public class NodeProvisioner {
                         + state.getAdditionalPlannedCapacity();
 
                 float excessWorkload = qlen - plannedCapacity - connectingCapacity;
+                if (HistoricalLoadPredictor.ENABLED && !needSomeWhenNoneAtAll) {
+                    // executors about to become free will take some of the work
+                    excessWorkload -= HistoricalLoadPredictor.get().countFreeWithin(state.getLabel(), HistoricalLoadPredictor.PROVISIONING_HORIZON);
+                }
                 if (needSomeWhenNoneAtAll && excessWorkload < 1) {
                     // in this specific exceptional case we should just provision right now
                     // the exponential smoothing will delay the build unnecessarily
@@ -697,44 +702,18 @@ public class NodeProvisioner {
                                     snapshot.getConnectingExecutors(),
                             });
 
-                    CLOUD:
                     for (Cloud c : Jenkins.get().clouds) {
                         if (excessWorkload < 0) {
                             break;  // enough agents allocated
                         }
-                        Cloud.CloudState cloudState = new Cloud.CloudState(state.getLabel(), state.getAdditionalPlannedCapacity());
-
-                        // Make sure this cloud actually can provision for this label.
-                        if (c.canProvision(cloudState)) {
-                            // provisioning a new node should be conservative --- for example if excessWorkload is 1.4,
-                            // we don't want to allocate two nodes but just one.
-                            // OTOH, because of the exponential decay, even when we need one agent,
-                            // excess workload is always
-                            // something like 0.95, in which case we want to allocate one node.
-                            // so the threshold here is 1-MARGIN, and hence floor(excessWorkload+MARGIN) is needed to
-                            // handle this.
-
-                            int workloadToProvision = (int) Math.round(Math.floor(excessWorkload + m));
-
-                            for (CloudProvisioningListener cl : CloudProvisioningListener.all()) {
-                                if (cl.canProvision(c, cloudState, workloadToProvision) != null) {
-                                    // consider displaying reasons in a future cloud ux
-                                    continue CLOUD;
-                                }
-                            }
-
-                            Collection<PlannedNode> additionalCapacities = c.provision(cloudState, workloadToProvision);
-
-                            fireOnStarted(c, state.getLabel(), additionalCapacities);
-
-                            for (PlannedNode ac : additionalCapacities) {
-                                excessWorkload -= ac.numExecutors;
-                                LOGGER.log(Level.INFO, "Started provisioning {0} from {1} with {2,number,integer} "
-                                                + "executors. Remaining excess workload: {3,number,#.###}",
-                                        new Object[]{ac.displayName, c.name, ac.numExecutors, excessWorkload});
-                            }
-                            state.recordPendingLaunches(additionalCapacities);
-                        }
+                        // provisioning a new node should be conservative --- for example if excessWorkload is 1.4,
+                        // we don't want to allocate two nodes but just one.
+                        // OTOH, because of the exponential decay, even when we need one agent,
+                        // excess workload is always
+                        // something like 0.95, in which case we want to allocate one node.
+                        // so the threshold here is 1-MARGIN, and hence floor(excessWorkload+MARGIN) is needed to
+                        // handle this.
+                        excessWorkload = provision(c, state, excessWorkload, (int) Math.round(Math.floor(excessWorkload + m)));
                     }
                     // we took action, only pass on to other strategies if our action was insufficient
                     return excessWorkload > 1 - m ? StrategyDecision.CONSULT_REMAINING_STRATEGIES : StrategyDecision.PROVISIONING_COMPLETED;
@@ -900,8 +879,44 @@ public class NodeProvisioner {
         }
     }
 
-    private static void fireOnStarted(final Cloud cloud, final Label label,
-                                      final Collection<NodeProvisioner.PlannedNode> plannedNodes) {
+    /**
+     * Asks a cloud for nodes, if it can provision for the label under consideration
+     * and no {@link CloudProvisioningListener} objects, and records the nodes it starts.
+     *
+     * @param excessWorkload the workload left before asking this cloud
+     * @param workloadToProvision the number of executors to ask for
+     * @return the workload left once the executors of the nodes started are counted
+     */
+    /*package*/ static float provision(Cloud c, StrategyState state, float excessWorkload, int workloadToProvision) {
+        Cloud.CloudState cloudState = new Cloud.CloudState(state.getLabel(), state.getAdditionalPlannedCapacity());
+
+        // Make sure this cloud actually can provision for this label.
+        if (!c.canProvision(cloudState)) {
+            return excessWorkload;
+        }
+        for (CloudProvisioningListener cl : CloudProvisioningListener.all()) {
+            if (cl.canProvision(c, cloudState, workloadToProvision) != null) {
+                // consider displaying reasons in a future cloud ux
+                return excessWorkload;
+            }
+        }
+
+        Collection<PlannedNode> additionalCapacities = c.provision(cloudState, workloadToProvision);
+
+        fireOnStarted(c, state.getLabel(), additionalCapacities);
+
+        for (PlannedNode ac : additionalCapacities) {
+            excessWorkload -= ac.numExecutors;
+            LOGGER.log(Level.INFO, "Started provisioning {0} from {1} with {2,number,integer} "
+                            + "executors. Remaining excess workload: {3,number,#.###}",
+                    new Object[]{ac.displayName, c.name, ac.numExecutors, excessWorkload});
+        }
+        state.recordPendingLaunches(additionalCapacities);
+        return excessWorkload;
+    }
+
+    /*package*/ static void fireOnStarted(final Cloud cloud, final Label label,
+                                          final Collection<NodeProvisioner.PlannedNode> plannedNodes) {
         for (CloudProvisioningListener cl : CloudProvisioningListener.all()) {
             try {
                 cl.onStarted(cloud, label, plannedNodes);
@@ -0,0 +1,143 @@
+package hudson.slaves;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.Extension;
+import hudson.model.Label;
+import hudson.model.LoadStatistics;
+import hudson.model.Queue;
+import hudson.model.queue.QueueListener;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import org.jenkinsci.Symbol;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * {@link NodeProvisioner.Strategy} reacting to items entering the queue rather than to moving averages.
+ *
+ * <p>
+ * {@link NodeProvisioner.StandardStrategyImpl} looks at exponential moving averages of {@link LoadStatistics}
+ * sampled every {@link LoadStatistics#CLOCK}, which is robust against short spikes but takes minutes to catch up with
+ * a burst of hundreds of items. This strategy instead asks for a review as soon as an item becomes buildable,
+ * and provisions for the current queue length, minus the executors available, connecting or being provisioned,
+ * plus the items expected to arrive within {@link #LOOKAHEAD} at the arrival rate recently seen for the label.
+ *
+ * <p>
+ * Enabled with {@code hudson.slaves.QueueRateProvisioningStrategy.enabled}, in which case it runs before the standard strategy.
+ * The standard strategy is only consulted for a label when the clouds could not provision enough for the excess workload
+ * found here.
+ *
+ * @since TODO
+ */
+@Extension(ordinal = 100) @Symbol("queueRate")
+public class QueueRateProvisioningStrategy extends NodeProvisioner.Strategy {
+    @Restricted(NoExternalUse.class)
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* Script Console modifiable */ boolean ENABLED = SystemProperties.getBoolean(QueueRateProvisioningStrategy.class.getName() + ".enabled");
+
+    /**
+     * Seconds of arrivals at the current rate to provision for in advance, for example the time it takes to launch an agent.
+     */
+    @Restricted(NoExternalUse.class)
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* Script Console modifiable */ int LOOKAHEAD = SystemProperties.getInteger(QueueRateProvisioningStrategy.class.getName() + ".lookahead", 0);
+
+    /**
+     * Arrival rates keyed by {@link #key(Label)}.
+     */
+    private static final Map<String, ArrivalRate> RATES = new ConcurrentHashMap<>();
+
+    @NonNull
+    @Override
+    public NodeProvisioner.StrategyDecision apply(@NonNull NodeProvisioner.StrategyState state) {
+        if (!ENABLED) {
+            return NodeProvisioner.StrategyDecision.CONSULT_REMAINING_STRATEGIES;
+        }
+        LoadStatistics.LoadStatisticsSnapshot snapshot = state.getSnapshot();
+        ArrivalRate rate = RATES.get(key(state.getLabel()));
+        int excessWorkload = excessWorkload(
+                snapshot.getQueueLength(),
+                snapshot.getAvailableExecutors(),
+                snapshot.getConnectingExecutors(),
+                state.getPlannedCapacitySnapshot() + state.getAdditionalPlannedCapacity(),
+                rate == null ? 0 : rate.get(System.nanoTime()));
+        if (excessWorkload <= 0) {
+            return NodeProvisioner.StrategyDecision.PROVISIONING_COMPLETED;
+        }
+        LOGGER.log(Level.FINE, "Excess workload {0} detected for {1}", new Object[] {excessWorkload, state.getLabel()});
+
+        float remaining = excessWorkload;
+        for (Cloud c : Jenkins.get().clouds) {
+            if (remaining <= 0) {
+                break;
+            }
+            remaining = NodeProvisioner.provision(c, state, remaining, (int) Math.ceil(remaining));
+        }
+        return remaining > 0 ? NodeProvisioner.StrategyDecision.CONSULT_REMAINING_STRATEGIES : NodeProvisioner.StrategyDecision.PROVISIONING_COMPLETED;
+    }
+
+    /**
+     * Computes how many executors to provision.
+     *
+     * @param ratePerSecond recent arrivals per second, projected over {@link #LOOKAHEAD}
+     */
+    static int excessWorkload(int queueLength, int available, int connecting, int planned, double ratePerSecond) {
+        double demand = queueLength + ratePerSecond * LOOKAHEAD;
+        return (int) Math.ceil(demand - available - connecting - planned);
+    }
+
+    private static String key(@CheckForNull Label label) {
+        return label == null ? "" : label.getExpression();
+    }
+
+    /**
+     * Number of arrivals per second, decaying exponentially with {@link #TIME_CONSTANT}.
+     */
+    static final class ArrivalRate {
+        static final long TIME_CONSTANT = TimeUnit.SECONDS.toNanos(10);
+
+        private double rate;
+        private long last;
+
+        ArrivalRate(long now) {
+            last = now;
+        }
+
+        synchronized void arrive(long now) {
+            rate = get(now) + (double) TimeUnit.SECONDS.toNanos(1) / TIME_CONSTANT;
+            last = now;
+        }
+
+        synchronized double get(long now) {
+            return rate * Math.exp(-(double) (now - last) / TIME_CONSTANT);
+        }
+    }
+
+    /**
+     * Tracks arrivals and asks the relevant {@link NodeProvisioner} for a review right away.
+     */
+    @Restricted(NoExternalUse.class)
+    @Extension
+    public static final class ArrivalListener extends QueueListener {
+        @Override
+        public void onEnterBuildable(Queue.BuildableItem bi) {
+            if (!ENABLED) {
+                return;
+            }
+            Label label = bi.getAssignedLabel();
+            long now = System.nanoTime();
+            RATES.computeIfAbsent(key(label), k -> new ArrivalRate(now)).arrive(now);
+            NodeProvisioner np = label == null ? Jenkins.get().unlabeledNodeProvisioner : label.nodeProvisioner;
+            np.suggestReviewNow();
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(QueueRateProvisioningStrategy.class.getName());
+}
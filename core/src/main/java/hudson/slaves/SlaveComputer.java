@@ -762,7 +762,7 @@ public class SlaveComputer extends Computer {
             }
         }
         log.println("Agent successfully connected and online");
-        Jenkins.get().getQueue().scheduleMaintenance();
+        Jenkins.get().getQueue().scheduleMaintenanceForExecutors();
     }
 
     @Override
@@ -38,6 +38,8 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
 
 /**
  * Used by {@link Computer} to keep track of workspaces that are actively in use.
@@ -192,6 +194,16 @@ public final class WorkspaceList {
         }
     }
 
+    /**
+     * Checks whether a workspace is currently held, so that {@link #allocate(FilePath)} would pick another one.
+     * @since TODO
+     */
+    @Restricted(NoExternalUse.class)
+    public synchronized boolean isInUse(@NonNull FilePath p) {
+        Entry e = inUse.get(p.getRemote());
+        return e != null && !e.quick;
+    }
+
     /**
      * Just record that this workspace is being used, without paying any attention to the synchronization support.
      */
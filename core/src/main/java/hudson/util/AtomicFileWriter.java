@@ -26,10 +26,12 @@ package hudson.util;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
 import edu.umd.cs.findbugs.annotations.Nullable;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import hudson.Functions;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.Writer;
 import java.lang.ref.Cleaner;
 import java.nio.channels.FileChannel;
@@ -41,9 +43,13 @@ import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
 
 /**
  * Buffered {@link FileWriter} that supports atomic operations.
@@ -67,6 +73,15 @@ public class AtomicFileWriter extends Writer {
     private static /* final */ boolean REQUIRES_DIR_FSYNC = SystemProperties.getBoolean(
             AtomicFileWriter.class.getName() + ".REQUIRES_DIR_FSYNC", !Functions.isWindows());
 
+    /**
+     * Whether concurrent commits into the same directory share the fsync of that directory,
+     * rather than each one waiting for its own.
+     */
+    @Restricted(NoExternalUse.class)
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* Script Console modifiable */ boolean GROUP_COMMIT = SystemProperties.getBoolean(
+            AtomicFileWriter.class.getName() + ".GROUP_COMMIT", true);
+
     static {
         if (DISABLE_FORCED_FLUSH) {
             LOGGER.log(Level.WARNING, "DISABLE_FORCED_FLUSH flag used, this could result in dataloss if failures happen in your storage subsystem.");
@@ -247,8 +262,97 @@ public class AtomicFileWriter extends Writer {
          *     reached disk. For that an explicit fsync() on a file descriptor for the directory is also needed.
          */
         if (!DISABLE_FORCED_FLUSH && REQUIRES_DIR_FSYNC) {
-            try (FileChannel parentChannel = FileChannel.open(destPath.getParent())) {
-                parentChannel.force(true);
+            if (GROUP_COMMIT) {
+                DirectorySync.sync(destPath.getParent());
+            } else {
+                fsync(destPath.getParent());
+            }
+        }
+    }
+
+    private static void fsync(Path dir) throws IOException {
+        try (FileChannel parentChannel = FileChannel.open(dir)) {
+            parentChannel.force(true);
+        }
+    }
+
+    /**
+     * Group commit of the entries of a directory.
+     * A commit returns once an fsync of the directory started after its move completes,
+     * and one fsync is enough for all the moves done before it started,
+     * so commits waiting while an fsync is under way are all covered by the next one.
+     */
+    private static final class DirectorySync {
+        private static final Map<Path, DirectorySync> SYNCS = new HashMap<>();
+
+        private final Path dir;
+        /**
+         * Number of moves which asked for an fsync so far.
+         */
+        private long requested;
+        /**
+         * Number of moves covered by a completed fsync.
+         */
+        private long synced;
+        private boolean syncing;
+        private int users;
+
+        private DirectorySync(Path dir) {
+            this.dir = dir;
+        }
+
+        static void sync(Path dir) throws IOException {
+            DirectorySync s;
+            synchronized (SYNCS) {
+                s = SYNCS.computeIfAbsent(dir, DirectorySync::new);
+                s.users++;
+            }
+            try {
+                s.sync();
+            } finally {
+                synchronized (SYNCS) {
+                    if (--s.users == 0) {
+                        SYNCS.remove(dir);
+                    }
+                }
+            }
+        }
+
+        private void sync() throws IOException {
+            long covered;
+            synchronized (this) {
+                long ticket = ++requested;
+                while (synced < ticket) {
+                    if (!syncing) {
+                        break;
+                    }
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while waiting for " + dir + " to be synced");
+                    }
+                }
+                if (synced >= ticket) {
+                    return;
+                }
+                // lead the next fsync, for everyone who got here so far
+                syncing = true;
+                covered = requested;
+            }
+            boolean done = false;
+            try {
+                fsync(dir);
+                done = true;
+            } finally {
+                synchronized (this) {
+                    syncing = false;
+                    if (done) {
+                        synced = Math.max(synced, covered);
+                    }
+                    // on failure, whoever is waiting tries again
+                    notifyAll();
+                }
             }
         }
     }
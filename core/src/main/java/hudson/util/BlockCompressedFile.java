@@ -0,0 +1,316 @@
+package hudson.util;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import jenkins.util.Timer;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.Beta;
+
+/**
+ * File compressed as it is written, in blocks which can be decompressed independently,
+ * so that reading from an offset decompresses only the blocks from there on.
+ *
+ * <p>
+ * The compressed blocks are appended to the file itself, and the end of each block, both compressed and uncompressed,
+ * to an offset table in the file name + "-index". A block is only listed there once it is completely written,
+ * so the file can be read while it is being written, and a crash loses at most the last block.
+ * Unlike {@link CompressedFile}, the data is never stored uncompressed.
+ *
+ * @since TODO
+ */
+@Restricted(Beta.class)
+public class BlockCompressedFile {
+    /**
+     * Amount of data compressed into one block, unless flushed earlier.
+     */
+    static final int BLOCK_SIZE = 256 * 1024;
+
+    /**
+     * How long written data may stay buffered before it is made visible to readers.
+     */
+    static final long FLUSH_INTERVAL = TimeUnit.SECONDS.toMillis(1);
+
+    private static final int ENTRY = 16;
+
+    private final File file;
+    private final File index;
+
+    public BlockCompressedFile(@NonNull File file) {
+        this.file = file;
+        this.index = new File(file.getParentFile(), file.getName() + "-index");
+    }
+
+    public @NonNull File getFile() {
+        return file;
+    }
+
+    public boolean exists() {
+        return file.isFile() && index.isFile();
+    }
+
+    /**
+     * Reads the offset table.
+     *
+     * @return the uncompressed end of block {@code i} at {@code 2 * i}, its compressed end at {@code 2 * i + 1}
+     */
+    private long[] readIndex() throws IOException {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(index.toPath());
+        } catch (NoSuchFileException e) {
+            return new long[0];
+        }
+        // an entry may be half written
+        ByteBuffer buf = ByteBuffer.wrap(bytes, 0, bytes.length / ENTRY * ENTRY);
+        long[] ends = new long[buf.remaining() / 8];
+        for (int i = 0; i < ends.length; i++) {
+            ends[i] = buf.getLong();
+        }
+        return ends;
+    }
+
+    /**
+     * Gets the uncompressed length of what has been written so far.
+     */
+    public long length() throws IOException {
+        long[] ends = readIndex();
+        return ends.length == 0 ? 0 : ends[ends.length - 2];
+    }
+
+    /**
+     * Opens the uncompressed data from an offset, decompressing only the blocks from the one holding it.
+     * The stream ends at the end of the last block written when it was opened.
+     */
+    public @NonNull InputStream read(long start) throws IOException {
+        if (!exists()) {
+            throw new FileNotFoundException(file.getName());
+        }
+        long[] ends = readIndex();
+        int block = 0;
+        while (block < ends.length / 2 && ends[2 * block] <= start) {
+            block++;
+        }
+        return new BlockInputStream(ends, block, start);
+    }
+
+    /**
+     * Gets the stream to write the file from scratch.
+     * Data is compressed once a block fills up, when the stream is closed, or when flushed after {@link #FLUSH_INTERVAL}.
+     */
+    public @NonNull OutputStream write() throws IOException {
+        Files.deleteIfExists(index.toPath());
+        return new BlockOutputStream();
+    }
+
+    private final class BlockInputStream extends InputStream {
+        private final long[] ends;
+        private final RandomAccessFile in;
+        private int block;
+        private byte[] data = new byte[0];
+        private int pos;
+
+        BlockInputStream(long[] ends, int block, long start) throws IOException {
+            this.ends = ends;
+            this.in = new RandomAccessFile(file, "r");
+            this.block = block;
+            if (block < ends.length / 2) {
+                inflate();
+                long blockStart = block == 0 ? 0 : ends[2 * block - 2];
+                pos = (int) (start - blockStart);
+                this.block++;
+            }
+        }
+
+        private void inflate() throws IOException {
+            long from = block == 0 ? 0 : ends[2 * block - 1];
+            long uncompressed = ends[2 * block] - (block == 0 ? 0 : ends[2 * block - 2]);
+            byte[] compressed = new byte[(int) (ends[2 * block + 1] - from)];
+            in.seek(from);
+            in.readFully(compressed);
+            data = new byte[(int) uncompressed];
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(compressed);
+                int n = 0;
+                while (n < data.length && !inflater.finished()) {
+                    int r = inflater.inflate(data, n, data.length - n);
+                    if (r == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new EOFException("truncated block " + block + " of " + file);
+                    }
+                    n += r;
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("corrupt block " + block + " of " + file, e);
+            } finally {
+                inflater.end();
+            }
+            pos = 0;
+        }
+
+        private boolean fill() throws IOException {
+            while (pos >= data.length) {
+                if (block >= ends.length / 2) {
+                    return false;
+                }
+                inflate();
+                block++;
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? data[pos++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(@NonNull byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(len, data.length - pos);
+            System.arraycopy(data, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = 0;
+            while (skipped < n && fill()) {
+                int s = (int) Math.min(n - skipped, data.length - pos);
+                pos += s;
+                skipped += s;
+            }
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private final class BlockOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final OutputStream table;
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        private final ByteArrayOutputStream2 buffer = new ByteArrayOutputStream2();
+        private final byte[] compressed = new byte[BLOCK_SIZE + 1024];
+        private final ScheduledFuture<?> flusher;
+        private long uncompressedEnd;
+        private long compressedEnd;
+        private long lastBlock = System.currentTimeMillis();
+        private boolean closed;
+
+        BlockOutputStream() throws IOException {
+            out = Files.newOutputStream(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            table = Files.newOutputStream(index.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            // so that a build going quiet does not hide what it last wrote
+            flusher = Timer.get().scheduleWithFixedDelay(this::flushIfStale, FLUSH_INTERVAL, FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            buffer.write(b);
+            if (buffer.size() >= BLOCK_SIZE) {
+                writeBlock();
+            }
+        }
+
+        @Override
+        public synchronized void write(@NonNull byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = Math.min(len, BLOCK_SIZE - buffer.size());
+                buffer.write(b, off, n);
+                off += n;
+                len -= n;
+                if (buffer.size() >= BLOCK_SIZE) {
+                    writeBlock();
+                }
+            }
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            if (System.currentTimeMillis() - lastBlock >= FLUSH_INTERVAL) {
+                writeBlock();
+            }
+        }
+
+        private synchronized void flushIfStale() {
+            if (closed) {
+                return;
+            }
+            try {
+                flush();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to flush " + file, e);
+            }
+        }
+
+        private void writeBlock() throws IOException {
+            lastBlock = System.currentTimeMillis();
+            if (buffer.size() == 0) {
+                return;
+            }
+            deflater.reset();
+            deflater.setInput(buffer.getBuffer(), 0, buffer.size());
+            deflater.finish();
+            long size = 0;
+            while (!deflater.finished()) {
+                int n = deflater.deflate(compressed);
+                out.write(compressed, 0, n);
+                size += n;
+            }
+            out.flush();
+            uncompressedEnd += buffer.size();
+            compressedEnd += size;
+            buffer.reset();
+            // only list the block once it is there
+            table.write(ByteBuffer.allocate(ENTRY).putLong(uncompressedEnd).putLong(compressedEnd).array());
+            table.flush();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            flusher.cancel(false);
+            try {
+                writeBlock();
+            } finally {
+                deflater.end();
+                try {
+                    out.close();
+                } finally {
+                    table.close();
+                }
+            }
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(BlockCompressedFile.class.getName());
+}
@@ -44,6 +44,7 @@ import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
 import com.thoughtworks.xstream.mapper.Mapper;
 import com.thoughtworks.xstream.security.InputManipulationException;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import hudson.diagnosis.OldDataMonitor;
 import hudson.model.Saveable;
 import hudson.security.ACL;
@@ -56,6 +57,7 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
@@ -65,6 +67,8 @@ import jenkins.util.SystemProperties;
 import jenkins.util.xstream.CriticalXStreamException;
 import net.jcip.annotations.GuardedBy;
 import org.acegisecurity.Authentication;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
 
 /**
  * Custom {@link ReflectionConverter} that handle errors more gracefully.
@@ -83,6 +87,13 @@ public class RobustReflectionConverter implements Converter {
     private static /* non-final for Groovy */ boolean RECORD_FAILURES_FOR_ALL_AUTHENTICATIONS = SystemProperties.getBoolean(RobustReflectionConverter.class.getName() + ".recordFailuresForAllAuthentications", false);
     private static /* non-final for Groovy */ boolean RECORD_FAILURES_FOR_ADMINS = SystemProperties.getBoolean(RobustReflectionConverter.class.getName() + ".recordFailuresForAdmins", false);
 
+    /**
+     * Whether to remember, for each class and element name, how an element is unmarshalled, rather than asking the mapper each time.
+     */
+    @Restricted(NoExternalUse.class)
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* Script Console modifiable */ boolean PLANS = SystemProperties.getBoolean(RobustReflectionConverter.class.getName() + ".plans", true);
+
     protected final ReflectionProvider reflectionProvider;
     protected final Mapper mapper;
     protected transient SerializationMembers serializationMethodInvoker;
@@ -96,6 +107,11 @@ public class RobustReflectionConverter implements Converter {
     private final ReadWriteLock criticalFieldsLock = new ReentrantReadWriteLock();
     @GuardedBy("criticalFieldsLock")
     private final Map<String, Set<String>> criticalFields = new HashMap<>();
+    /**
+     * Members by element name, for each class unmarshalled so far.
+     * Replaced whenever something they were computed from changes.
+     */
+    private transient volatile Plans plans;
 
     public RobustReflectionConverter(Mapper mapper, ReflectionProvider reflectionProvider) {
         this(mapper, reflectionProvider, new XStream2().new PluginClassOwnership());
@@ -124,6 +140,14 @@ public class RobustReflectionConverter implements Converter {
             // Unlock
             criticalFieldsLock.writeLock().unlock();
         }
+        clearPlans();
+    }
+
+    /**
+     * Forgets how elements are unmarshalled, after a change to the mapper.
+     */
+    void clearPlans() {
+        plans = null;
     }
 
     private boolean hasCriticalField(Class<?> clazz, String field) {
@@ -330,26 +354,22 @@ public class RobustReflectionConverter implements Converter {
 
             boolean critical = false;
             try {
-                String fieldName = mapper.realMember(result.getClass(), reader.getNodeName());
-                for (Class<?> concrete = result.getClass(); concrete != null; concrete = concrete.getSuperclass()) {
-                    // Not quite right since a subclass could shadow a field, but probably suffices:
-                    if (hasCriticalField(concrete, fieldName)) {
-                        critical = true;
-                        break;
-                    }
-                }
-                boolean implicitCollectionHasSameName = mapper.getImplicitCollectionDefForFieldName(result.getClass(), reader.getNodeName()) != null;
+                Member member = member(result.getClass(), reader.getNodeName());
+                String fieldName = member.fieldName;
+                critical = member.critical;
 
                 Class classDefiningField = determineWhichClassDefinesField(reader);
-                boolean fieldExistsInClass = !implicitCollectionHasSameName && fieldDefinedInClass(result, fieldName);
+                boolean fieldExistsInClass = member.field != null;
 
-                Class type = determineType(reader, fieldExistsInClass, result, fieldName, classDefiningField);
+                Class type = fieldExistsInClass && classDefiningField == null
+                        ? determineType(reader, member)
+                        : determineType(reader, fieldExistsInClass, result, fieldName, classDefiningField);
                 final Object value;
                 if (fieldExistsInClass) {
-                    Field field = reflectionProvider.getField(result.getClass(), fieldName);
+                    Field field = member.field;
                     value = unmarshalField(context, result, type, field);
                     // TODO the reflection provider should have returned the proper field in first place ....
-                    Class definedType = reflectionProvider.getFieldType(result, fieldName, classDefiningField);
+                    Class definedType = classDefiningField == null ? field.getType() : reflectionProvider.getFieldType(result, fieldName, classDefiningField);
                     if (!definedType.isPrimitive()) {
                         type = definedType;
                     }
@@ -443,6 +463,102 @@ public class RobustReflectionConverter implements Converter {
         list.add(e);
     }
 
+    /**
+     * How the child elements of a given name of an object of a given class are unmarshalled,
+     * unless they say which class defines their field.
+     */
+    private static final class Member {
+        final String fieldName;
+        final boolean critical;
+        /**
+         * The field to unmarshal into, or null if the element is an item of an implicit collection or is unknown.
+         */
+        final Field field;
+        /**
+         * What to unmarshal into {@link #field} unless the element specifies its class.
+         */
+        final Class<?> defaultType;
+
+        Member(String fieldName, boolean critical, Field field, Class<?> defaultType) {
+            this.fieldName = fieldName;
+            this.critical = critical;
+            this.field = field;
+            this.defaultType = defaultType;
+        }
+    }
+
+    /**
+     * Unmarshalling plans of one {@link RobustReflectionConverter}.
+     */
+    private static final class Plans extends ClassValue<Map<String, Member>> {
+        /**
+         * Aliases of the {@code class} and {@code defined-in} attributes.
+         */
+        final String classAttribute;
+        final String definedInAttribute;
+        final String resolvesToAttribute;
+
+        Plans(Mapper mapper) {
+            classAttribute = mapper.aliasForAttribute("class");
+            definedInAttribute = mapper.aliasForAttribute("defined-in");
+            resolvesToAttribute = mapper.aliasForAttribute("resolves-to");
+        }
+
+        @Override
+        protected Map<String, Member> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    }
+
+    private Plans plans() {
+        Plans p = plans;
+        if (p == null) {
+            plans = p = new Plans(mapper);
+        }
+        return p;
+    }
+
+    private Member member(Class<?> type, String elementName) {
+        if (!PLANS) {
+            return computeMember(type, elementName);
+        }
+        Map<String, Member> members = plans().get(type);
+        Member member = members.get(elementName);
+        if (member == null) {
+            member = computeMember(type, elementName);
+            members.put(elementName, member);
+        }
+        return member;
+    }
+
+    private Member computeMember(Class<?> type, String elementName) {
+        String fieldName = mapper.realMember(type, elementName);
+        boolean critical = false;
+        for (Class<?> concrete = type; concrete != null; concrete = concrete.getSuperclass()) {
+            // Not quite right since a subclass could shadow a field, but probably suffices:
+            if (hasCriticalField(concrete, fieldName)) {
+                critical = true;
+                break;
+            }
+        }
+        boolean implicitCollectionHasSameName = mapper.getImplicitCollectionDefForFieldName(type, elementName) != null;
+        // during unmarshalling, unmarshal into transient fields like XStream 1.1.3
+        Field field = implicitCollectionHasSameName ? null : reflectionProvider.getFieldOrNull(type, fieldName);
+        Class<?> defaultType = field != null ? mapper.defaultImplementationOf(field.getType()) : null;
+        return new Member(fieldName, critical, field, defaultType);
+    }
+
+    private Class determineType(HierarchicalStreamReader reader, Member member) {
+        String classAttribute = reader.getAttribute(PLANS ? plans().classAttribute : mapper.aliasForAttribute("class"));
+        if (classAttribute != null) {
+            Class specifiedType = mapper.realClass(classAttribute);
+            if (member.field.getType().isAssignableFrom(specifiedType))
+                // make sure that the specified type in XML is compatible with the field type.
+                return specifiedType;
+        }
+        return member.defaultType;
+    }
+
     private boolean fieldDefinedInClass(Object result, String attrName) {
         // during unmarshalling, unmarshal into transient fields like XStream 1.1.3
         //boolean fieldExistsInClass = reflectionProvider.fieldDefinedInClass(attrName, result.getClass());
@@ -480,12 +596,12 @@ public class RobustReflectionConverter implements Converter {
     }
 
     private Class determineWhichClassDefinesField(HierarchicalStreamReader reader) {
-        String definedIn = reader.getAttribute(mapper.aliasForAttribute("defined-in"));
+        String definedIn = reader.getAttribute(PLANS ? plans().definedInAttribute : mapper.aliasForAttribute("defined-in"));
         return definedIn == null ? null : mapper.realClass(definedIn);
     }
 
     protected Object instantiateNewInstance(HierarchicalStreamReader reader, UnmarshallingContext context) {
-        String readResolveValue = reader.getAttribute(mapper.aliasForAttribute("resolves-to"));
+        String readResolveValue = reader.getAttribute(PLANS ? plans().resolvesToAttribute : mapper.aliasForAttribute("resolves-to"));
 
         Class type = readResolveValue != null ? mapper.realClass(readResolveValue) : context.getRequiredType();
 
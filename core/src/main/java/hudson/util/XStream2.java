@@ -46,6 +46,7 @@ import com.thoughtworks.xstream.io.HierarchicalStreamDriver;
 import com.thoughtworks.xstream.io.HierarchicalStreamReader;
 import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
 import com.thoughtworks.xstream.io.ReaderWrapper;
+import com.thoughtworks.xstream.io.StreamException;
 import com.thoughtworks.xstream.io.xml.StandardStaxDriver;
 import com.thoughtworks.xstream.mapper.CannotResolveClassException;
 import com.thoughtworks.xstream.mapper.Mapper;
@@ -68,6 +69,7 @@ import hudson.util.xstream.ImmutableSetConverter;
 import hudson.util.xstream.ImmutableSortedSetConverter;
 import hudson.util.xstream.MapperDelegate;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
@@ -84,6 +86,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
 import jenkins.model.Jenkins;
 import jenkins.util.SystemProperties;
 import jenkins.util.xstream.SafeURLConverter;
@@ -113,6 +116,7 @@ public class XStream2 extends XStream {
     private final ThreadLocal<Boolean> oldData = new ThreadLocal<>();
     private final @CheckForNull ClassOwnership classOwnership;
     private final Map<String, Class<?>> compatibilityAliases = new ConcurrentHashMap<>();
+    private final HierarchicalStreamDriver driver;
 
     /**
      * Hook to insert {@link Mapper}s after they are created.
@@ -165,18 +169,40 @@ public class XStream2 extends XStream {
         protected XMLOutputFactory createOutputFactory() {
             return XMLOutputFactory.newInstance();
         }
+
+        private static final String REUSE_INSTANCE = "reuse-instance";
+
+        /**
+         * Input factories told to hand out their last parser again once it is closed, one per thread as they are not thread safe.
+         * Only the JDK's own StAX implementation knows how to do that.
+         */
+        private final ThreadLocal<XMLInputFactory> pooledInputFactory = ThreadLocal.withInitial(() -> {
+            XMLInputFactory factory = createInputFactory();
+            if (factory.isPropertySupported(REUSE_INSTANCE)) {
+                factory.setProperty(REUSE_INSTANCE, true);
+            }
+            return factory;
+        });
+
+        HierarchicalStreamReader createPooledReader(InputStream in) {
+            try {
+                // a parser still in use, for example by a read during which this one happens, is not handed out
+                return createStaxReader(pooledInputFactory.get().createXMLStreamReader(in));
+            } catch (XMLStreamException e) {
+                throw new StreamException(e);
+            }
+        }
     }
 
     public XStream2() {
-        super(getDefaultDriver());
-        init();
-        classOwnership = null;
+        this(getDefaultDriver());
     }
 
     public XStream2(HierarchicalStreamDriver hierarchicalStreamDriver) {
         super(hierarchicalStreamDriver);
         init();
         classOwnership = null;
+        driver = hierarchicalStreamDriver;
     }
 
     /**
@@ -188,12 +214,39 @@ public class XStream2 extends XStream {
         super(reflectionProvider, driver, classLoaderReference, mapper, converterLookup, converterRegistry);
         init();
         classOwnership = null;
+        this.driver = driver;
     }
 
     XStream2(ClassOwnership classOwnership) {
-        super(getDefaultDriver());
+        this(getDefaultDriver(), classOwnership);
+    }
+
+    private XStream2(HierarchicalStreamDriver driver, ClassOwnership classOwnership) {
+        super(driver);
         init();
         this.classOwnership = classOwnership;
+        this.driver = driver;
+    }
+
+    /**
+     * The driver this instance reads and writes XML with.
+     */
+    @Restricted(NoExternalUse.class)
+    public HierarchicalStreamDriver getDriver() {
+        return driver;
+    }
+
+    /**
+     * Creates a reader for a whole document using a parser which the current thread reuses for every document it reads this way,
+     * rather than setting up a new one each time, if the driver supports it.
+     * The reader must be closed once done with, for its parser to be reused.
+     */
+    @Restricted(NoExternalUse.class)
+    public static HierarchicalStreamReader createPooledReader(HierarchicalStreamDriver driver, InputStream in) {
+        if (driver instanceof StaxDriver) {
+            return ((StaxDriver) driver).createPooledReader(in);
+        }
+        return driver.createReader(in);
     }
 
     @Override
@@ -398,6 +451,7 @@ public class XStream2 extends XStream {
      */
     public void setMapper(Mapper m) {
         mapperInjectionPoint.setDelegate(m);
+        clearPlans();
     }
 
     static final class MapperInjectionPoint extends MapperDelegate {
@@ -431,6 +485,69 @@ public class XStream2 extends XStream {
         compatibilityAliases.put(oldClassName, newClass);
     }
 
+    // what the reflection converter remembers of the mapper may no longer hold after any of these
+
+    @Override
+    public void aliasField(String alias, Class definedIn, String fieldName) {
+        super.aliasField(alias, definedIn, fieldName);
+        clearPlans();
+    }
+
+    @Override
+    public void aliasSystemAttribute(String alias, String systemAttributeName) {
+        super.aliasSystemAttribute(alias, systemAttributeName);
+        clearPlans();
+    }
+
+    @Override
+    public void omitField(Class definedIn, String fieldName) {
+        super.omitField(definedIn, fieldName);
+        clearPlans();
+    }
+
+    @Override
+    public void addImplicitCollection(Class ownerType, String fieldName) {
+        super.addImplicitCollection(ownerType, fieldName);
+        clearPlans();
+    }
+
+    @Override
+    public void addImplicitCollection(Class ownerType, String fieldName, Class itemType) {
+        super.addImplicitCollection(ownerType, fieldName, itemType);
+        clearPlans();
+    }
+
+    @Override
+    public void addImplicitCollection(Class ownerType, String fieldName, String itemFieldName, Class itemType) {
+        super.addImplicitCollection(ownerType, fieldName, itemFieldName, itemType);
+        clearPlans();
+    }
+
+    @Override
+    public void addDefaultImplementation(Class defaultImplementation, Class ofType) {
+        super.addDefaultImplementation(defaultImplementation, ofType);
+        clearPlans();
+    }
+
+    @Override
+    public void registerLocalConverter(Class definedIn, String fieldName, Converter converter) {
+        super.registerLocalConverter(definedIn, fieldName, converter);
+        clearPlans();
+    }
+
+    @Override
+    public void registerLocalConverter(Class definedIn, String fieldName, SingleValueConverter converter) {
+        super.registerLocalConverter(definedIn, fieldName, converter);
+        clearPlans();
+    }
+
+    private void clearPlans() {
+        // null while XStream is being set up
+        if (reflectionConverter != null) {
+            reflectionConverter.clearPlans();
+        }
+    }
+
     /**
      * Prior to Hudson 1.106, XStream 1.1.x was used which encoded "$" in class names
      * as "-" instead of "_-" that is used now.  Up through Hudson 1.348 compatibility
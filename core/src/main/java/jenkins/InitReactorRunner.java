@@ -8,7 +8,9 @@ import hudson.security.ACL;
 import hudson.util.DaemonThreadFactory;
 import hudson.util.NamingThreadFactory;
 import java.io.IOException;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.ServiceLoader;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -36,7 +38,14 @@ import org.kohsuke.accmod.restrictions.NoExternalUse;
  * @author Kohsuke Kawaguchi
  */
 public class InitReactorRunner {
+    /**
+     * When each {@link InitMilestone} was attained, in nanoseconds since {@link #run} started.
+     */
+    private final Map<InitMilestone, Long> milestoneTimes = new EnumMap<>(InitMilestone.class);
+    private long started;
+
     public void run(Reactor reactor) throws InterruptedException, ReactorException, IOException {
+        started = System.nanoTime();
          reactor.addAll(InitMilestone.ordering().discoverTasks(reactor));
 
         ExecutorService es;
@@ -85,10 +94,15 @@ public class InitReactorRunner {
                 String s = "Attained " + milestone.toString();
                 if (milestone instanceof InitMilestone) {
                     lv = Level.INFO; // noteworthy milestones --- at least while we debug problems further
+                    recordMilestoneTime((InitMilestone) milestone);
                     onInitMilestoneAttained((InitMilestone) milestone);
                     s = milestone.toString();
                 }
                 LOGGER.log(lv, s);
+                if (milestone == InitMilestone.COMPLETED) {
+                    LOGGER.log(Level.INFO, "Initialization took {0} ms: {1}",
+                            new Object[] {TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), getMilestoneTimes()});
+                }
             }
         });
         return new ReactorListener.Aggregator(r);
@@ -105,6 +119,29 @@ public class InitReactorRunner {
         }
     }
 
+    private synchronized void recordMilestoneTime(InitMilestone milestone) {
+        milestoneTimes.put(milestone, System.nanoTime() - started);
+    }
+
+    /**
+     * Describes how long it took to reach each milestone attained so far from the previous one, such as
+     * {@code "Started initialization: 10 ms, Listed all plugins: 350 ms, …"}.
+     */
+    @Restricted(NoExternalUse.class)
+    public synchronized String getMilestoneTimes() {
+        StringBuilder b = new StringBuilder();
+        long previous = 0;
+        // in the order they are attained
+        for (Map.Entry<InitMilestone, Long> e : milestoneTimes.entrySet()) {
+            if (b.length() > 0) {
+                b.append(", ");
+            }
+            b.append(e.getKey()).append(": ").append(TimeUnit.NANOSECONDS.toMillis(e.getValue() - previous)).append(" ms");
+            previous = e.getValue();
+        }
+        return b.toString();
+    }
+
     /**
      * Called when the init milestone is attained.
      */
@@ -0,0 +1,262 @@
+package jenkins.model;
+
+import com.thoughtworks.xstream.io.HierarchicalStreamDriver;
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.binary.BinaryStreamReader;
+import com.thoughtworks.xstream.io.binary.BinaryStreamWriter;
+import com.thoughtworks.xstream.io.copy.HierarchicalStreamCopier;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.XmlFile;
+import hudson.init.InitMilestone;
+import hudson.model.Item;
+import hudson.model.Items;
+import hudson.util.XStream2;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * The {@code config.xml} of every item, already parsed and kept in one file in {@code JENKINS_HOME},
+ * so that items can be loaded at startup without parsing each file again.
+ *
+ * <p>
+ * What is kept is the sequence of elements, attributes and values XStream reads from each file,
+ * in the form written by {@link BinaryStreamWriter}, rather than the items themselves,
+ * so it stays valid when plugins and the classes they define change, and items are unmarshalled just as from XML.
+ * A file is only restored from the snapshot when its size and last modification time are those it had when it was written;
+ * any other file, including one changed since, is read as XML.
+ * The snapshot is written again in the background once startup completes.
+ */
+@Restricted(NoExternalUse.class)
+public final class ItemSnapshot {
+    /**
+     * Whether to load items from, and write, the snapshot.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* Script Console modifiable */ boolean ENABLED = SystemProperties.getBoolean(ItemSnapshot.class.getName() + ".enabled");
+
+    static final String FILE_NAME = "items.snapshot";
+
+    private static final int MAGIC = 0x4a49534e;
+    private static final int VERSION = 1;
+
+    /**
+     * Files modified less than this long before the snapshot is written are left out,
+     * as a change made right after might not change their modification time on file systems with a coarse clock.
+     */
+    private static final long RACY_MILLIS = 2000;
+
+    private static final Logger LOGGER = Logger.getLogger(ItemSnapshot.class.getName());
+
+    private static final HierarchicalStreamDriver DRIVER = XStream2.getDefaultDriver();
+
+    /**
+     * Snapshot entries not used yet, by absolute path of the file, while items are being loaded.
+     */
+    private static volatile Map<String, Entry> entries;
+    private static final AtomicInteger restored = new AtomicInteger();
+    private static final AtomicInteger parsed = new AtomicInteger();
+
+    private ItemSnapshot() {}
+
+    private static final class Entry {
+        final long size;
+        final long lastModified;
+        final byte[] tokens;
+
+        Entry(long size, long lastModified, byte[] tokens) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.tokens = tokens;
+        }
+
+        boolean matches(BasicFileAttributes attributes) {
+            return attributes.size() == size && lastModified(attributes) == lastModified;
+        }
+    }
+
+    private static long lastModified(BasicFileAttributes attributes) {
+        return attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Reads the snapshot, if any, before items are loaded.
+     */
+    static void open(@NonNull File root) {
+        entries = null;
+        restored.set(0);
+        parsed.set(0);
+        if (!ENABLED) {
+            return;
+        }
+        Path file = root.toPath().resolve(FILE_NAME);
+        Map<String, Entry> read = new ConcurrentHashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                LOGGER.info(() -> "Ignoring " + file + " written by another version");
+                return;
+            }
+            while (in.readBoolean()) {
+                String path = in.readUTF();
+                long size = in.readLong();
+                long lastModified = in.readLong();
+                byte[] tokens = new byte[in.readInt()];
+                in.readFully(tokens);
+                read.put(path, new Entry(size, lastModified, tokens));
+            }
+        } catch (NoSuchFileException e) {
+            return;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to read " + file + "; loading all items from XML", e);
+            return;
+        }
+        entries = read;
+    }
+
+    /**
+     * Reads the configuration of an item, from the snapshot if it is still up to date there, else as {@link XmlFile#read}.
+     */
+    public static Object read(@NonNull XmlFile file) throws IOException {
+        Map<String, Entry> e = entries;
+        Entry entry = e != null ? e.remove(file.getFile().getAbsolutePath()) : null;
+        if (entry != null) {
+            BasicFileAttributes attributes = attributes(file.getFile().toPath());
+            if (attributes != null && entry.matches(attributes)) {
+                try {
+                    Object o = file.getXStream().unmarshal(new BinaryStreamReader(new ByteArrayInputStream(entry.tokens)));
+                    restored.incrementAndGet();
+                    return o;
+                } catch (RuntimeException x) {
+                    LOGGER.log(Level.WARNING, "Failed to restore " + file + " from the snapshot; reading it as XML", x);
+                }
+            }
+        }
+        if (e != null) {
+            parsed.incrementAndGet();
+        }
+        return file.read();
+    }
+
+    /**
+     * Drops what was not used once items are loaded.
+     */
+    static void close() {
+        Map<String, Entry> e = entries;
+        if (e != null) {
+            entries = null;
+            LOGGER.log(Level.INFO, "Restored {0} items from the snapshot, read {1} from XML", new Object[] {restored.get(), parsed.get()});
+        }
+    }
+
+    /**
+     * Number of items restored from the snapshot by the last load.
+     */
+    static int getRestored() {
+        return restored.get();
+    }
+
+    /**
+     * Writes the snapshot in the background, once items are loaded.
+     */
+    static void scheduleWrite(@NonNull Jenkins jenkins) {
+        if (!ENABLED) {
+            return;
+        }
+        Timer.get().submit(() -> {
+            try {
+                write(jenkins);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Failed to write the item snapshot", e);
+            }
+        });
+    }
+
+    static void write(@NonNull Jenkins jenkins) throws IOException {
+        if (jenkins.getInitLevel().compareTo(InitMilestone.COMPLETED) < 0) {
+            // not loaded yet, or being reloaded
+            return;
+        }
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        ByteArrayOutputStream tokens = new ByteArrayOutputStream();
+        HierarchicalStreamCopier copier = new HierarchicalStreamCopier();
+        Path file = jenkins.getRootDir().toPath().resolve(FILE_NAME);
+        Path tmp = Files.createTempFile(file.getParent(), FILE_NAME, ".tmp");
+        try {
+            int count = 0;
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                for (Item item : jenkins.allItems()) {
+                    Path config = Items.getConfigFile(item).getFile().toPath();
+                    BasicFileAttributes before = attributes(config);
+                    if (before == null || now - before.lastModifiedTime().toMillis() < RACY_MILLIS) {
+                        continue;
+                    }
+                    tokens.reset();
+                    try (InputStream in = new BufferedInputStream(Files.newInputStream(config))) {
+                        HierarchicalStreamReader reader = DRIVER.createReader(in);
+                        try {
+                            BinaryStreamWriter writer = new BinaryStreamWriter(tokens);
+                            copier.copy(reader, writer);
+                            writer.flush();
+                        } finally {
+                            reader.close();
+                        }
+                    } catch (RuntimeException e) {
+                        LOGGER.log(Level.FINE, "Leaving " + config + " out of the snapshot", e);
+                        continue;
+                    }
+                    BasicFileAttributes after = attributes(config);
+                    if (after == null || after.size() != before.size() || lastModified(after) != lastModified(before)) {
+                        // changed while being read
+                        continue;
+                    }
+                    out.writeBoolean(true);
+                    out.writeUTF(config.toFile().getAbsolutePath());
+                    out.writeLong(before.size());
+                    out.writeLong(lastModified(before));
+                    out.writeInt(tokens.size());
+                    tokens.writeTo(out);
+                    count++;
+                }
+                out.writeBoolean(false);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOGGER.log(Level.FINE, "Wrote {0} items to {1} in {2} ms", new Object[] {count, file, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)});
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static @CheckForNull BasicFileAttributes attributes(Path file) throws IOException {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+}
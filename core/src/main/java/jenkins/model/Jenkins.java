@@ -137,10 +137,12 @@ import hudson.model.User;
 import hudson.model.View;
 import hudson.model.ViewGroupMixIn;
 import hudson.model.WorkspaceCleanupThread;
+import hudson.model.labels.CompiledLabelExpression;
 import hudson.model.labels.LabelAtom;
 import hudson.model.listeners.ItemListener;
 import hudson.model.listeners.SCMListener;
 import hudson.model.listeners.SaveableListener;
+import hudson.model.queue.LocalityLoadBalancer;
 import hudson.remoting.Callable;
 import hudson.remoting.LocalChannel;
 import hudson.remoting.VirtualChannel;
@@ -286,6 +288,7 @@ import jenkins.security.stapler.TypedFilter;
 import jenkins.slaves.WorkspaceLocator;
 import jenkins.util.JenkinsJVM;
 import jenkins.util.Listeners;
+import jenkins.util.SaveScheduler;
 import jenkins.util.SystemProperties;
 import jenkins.util.Timer;
 import jenkins.util.io.FileBoolean;
@@ -936,7 +939,7 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
             final InitStrategy is = InitStrategy.get(Thread.currentThread().getContextClassLoader());
 
             Trigger.timer = new java.util.Timer("Jenkins cron thread");
-            queue = new Queue(LoadBalancer.CONSISTENT_HASH);
+            queue = new Queue(LocalityLoadBalancer.ENABLED ? new LocalityLoadBalancer() : LoadBalancer.CONSISTENT_HASH);
             labelAtomSet = Collections.unmodifiableSet(Label.parse(label));
             try {
                 dependencyGraph = DependencyGraph.EMPTY;
@@ -1010,6 +1013,7 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
                                 "Please create a bug in Jenkins bugtracker. ",
                         initLevel);
             }
+            ItemSnapshot.scheduleWrite(this);
 
 
             if (KILL_AFTER_LOAD)
@@ -2317,13 +2321,19 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
      * @param includedLabels the labels taken as reference to update labels. If {@code null}, all labels are considered.
      */
     private void trimLabels(@CheckForNull Set<LabelAtom> includedLabels) {
+        CompiledLabelExpression.invalidate();
         Set<Set<LabelAtom>> nodeLabels = new HashSet<>();
         nodeLabels.add(this.getAssignedLabels());
         this.getNodes().forEach(n -> nodeLabels.add(n.getAssignedLabels()));
+        List<long[]> nodeLabelBits = CompiledLabelExpression.ENABLED
+                ? nodeLabels.stream().map(CompiledLabelExpression::toBits).collect(Collectors.toList())
+                : null;
         for (Iterator<Label> itr = labels.values().iterator(); itr.hasNext();) {
             Label l = itr.next();
             if (includedLabels == null || includedLabels.contains(l) || l.matches(includedLabels)) {
-                if (nodeLabels.stream().anyMatch(l::matches) || !l.getClouds().isEmpty()) {
+                CompiledLabelExpression c = nodeLabelBits != null ? l.getCompiled() : null;
+                boolean claimed = c != null ? nodeLabelBits.stream().anyMatch(c::matches) : nodeLabels.stream().anyMatch(l::matches);
+                if (claimed || !l.getClouds().isEmpty()) {
                     // there is at least one static agent or one cloud that currently claims it can handle the label.
                     // if the cloud has been removed, or its labels updated such that it can not handle this, this is handle in later calls
                     // resetLabel will remove the agents, and clouds from the label, and they will be repopulated later.
@@ -3513,9 +3523,16 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
             }
         });
 
+        Handle loadSnapshot = g.requires(EXTENSIONS_AUGMENTED).add("Reading item snapshot", new Executable() {
+            @Override
+            public void run(Reactor session) {
+                ItemSnapshot.open(root);
+            }
+        });
+
         List<Handle> loadJobs = new ArrayList<>();
         for (final File subdir : subdirs) {
-            loadJobs.add(g.requires(loadJenkins).attains(JOB_LOADED).notFatal().add("Loading item " + subdir.getName(), new Executable() {
+            loadJobs.add(g.requires(loadJenkins, loadSnapshot).attains(JOB_LOADED).notFatal().add("Loading item " + subdir.getName(), new Executable() {
                 @Override
                 public void run(Reactor session) throws Exception {
                     if (!Items.getConfigFile(subdir).exists()) {
@@ -3532,6 +3549,7 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
         g.requires(loadJobs.toArray(new Handle[0])).attains(JOB_LOADED).add("Cleaning up obsolete items deleted from the disk", new Executable() {
             @Override
             public void run(Reactor reactor) {
+                ItemSnapshot.close();
                 // anything we didn't load from disk, throw them away.
                 // doing this after loading from disk allows newly loaded items
                 // to inspect what already existed in memory (in case of reloading)
@@ -3618,6 +3636,9 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
         if (BulkChange.contains(this)) {
             return;
         }
+        if (SaveScheduler.defer(this)) {
+            return;
+        }
         if (currentMilestone == InitMilestone.COMPLETED) {
             LOGGER.log(FINE, "setting version {0} to {1}", new Object[] {version, VERSION});
             version = VERSION;
@@ -3687,6 +3708,8 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
 
             _cleanUpPersistQueue(errors);
 
+            _cleanUpFlushSaves(errors);
+
             _cleanUpShutdownThreadPoolForLoad(errors);
 
             _cleanUpAwaitDisconnects(errors, pending);
@@ -3945,6 +3968,23 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
         }
     }
 
+    private void _cleanUpFlushSaves(List<Throwable> errors) {
+        LOGGER.log(Level.FINE, "Writing deferred saves");
+        try {
+            SaveScheduler.flush();
+        } catch (OutOfMemoryError e) {
+            // we should just propagate this, no point trying to log
+            throw e;
+        } catch (LinkageError e) {
+            LOGGER.log(SEVERE, "Failed to write deferred saves", e);
+            // safe to ignore and continue for this one
+        } catch (Throwable e) {
+            LOGGER.log(SEVERE, "Failed to write deferred saves", e);
+            // save for later
+            errors.add(e);
+        }
+    }
+
     private void _cleanUpShutdownThreadPoolForLoad(List<Throwable> errors) {
         LOGGER.log(FINE, "Shutting down Jenkins load thread pool");
         try {
@@ -4462,6 +4502,7 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
      */
     public void reload() throws IOException, InterruptedException, ReactorException {
         queue.save();
+        SaveScheduler.flush();
         executeReactor(null, loadTasks());
 
         // Ensure we reached the final initialization state. Log the error otherwise
@@ -4474,6 +4515,7 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
                             "Please create a bug in Jenkins bugtracker.",
                     initLevel);
         }
+        ItemSnapshot.scheduleWrite(this);
 
         User.reload();
         queue.load();
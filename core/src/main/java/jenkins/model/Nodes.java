@@ -54,6 +54,7 @@ import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import jenkins.util.SaveScheduler;
 import jenkins.util.SystemProperties;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
@@ -274,6 +275,8 @@ public class Nodes implements PersistenceRoot {
      */
     public void removeNode(final @NonNull Node node) throws IOException {
         if (node == nodes.get(node.getNodeName())) {
+            // so that the node is not written back once deleted
+            SaveScheduler.cancel(node);
             AtomicBoolean match = new AtomicBoolean();
             Queue.withLock(new Runnable() {
                 @Override
@@ -442,7 +445,7 @@ public class Nodes implements PersistenceRoot {
         @Override
         public void onChange(Saveable o, XmlFile file) {
             if (o instanceof Node) {
-                Jenkins.get().getQueue().scheduleMaintenance();
+                Jenkins.get().getQueue().scheduleMaintenanceForExecutors();
             }
         }
     }
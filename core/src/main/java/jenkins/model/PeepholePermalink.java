@@ -17,13 +17,17 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Stream;
+import jenkins.model.lazy.BuildSummary;
+import jenkins.model.lazy.BuildSummaryIndex;
 import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.Beta;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
 
 /**
@@ -83,6 +87,19 @@ public abstract class PeepholePermalink extends Permalink implements Predicate<R
         return apply(run);
     }
 
+    /**
+     * Checks if a completed build satisfies the peep-hole criteria from its summary alone,
+     * so that builds which do not match need not be loaded while searching for the permalink target.
+     *
+     * @return null if the summary is not enough to tell, which is the default
+     * @see Job#getBuildSummaries()
+     * @since TODO
+     */
+    @Restricted(Beta.class)
+    protected @CheckForNull Boolean applyToSummary(@NonNull BuildSummary summary) {
+        return null;
+    }
+
     /** @deprecated No longer used. */
     @Deprecated
     protected File getPermalinkFile(Job<?, ?> job) {
@@ -134,11 +151,51 @@ public abstract class PeepholePermalink extends Permalink implements Predicate<R
      */
     private Run<?, ?> find(Run<?, ?> b) {
         //noinspection StatementWithEmptyBody
-        for ( ; b != null && !apply(b); b = b.getPreviousBuild())
+        for ( ; b != null && !apply(b); b = previous(b))
             ;
         return b;
     }
 
+    /**
+     * Finds the build before 'b', skipping over those which their summaries show not to match.
+     */
+    private Run<?, ?> previous(Run<?, ?> b) {
+        Job<?, ?> job = b.getParent();
+        BuildSummaryIndex index = job.getBuildSummaries();
+        if (index == null) {
+            return b.getPreviousBuild();
+        }
+        List<Integer> numbers = index.getNumbers();
+        for (int n : numbers.subList(firstBefore(numbers, b.getNumber()), numbers.size())) {
+            BuildSummary s = index.get(n);
+            if (s != null && Boolean.FALSE.equals(applyToSummary(s))) {
+                continue;
+            }
+            Run<?, ?> r = job.getBuildByNumber(n);
+            if (r != null) {
+                return r;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the position of the first number below 'n' in descending 'numbers'.
+     */
+    private static int firstBefore(List<Integer> numbers, int n) {
+        int lo = 0;
+        int hi = numbers.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (numbers.get(mid) >= n) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
     private static @NonNull Map<String, Integer> cacheFor(@NonNull File buildDir) {
         synchronized (caches) {
             Map<String, Integer> cache = caches.get(buildDir);
@@ -216,7 +273,7 @@ public abstract class PeepholePermalink extends Permalink implements Predicate<R
             Job<?, ?> j = run.getParent();
             for (PeepholePermalink pp : Util.filter(j.getPermalinks(), PeepholePermalink.class)) {
                 if (pp.resolve(j) == run) {
-                    Run<?, ?> r = pp.find(run.getPreviousBuild());
+                    Run<?, ?> r = pp.find(pp.previous(run));
                     LOGGER.fine(() -> "Updating " + pp.getId() + " permalink from deleted " + run + " to " + (r == null ? -1 : r.getNumber()));
                     pp.updateCache(j, r);
                 }
@@ -259,6 +316,11 @@ public abstract class PeepholePermalink extends Permalink implements Predicate<R
         public boolean apply(Run<?, ?> run) {
             return !run.isBuilding() && run.getResult() == Result.SUCCESS;
         }
+
+        @Override
+        protected Boolean applyToSummary(@NonNull BuildSummary s) {
+            return s.getResult() == null ? null : s.getResult() == Result.SUCCESS;
+        }
     };
 
     /**
@@ -280,6 +342,11 @@ public abstract class PeepholePermalink extends Permalink implements Predicate<R
         public boolean apply(Run<?, ?> run) {
             return !run.isBuilding() && run.getResult().isBetterOrEqualTo(Result.UNSTABLE);
         }
+
+        @Override
+        protected Boolean applyToSummary(@NonNull BuildSummary s) {
+            return s.getResult() == null ? null : s.getResult().isBetterOrEqualTo(Result.UNSTABLE);
+        }
     };
 
     /**
@@ -300,6 +367,11 @@ public abstract class PeepholePermalink extends Permalink implements Predicate<R
         public boolean apply(Run<?, ?> run) {
             return !run.isBuilding() && run.getResult() == Result.FAILURE;
         }
+
+        @Override
+        protected Boolean applyToSummary(@NonNull BuildSummary s) {
+            return s.getResult() == null ? null : s.getResult() == Result.FAILURE;
+        }
     };
 
     /**
@@ -320,6 +392,11 @@ public abstract class PeepholePermalink extends Permalink implements Predicate<R
         public boolean apply(Run<?, ?> run) {
             return !run.isBuilding() && run.getResult() == Result.UNSTABLE;
         }
+
+        @Override
+        protected Boolean applyToSummary(@NonNull BuildSummary s) {
+            return s.getResult() == null ? null : s.getResult() == Result.UNSTABLE;
+        }
     };
 
     /**
@@ -340,6 +417,11 @@ public abstract class PeepholePermalink extends Permalink implements Predicate<R
         public boolean apply(Run<?, ?> run) {
             return !run.isBuilding() && run.getResult() != Result.SUCCESS;
         }
+
+        @Override
+        protected Boolean applyToSummary(@NonNull BuildSummary s) {
+            return s.getResult() == null ? null : s.getResult() != Result.SUCCESS;
+        }
     };
 
     /**
@@ -360,6 +442,11 @@ public abstract class PeepholePermalink extends Permalink implements Predicate<R
         public boolean apply(Run<?, ?> run) {
             return !run.isBuilding();
         }
+
+        @Override
+        protected Boolean applyToSummary(@NonNull BuildSummary s) {
+            return true;
+        }
     };
 
     static {
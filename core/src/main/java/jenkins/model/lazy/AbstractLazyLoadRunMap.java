@@ -28,6 +28,7 @@ import static jenkins.model.lazy.AbstractLazyLoadRunMap.Direction.ASC;
 import static jenkins.model.lazy.AbstractLazyLoadRunMap.Direction.DESC;
 
 import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import hudson.model.Job;
 import hudson.model.Run;
 import hudson.model.RunMap;
@@ -43,17 +44,20 @@ import java.util.Comparator;
 import java.util.Iterator;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.Spliterator;
 import java.util.Spliterators;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.function.IntConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 import jenkins.util.MemoryReductionUtil;
+import jenkins.util.SystemProperties;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.Beta;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
@@ -105,11 +109,13 @@ public abstract class AbstractLazyLoadRunMap<R> extends AbstractMap<Integer, R>
 
     /**
      * Currently visible index.
-     * Updated atomically. Once set to this field, the index object may not be modified.
+     * Replaced atomically by {@link #purgeCache} and {@link #reset}; otherwise updated in place while holding the lock of {@code this}.
      */
     private volatile Index index = new Index();
     private LazyLoadRunMapEntrySet<R> entrySet = new LazyLoadRunMapEntrySet<>(this);
 
+    private volatile BuildSummaryIndex summaries;
+
     private transient volatile Set<Integer> keySet;
     private transient volatile Collection<R> values;
 
@@ -252,33 +258,40 @@ public abstract class AbstractLazyLoadRunMap<R> extends AbstractMap<Integer, R>
     /**
      * Historical holder for map.
      *
-     * TODO all this mess including {@link #numberOnDisk} could probably be simplified to a single {@code TreeMap<Integer,BuildReference<R>>}
-     * where a null value means not yet loaded and a broken entry just uses {@code NoHolder}.
+     * TODO all this mess including {@link #numberOnDisk} could probably be simplified to a single {@code NavigableMap<Integer,BuildReference<R>>}
+     * where a missing value means not yet loaded and a broken entry just uses {@code NoHolder}.
      *
-     * The idiom is that you put yourself in a synchronized block, {@linkplain #copy() make a copy of this},
-     * update the copy, then set it to {@link #index}.
+     * Readers look it up without locking. Writers update it in place from a synchronized block,
+     * so that loading one build costs O(log n) rather than a copy of every build loaded so far.
+     * {@link #purgeCache} replaces it entirely.
      */
     private class Index {
         /**
          * Stores the mapping from build number to build, for builds that are already loaded.
          *
          * If we have known load failure of the given ID, we record that in the map
-         * by using the null value (not to be confused with a non-null {@link BuildReference}
+         * by using a {@linkplain BuildReference#failure failure} reference (not to be confused with a {@link BuildReference}
          * with null referent, which just means the record was GCed.)
          */
-        private final TreeMap<Integer, BuildReference<R>> byNumber;
+        private final ConcurrentSkipListMap<Integer, BuildReference<R>> byNumber;
 
         private Index() {
-            byNumber = new TreeMap<>(Collections.reverseOrder());
+            byNumber = new ConcurrentSkipListMap<>(Collections.reverseOrder());
         }
 
-        private Index(Index rhs) {
-            byNumber = new TreeMap<>(rhs.byNumber);
+        /**
+         * Lets go of the builds of an index being replaced.
+         */
+        private void release() {
+            for (BuildReference<R> ref : byNumber.values()) {
+                ref.release();
+            }
         }
     }
 
     /**
-     * Build numbers found on disk, in the ascending order.
+     * Build numbers found on disk, in the ascending order,
+     * or null if the directory is yet to be scanned because of {@link #DEFER_SCAN}.
      */
     // copy on write
     private volatile SortedIntList numberOnDisk = new SortedIntList(0);
@@ -300,7 +313,7 @@ public abstract class AbstractLazyLoadRunMap<R> extends AbstractMap<Integer, R>
         assert this.dir == null;
         this.dir = dir;
         if (dir != null)
-            loadNumberOnDisk();
+            scanLater();
     }
 
     /**
@@ -329,14 +342,59 @@ public abstract class AbstractLazyLoadRunMap<R> extends AbstractMap<Integer, R>
      * @since 1.507
      */
     public synchronized void purgeCache() {
+        Index old = index;
         index = new Index();
+        old.release();
         fullyLoaded = false;
-        loadNumberOnDisk();
+        scanLater();
+        if (summaries != null) {
+            summaries.reload();
+        }
+    }
+
+    /**
+     * Gets the index of summaries of the builds in this map.
+     *
+     * @see BuildSummaryIndex#ENABLED
+     * @since TODO
+     */
+    @Restricted(NoExternalUse.class)
+    public BuildSummaryIndex getSummaries() {
+        BuildSummaryIndex s = summaries;
+        if (s == null) {
+            synchronized (this) {
+                s = summaries;
+                if (s == null) {
+                    summaries = s = new BuildSummaryIndex(this);
+                }
+            }
+        }
+        return s;
     }
 
+    /**
+     * Whether to defer listing the build directories of a job from when it is loaded until its builds are first needed,
+     * which shortens startup with many jobs on slow storage.
+     */
+    @Restricted(NoExternalUse.class)
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* Script Console modifiable */ boolean DEFER_SCAN = SystemProperties.getBoolean(AbstractLazyLoadRunMap.class.getName() + ".deferScan");
+
     private static final Pattern BUILD_NUMBER = Pattern.compile("[0-9]+");
 
+    /**
+     * Scans the directory for build numbers now, or with {@link #DEFER_SCAN}, on first use.
+     */
+    private void scanLater() {
+        if (DEFER_SCAN) {
+            numberOnDisk = null;
+        } else {
+            loadNumberOnDisk();
+        }
+    }
+
     private void loadNumberOnDisk() {
+        long start = System.nanoTime();
         String[] kids = dir.list();
         if (kids == null) {
             // the job may have just been created
@@ -361,6 +419,24 @@ public abstract class AbstractLazyLoadRunMap<R> extends AbstractMap<Integer, R>
         }
         list.sort();
         numberOnDisk = list;
+        LOGGER.fine(() -> "found " + list.size() + " builds in " + dir + " in " + (System.nanoTime() - start) / 1_000_000 + "ms");
+    }
+
+    /**
+     * Build numbers found on disk, in the ascending order. Must not be modified.
+     */
+    /*package*/ SortedIntList numbersOnDisk() {
+        SortedIntList list = numberOnDisk;
+        if (list == null) {
+            synchronized (this) {
+                list = numberOnDisk;
+                if (list == null) {
+                    loadNumberOnDisk();
+                    list = numberOnDisk;
+                }
+            }
+        }
+        return list;
     }
 
     @Restricted(NoExternalUse.class)
@@ -377,7 +453,7 @@ public abstract class AbstractLazyLoadRunMap<R> extends AbstractMap<Integer, R>
     public final void recognizeNumber(int buildNumber) {
         if (new File(dir, Integer.toString(buildNumber)).isDirectory()) {
             synchronized (this) {
-                SortedIntList list = new SortedIntList(numberOnDisk);
+                SortedIntList list = new SortedIntList(numbersOnDisk());
                 if (list.contains(buildNumber)) {
                     LOGGER.fine(() -> "already knew about " + buildNumber + " in " + dir);
                 } else {
@@ -496,7 +572,7 @@ public abstract class AbstractLazyLoadRunMap<R> extends AbstractMap<Integer, R>
      * @since 2.14
      */
     public boolean runExists(int number) {
-        return numberOnDisk.contains(number);
+        return numbersOnDisk().contains(number);
     }
 
     /**
@@ -515,7 +591,7 @@ public abstract class AbstractLazyLoadRunMap<R> extends AbstractMap<Integer, R>
         case EXACT:
             return getByNumber(n);
         case ASC:
-            for (int m : numberOnDisk) {
+            for (int m : numbersOnDisk()) {
                 if (m < n) {
                     // TODO could be made more efficient with numberOnDisk.find
                     continue;
@@ -528,7 +604,7 @@ public abstract class AbstractLazyLoadRunMap<R> extends AbstractMap<Integer, R>
             return null;
         case DESC:
             // TODO again could be made more efficient
-            ListIterator<Integer> iterator = numberOnDisk.listIterator(numberOnDisk.size());
+            ListIterator<Integer> iterator = numbersOnDisk().listIterator(numbersOnDisk().size());
             while (iterator.hasPrevious()) {
                 int m = iterator.previous();
                 if (m > n) {
@@ -550,10 +626,9 @@ public abstract class AbstractLazyLoadRunMap<R> extends AbstractMap<Integer, R>
     }
 
     public R getByNumber(int n) {
-        Index snapshot = index;
-        if (snapshot.byNumber.containsKey(n)) {
-            BuildReference<R> ref = snapshot.byNumber.get(n);
-            if (ref == null) {
+        BuildReference<R> ref = index.byNumber.get(n);
+        if (ref != null) {
+            if (ref.isFailure()) {
                 LOGGER.fine(() -> "known failure of #" + n + " in " + dir);
                 return null;
             }
@@ -564,9 +639,9 @@ public abstract class AbstractLazyLoadRunMap<R> extends AbstractMap<Integer, R>
             // otherwise fall through to load
         }
         synchronized (this) {
-            if (index.byNumber.containsKey(n)) { // JENKINS-22767: recheck inside lock
-                BuildReference<R> ref = index.byNumber.get(n);
-                if (ref == null) {
+            ref = index.byNumber.get(n); // JENKINS-22767: recheck inside lock
+            if (ref != null) {
+                if (ref.isFailure()) {
                     LOGGER.fine(() -> "known failure of #" + n + " in " + dir);
                     return null;
                 }
@@ -576,7 +651,7 @@ public abstract class AbstractLazyLoadRunMap<R> extends AbstractMap<Integer, R>
                 }
             }
             if (allowLoad(n)) {
-                return load(n, null);
+                return load(n, false);
             } else {
                 LOGGER.fine(() -> "declining to load " + n + " in " + dir);
                 return null;
@@ -589,12 +664,12 @@ public abstract class AbstractLazyLoadRunMap<R> extends AbstractMap<Integer, R>
      */
     @Restricted(NoExternalUse.class)
     public synchronized int maxNumberOnDisk() {
-        return numberOnDisk.max();
+        return numbersOnDisk().max();
     }
 
     protected final synchronized void proposeNewNumber(int number) throws IllegalStateException {
         if (number <= maxNumberOnDisk()) {
-            throw new IllegalStateException("JENKINS-27530: cannot create a build with number " + number + " since that (or higher) is already in use among " + numberOnDisk);
+            throw new IllegalStateException("JENKINS-27530: cannot create a build with number " + number + " since that (or higher) is already in use among " + numbersOnDisk());
         }
     }
 
@@ -610,13 +685,11 @@ public abstract class AbstractLazyLoadRunMap<R> extends AbstractMap<Integer, R>
     public synchronized R put(Integer key, R r) {
         int n = getNumberOf(r);
 
-        Index copy = copy();
         BuildReference<R> ref = createReference(r);
-        BuildReference<R> old = copy.byNumber.put(n, ref);
-        index = copy;
+        BuildReference<R> old = index.byNumber.put(n, ref);
 
-        if (!numberOnDisk.contains(n)) {
-            SortedIntList a = new SortedIntList(numberOnDisk);
+        if (!numbersOnDisk().contains(n)) {
+            SortedIntList a = new SortedIntList(numbersOnDisk());
             a.add(n);
             a.sort();
             numberOnDisk = a;
@@ -633,12 +706,10 @@ public abstract class AbstractLazyLoadRunMap<R> extends AbstractMap<Integer, R>
 
     @Override
     public synchronized void putAll(Map<? extends Integer, ? extends R> rhs) {
-        Index copy = copy();
         for (R r : rhs.values()) {
             BuildReference<R> ref = createReference(r);
-            copy.byNumber.put(getNumberOf(r), ref);
+            index.byNumber.put(getNumberOf(r), ref);
         }
-        index = copy;
     }
 
     /**
@@ -650,16 +721,14 @@ public abstract class AbstractLazyLoadRunMap<R> extends AbstractMap<Integer, R>
      * @return
      *      fully populated map.
      */
-    /*package*/ TreeMap<Integer, BuildReference<R>> all() {
+    /*package*/ NavigableMap<Integer, BuildReference<R>> all() {
         if (!fullyLoaded) {
             synchronized (this) {
                 if (!fullyLoaded) {
-                    Index copy = copy();
-                    for (Integer number : numberOnDisk) {
-                        if (!copy.byNumber.containsKey(number))
-                            load(number, copy);
+                    for (Integer number : numbersOnDisk()) {
+                        if (!index.byNumber.containsKey(number))
+                            load(number, true);
                     }
-                    index = copy;
                     fullyLoaded = true;
                 }
             }
@@ -667,37 +736,25 @@ public abstract class AbstractLazyLoadRunMap<R> extends AbstractMap<Integer, R>
         return index.byNumber;
     }
 
-    /**
-     * Creates a duplicate for the COW data structure in preparation for mutation.
-     */
-    private Index copy() {
-        return new Index(index);
-   }
-
     /**
      * Tries to load the record #N.
      *
+     * @param rememberFailure
+     *      whether to record a failure so that it is not retried until {@link #purgeCache}
      * @return null if the data failed to load.
      */
-    private R load(int n, Index editInPlace) {
+    private R load(int n, boolean rememberFailure) {
         assert Thread.holdsLock(this);
         assert dir != null;
-        R v = load(new File(dir, String.valueOf(n)), editInPlace);
-        if (v == null && editInPlace != null) {
-            // remember the failure.
-            // if editInPlace==null, we can create a new copy for this, but not sure if it's worth doing,
+        R v = load(new File(dir, String.valueOf(n)));
+        if (v == null && rememberFailure) {
             // TODO should we also update numberOnDisk?
-            editInPlace.byNumber.put(n, null);
+            index.byNumber.put(n, BuildReference.failure(String.valueOf(n)));
         }
         return v;
     }
 
-    /**
-     * @param editInPlace
-     *      If non-null, update this data structure.
-     *      Otherwise do a copy-on-write of {@link #index}
-     */
-    private R load(File dataDir, Index editInPlace) {
+    private R load(File dataDir) {
         assert Thread.holdsLock(this);
         try {
             R r = retrieve(dataDir);
@@ -706,14 +763,10 @@ public abstract class AbstractLazyLoadRunMap<R> extends AbstractMap<Integer, R>
                 return null;
             }
 
-            Index copy = editInPlace != null ? editInPlace : new Index(index);
-
             BuildReference<R> ref = createReference(r);
-            BuildReference<R> old = copy.byNumber.put(getNumberOf(r), ref);
+            BuildReference<R> old = index.byNumber.put(getNumberOf(r), ref);
             assert old == null || old.get() == null : "tried to overwrite " + old + " with " + ref;
 
-            if (editInPlace == null)  index = copy;
-
             return r;
         } catch (IOException e) {
             LOGGER.log(Level.WARNING, "Failed to load " + dataDir, e);
@@ -753,13 +806,14 @@ public abstract class AbstractLazyLoadRunMap<R> extends AbstractMap<Integer, R>
     protected abstract R retrieve(File dir) throws IOException;
 
     public synchronized boolean removeValue(R run) {
-        Index copy = copy();
         int n = getNumberOf(run);
-        BuildReference<R> old = copy.byNumber.remove(n);
-        SortedIntList a = new SortedIntList(numberOnDisk);
+        BuildReference<R> old = index.byNumber.remove(n);
+        if (old != null) {
+            old.release();
+        }
+        SortedIntList a = new SortedIntList(numbersOnDisk());
         a.removeValue(n);
         numberOnDisk = a;
-        this.index = copy;
 
         entrySet.clearCache();
 
@@ -776,7 +830,9 @@ public abstract class AbstractLazyLoadRunMap<R> extends AbstractMap<Integer, R>
             index.byNumber.put(getNumberOf(r), ref);
         }
 
+        Index old = this.index;
         this.index = index;
+        old.release();
     }
 
     @Override
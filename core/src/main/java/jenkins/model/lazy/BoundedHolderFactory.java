@@ -0,0 +1,323 @@
+package jenkins.model.lazy;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.model.Item;
+import hudson.model.Run;
+import hudson.model.listeners.ItemListener;
+import java.io.File;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.Beta;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * {@link BuildReference.HolderFactory} keeping the most recently used builds of all jobs in memory,
+ * up to a budget, instead of leaving it to the garbage collector.
+ *
+ * <p>
+ * With {@link SoftReference}s, builds pile up until the heap is nearly full and are then cleared all at once,
+ * after which every page reloads them from disk. This factory instead holds builds strongly in a single
+ * list bounded by {@link #MAX_BUILDS} and/or {@link #MAX_BYTES}, evicting them in approximately least recently used order
+ * with the CLOCK algorithm: using a build only marks it as referenced, without taking any lock,
+ * and a build found referenced when its turn to be evicted comes is given another round instead.
+ * Builds dropped from the list are only weakly referenced, so a build still in use elsewhere is not loaded twice,
+ * and it rejoins the list when it is used again.
+ * Builds which are deleted, or let go of by {@link AbstractLazyLoadRunMap#purgeCache}, leave the list right away.
+ *
+ * <p>
+ * The size of a build is estimated by the size of its {@code build.xml}.
+ * Used when either budget is positive; otherwise {@link BuildReference.DefaultHolderFactory} applies.
+ *
+ * @since TODO
+ */
+@Restricted(Beta.class)
+@Extension
+public final class BoundedHolderFactory implements BuildReference.HolderFactory {
+    /**
+     * Maximum number of builds to keep in memory, or 0 for no limit on the count.
+     */
+    @Restricted(NoExternalUse.class)
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* Script Console modifiable */ int MAX_BUILDS = SystemProperties.getInteger(BoundedHolderFactory.class.getName() + ".maxBuilds", 0);
+
+    /**
+     * Maximum total size of the {@code build.xml} of builds to keep in memory, or 0 for no limit on the size.
+     */
+    @Restricted(NoExternalUse.class)
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* Script Console modifiable */ long MAX_BYTES = SystemProperties.getLong(BoundedHolderFactory.class.getName() + ".maxBytes", 0L);
+
+    /**
+     * Holders in the order the clock hand visits them.
+     * Holders which have let go of their build since they were queued are only dropped when the hand gets to them.
+     */
+    private final ArrayDeque<CachedHolder<?>> clock = new ArrayDeque<>();
+    /**
+     * Number of holders currently keeping their build in memory.
+     */
+    private int count;
+    private long bytes;
+
+    private final Map<String, Statistics> statistics = new ConcurrentHashMap<>();
+
+    public static BoundedHolderFactory get() {
+        return ExtensionList.lookupSingleton(BoundedHolderFactory.class);
+    }
+
+    @Override
+    public <R> BuildReference.Holder<R> make(@NonNull R referent) {
+        if (MAX_BUILDS <= 0 && MAX_BYTES <= 0) {
+            return null;
+        }
+        String job = "";
+        long size = 1;
+        if (referent instanceof Run) {
+            Run<?, ?> r = (Run<?, ?>) referent;
+            job = r.getParent().getFullName();
+            size = Math.max(1, new File(r.getRootDir(), "build.xml").length());
+        }
+        CachedHolder<R> h = new CachedHolder<>(this, referent, job, size, statistics.computeIfAbsent(job, k -> new Statistics()));
+        admit(h, referent);
+        return h;
+    }
+
+    /**
+     * Lets a holder keep its build in memory, evicting other builds over budget.
+     */
+    private synchronized <R> void admit(CachedHolder<R> h, R referent) {
+        if (h.strong == null) {
+            h.strong = referent;
+            count++;
+            bytes += h.size;
+            if (!h.queued) {
+                h.queued = true;
+                clock.addLast(h);
+            }
+        }
+        while (overBudget()) {
+            CachedHolder<?> eldest = clock.pollFirst();
+            if (eldest.strong == null) {
+                eldest.queued = false;
+                continue;
+            }
+            if (eldest == h || eldest.referenced) {
+                // second chance; the build just admitted is always kept
+                eldest.referenced = false;
+                clock.addLast(eldest);
+                if (eldest == h && count == 1) {
+                    break;
+                }
+                continue;
+            }
+            eldest.queued = false;
+            drop(eldest);
+            eldest.statistics.evictions.increment();
+        }
+        if (clock.size() > 2 * count + 16) {
+            clock.removeIf(e -> {
+                if (e.strong == null) {
+                    e.queued = false;
+                    return true;
+                }
+                return false;
+            });
+        }
+    }
+
+    private void drop(CachedHolder<?> h) {
+        h.strong = null;
+        count--;
+        bytes -= h.size;
+    }
+
+    /**
+     * Lets go of a build which is no longer wanted, leaving only the weak reference.
+     */
+    private synchronized void release(CachedHolder<?> h) {
+        if (h.strong != null) {
+            drop(h);
+        }
+    }
+
+    /**
+     * Lets go of a build held by a {@link BuildReference} which is being discarded.
+     */
+    static void release(@NonNull BuildReference.Holder<?> h) {
+        if (h instanceof CachedHolder) {
+            CachedHolder<?> ch = (CachedHolder<?>) h;
+            ch.factory.release(ch);
+        }
+    }
+
+    private boolean overBudget() {
+        return MAX_BUILDS > 0 && count > MAX_BUILDS || MAX_BYTES > 0 && bytes > MAX_BYTES;
+    }
+
+    /**
+     * Number of builds currently kept in memory.
+     */
+    public synchronized int getSize() {
+        return count;
+    }
+
+    /**
+     * Total size of the {@code build.xml} of builds currently kept in memory.
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Gets the cache statistics of each job, keyed by full name.
+     */
+    public @NonNull Map<String, Statistics> getStatistics() {
+        return Collections.unmodifiableMap(statistics);
+    }
+
+    /**
+     * Gets the cache statistics of a job.
+     */
+    public @CheckForNull Statistics getStatistics(@NonNull String jobFullName) {
+        return statistics.get(jobFullName);
+    }
+
+    /**
+     * Lets go of the builds, and drops the statistics, of a deleted job, or of the jobs in a deleted folder.
+     */
+    synchronized void deleted(@NonNull String fullName) {
+        String prefix = fullName + '/';
+        for (CachedHolder<?> h : clock) {
+            if (h.strong != null && (h.job.equals(fullName) || h.job.startsWith(prefix))) {
+                drop(h);
+            }
+        }
+        statistics.keySet().removeIf(job -> job.equals(fullName) || job.startsWith(prefix));
+    }
+
+    /**
+     * Keeps the builds and statistics of a job under its new full name.
+     * Called for each job of a moved or renamed folder too.
+     */
+    synchronized void moved(@NonNull String oldFullName, @NonNull String newFullName) {
+        for (CachedHolder<?> h : clock) {
+            if (h.job.equals(oldFullName)) {
+                h.job = newFullName;
+            }
+        }
+        Statistics s = statistics.remove(oldFullName);
+        if (s != null) {
+            // holders of builds already loaded keep counting into it
+            statistics.put(newFullName, s);
+        }
+    }
+
+    @Extension
+    @Restricted(NoExternalUse.class)
+    public static final class ItemListenerImpl extends ItemListener {
+        @Override
+        public void onDeleted(Item item) {
+            get().deleted(item.getFullName());
+        }
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            get().moved(oldFullName, newFullName);
+        }
+    }
+
+    /**
+     * How well builds of a job are kept in memory.
+     */
+    public static final class Statistics {
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder evictions = new LongAdder();
+
+        /**
+         * Number of times a build was found in memory.
+         */
+        public long getHits() {
+            return hits.sum();
+        }
+
+        /**
+         * Number of times a build had been let go and needed to be loaded again.
+         */
+        public long getMisses() {
+            return misses.sum();
+        }
+
+        /**
+         * Number of times a build was dropped from the list to stay within budget.
+         */
+        public long getEvictions() {
+            return evictions.sum();
+        }
+
+        @Override
+        public String toString() {
+            return "hits=" + getHits() + " misses=" + getMisses() + " evictions=" + getEvictions();
+        }
+    }
+
+    static final class CachedHolder<R> implements BuildReference.Holder<R> {
+        private final BoundedHolderFactory factory;
+        final WeakReference<R> weak;
+        private final long size;
+        private final Statistics statistics;
+        /**
+         * Full name of the job of the build, guarded by the factory.
+         */
+        private String job;
+        /**
+         * The build while it is in the list, null once evicted or released.
+         */
+        private volatile R strong;
+        /**
+         * Whether the build has been used since the clock hand last went past it.
+         */
+        private volatile boolean referenced;
+        /**
+         * Whether this is in {@link #clock}, guarded by the factory.
+         */
+        private boolean queued;
+
+        CachedHolder(BoundedHolderFactory factory, R referent, String job, long size, Statistics statistics) {
+            this.factory = factory;
+            this.weak = new WeakReference<>(referent);
+            this.job = job;
+            this.size = size;
+            this.statistics = statistics;
+        }
+
+        @Override
+        public R get() {
+            R r = strong;
+            if (r != null) {
+                // no lock needed to record the access
+                referenced = true;
+                statistics.hits.increment();
+                return r;
+            }
+            r = weak.get();
+            if (r == null) {
+                statistics.misses.increment();
+                return null;
+            }
+            statistics.hits.increment();
+            factory.admit(this, r);
+            return r;
+        }
+    }
+}
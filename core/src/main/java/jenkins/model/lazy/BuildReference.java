@@ -37,10 +37,31 @@ public final class BuildReference<R> {
 
     final String id;
     private volatile Holder<R> holder;
+    /**
+     * Whether this records that the build failed to load, as opposed to a build which was let go.
+     */
+    private final boolean failure;
 
     public BuildReference(String id, R referent) {
         this.id = id;
         this.holder = findHolder(referent);
+        this.failure = false;
+    }
+
+    private BuildReference(String id) {
+        this.id = id;
+        this.failure = true;
+    }
+
+    /**
+     * Creates a reference recording that a build failed to load.
+     */
+    static <R> BuildReference<R> failure(String id) {
+        return new BuildReference<>(id);
+    }
+
+    boolean isFailure() {
+        return failure;
     }
 
     /**
@@ -62,6 +83,17 @@ public final class BuildReference<R> {
         holder = null;
     }
 
+    /**
+     * Lets go of the build as this reference is being discarded, without waiting for it to be evicted or collected.
+     * The reference keeps working, but may need to load the build again.
+     */
+    /*package*/ void release() {
+        Holder<R> h = holder; // capture
+        if (h != null) {
+            BoundedHolderFactory.release(h);
+        }
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
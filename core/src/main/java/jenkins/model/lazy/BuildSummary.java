@@ -0,0 +1,136 @@
+package jenkins.model.lazy;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.AbstractBuild;
+import hudson.model.Result;
+import hudson.model.Run;
+import java.util.Objects;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.Beta;
+
+/**
+ * What {@link BuildSummaryIndex} remembers about a completed build,
+ * enough to list the build without loading its {@code build.xml}.
+ *
+ * @since TODO
+ */
+@Restricted(Beta.class)
+public final class BuildSummary {
+    private final int number;
+    private final long timestamp;
+    private final long duration;
+    private final @CheckForNull Result result;
+    private final @CheckForNull String displayName;
+    private final long queueId;
+    private final @CheckForNull String builtOn;
+
+    BuildSummary(int number, long timestamp, long duration, @CheckForNull Result result,
+                 @CheckForNull String displayName, long queueId, @CheckForNull String builtOn) {
+        this.number = number;
+        this.timestamp = timestamp;
+        this.duration = duration;
+        this.result = result;
+        this.displayName = displayName;
+        this.queueId = queueId;
+        this.builtOn = builtOn;
+    }
+
+    static @NonNull BuildSummary of(@NonNull Run<?, ?> r) {
+        String builtOn = null;
+        if (r instanceof AbstractBuild) {
+            builtOn = ((AbstractBuild<?, ?>) r).getBuiltOnStr();
+            if (builtOn == null) {
+                builtOn = "";
+            }
+        }
+        return new BuildSummary(r.getNumber(), r.getTimeInMillis(), r.getDuration(), r.getResult(),
+                r.hasCustomDisplayName() ? r.getDisplayName() : null, r.getQueueId(), builtOn);
+    }
+
+    /**
+     * @see Run#getNumber()
+     */
+    public int getNumber() {
+        return number;
+    }
+
+    /**
+     * @see Run#getTimeInMillis()
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @see Run#getDuration()
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * @see Run#getResult()
+     */
+    public @CheckForNull Result getResult() {
+        return result;
+    }
+
+    /**
+     * @see Run#getDisplayName()
+     */
+    public @NonNull String getDisplayName() {
+        return displayName != null ? displayName : "#" + number;
+    }
+
+    /**
+     * @see Run#hasCustomDisplayName()
+     */
+    public boolean hasCustomDisplayName() {
+        return displayName != null;
+    }
+
+    /**
+     * @see Run#getQueueId()
+     */
+    public long getQueueId() {
+        return queueId;
+    }
+
+    /**
+     * Name of the node the build ran on, as in {@link AbstractBuild#getBuiltOnStr()}.
+     *
+     * @return {@code ""} for the built-in node, null for builds which are not {@link AbstractBuild}s
+     */
+    public @CheckForNull String getBuiltOn() {
+        return builtOn;
+    }
+
+    /* package */ @CheckForNull String getCustomDisplayName() {
+        return displayName;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        BuildSummary that = (BuildSummary) o;
+        return number == that.number && timestamp == that.timestamp && duration == that.duration
+                && queueId == that.queueId && result == that.result
+                && Objects.equals(displayName, that.displayName) && Objects.equals(builtOn, that.builtOn);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(number, timestamp, duration, result, displayName, queueId, builtOn);
+    }
+
+    @Override
+    public String toString() {
+        return "BuildSummary[#" + number + " " + result + "]";
+    }
+}
@@ -0,0 +1,395 @@
+package jenkins.model.lazy;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.Job;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.Saveable;
+import hudson.model.listeners.RunListener;
+import hudson.model.listeners.SaveableListener;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.Beta;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Append-only file next to the build directories of a job, holding a {@link BuildSummary} of each completed build,
+ * so that listing the history of a job does not require loading every {@code build.xml}.
+ *
+ * <p>
+ * A summary is appended when a build completes, when a completed build is saved with different details
+ * (such as a new display name), and when a completed build missing from the index is loaded.
+ * Deleting a build appends a tombstone. The file is compacted once it holds many more records than builds.
+ * Builds on disk without a summary, such as builds in progress or builds from before the index was enabled,
+ * are simply loaded by callers as before, which adds them to the index.
+ *
+ * <p>
+ * Enabled with {@code jenkins.model.lazy.BuildSummaryIndex.enabled}.
+ *
+ * @see Job#getBuildSummaries()
+ * @since TODO
+ */
+@Restricted(Beta.class)
+public final class BuildSummaryIndex {
+    @Restricted(NoExternalUse.class)
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* Script Console modifiable */ boolean ENABLED = SystemProperties.getBoolean(BuildSummaryIndex.class.getName() + ".enabled");
+
+    static final String FILE_NAME = "summaries";
+
+    private static final int MAGIC = 0x4a425349;
+    private static final byte SUMMARY = 1;
+    private static final byte DELETED = 0;
+
+    private final AbstractLazyLoadRunMap<?> runs;
+
+    /**
+     * Summaries by build number, newest first, or null until read from disk.
+     * Updated in place, like {@link AbstractLazyLoadRunMap}'s index, so that recording a build does not copy the others.
+     */
+    private volatile ConcurrentNavigableMap<Integer, BuildSummary> summaries;
+
+    /**
+     * Number of records in the file, including superseded ones.
+     */
+    private int records;
+
+    /**
+     * Number of summaries, as the size of {@link #summaries} is not known without counting them.
+     */
+    private int live;
+
+    BuildSummaryIndex(@NonNull AbstractLazyLoadRunMap<?> runs) {
+        this.runs = runs;
+    }
+
+    private File getFile() {
+        return new File(runs.dir, FILE_NAME);
+    }
+
+    /**
+     * Gets the summary of a build.
+     *
+     * @return null if the build is unknown to the index, for example because it is still in progress,
+     * in which case the build itself has to be looked at
+     */
+    public @CheckForNull BuildSummary get(int number) {
+        return read().get(number);
+    }
+
+    /**
+     * Lists the numbers of the builds on disk, newest first, whether or not they have a summary.
+     */
+    public @NonNull List<Integer> getNumbers() {
+        SortedIntList numbers = runs.numbersOnDisk();
+        return new AbstractList<>() {
+            @Override
+            public Integer get(int index) {
+                return numbers.get(numbers.size() - 1 - index);
+            }
+
+            @Override
+            public int size() {
+                return numbers.size();
+            }
+        };
+    }
+
+    /**
+     * Records the summary of a completed build, unless the index already has it.
+     */
+    public void record(@NonNull Run<?, ?> r) {
+        if (r.isBuilding() || r.getResult() == null) {
+            return;
+        }
+        BuildSummary s = BuildSummary.of(r);
+        if (s.equals(read().get(s.getNumber()))) {
+            return;
+        }
+        synchronized (this) {
+            if (read().put(s.getNumber(), s) == null) {
+                live++;
+            }
+            append(s.getNumber(), s);
+        }
+    }
+
+    /**
+     * Forgets a deleted build.
+     */
+    public void remove(int number) {
+        if (!read().containsKey(number)) {
+            return;
+        }
+        synchronized (this) {
+            if (read().remove(number) != null) {
+                live--;
+            }
+            append(number, null);
+        }
+    }
+
+    /**
+     * Discards the index and builds it again by loading every build on disk.
+     */
+    @Restricted(NoExternalUse.class) // for script console
+    public void rebuild() throws IOException {
+        synchronized (this) {
+            summaries = new ConcurrentSkipListMap<>(Collections.reverseOrder());
+            live = 0;
+            compact();
+        }
+        for (int n : getNumbers()) {
+            Object r = runs.getByNumber(n);
+            if (r instanceof Run) {
+                record((Run<?, ?>) r);
+            }
+        }
+    }
+
+    /**
+     * Drops what was read from disk, so that the next access reads it again.
+     */
+    synchronized void reload() {
+        summaries = null;
+    }
+
+    private ConcurrentNavigableMap<Integer, BuildSummary> read() {
+        ConcurrentNavigableMap<Integer, BuildSummary> s = summaries;
+        if (s == null) {
+            synchronized (this) {
+                s = summaries;
+                if (s == null) {
+                    summaries = s = load();
+                    live = s.size();
+                }
+            }
+        }
+        return s;
+    }
+
+    private ConcurrentNavigableMap<Integer, BuildSummary> load() {
+        assert Thread.holdsLock(this);
+        ConcurrentNavigableMap<Integer, BuildSummary> result = new ConcurrentSkipListMap<>(Collections.reverseOrder());
+        records = 0;
+        File file = getFile();
+        long valid = 0;
+        boolean foreign = false;
+        try (InputStream is = Files.newInputStream(file.toPath());
+             DataInputStream in = new DataInputStream(new BufferedInputStream(is))) {
+            foreign = in.readInt() != MAGIC;
+            valid = 4;
+            while (!foreign) {
+                int length = in.readInt();
+                if (length < 0 || length > 1024 * 1024) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                long checksum = in.readLong();
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if (crc.getValue() != checksum) {
+                    break;
+                }
+                decode(payload, result);
+                records++;
+                valid += 4 + length + 8;
+            }
+        } catch (NoSuchFileException e) {
+            return result;
+        } catch (EOFException e) {
+            // end of the file, possibly in the middle of a record torn by a crash
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to read " + file, e);
+        }
+        if (foreign) {
+            LOGGER.log(Level.WARNING, "Discarding {0} which is not a build summary index", file);
+            valid = 0;
+        }
+        if (valid < file.length()) {
+            // do not append after garbage
+            LOGGER.log(Level.FINE, "Truncating {0} to {1} bytes", new Object[] {file, valid});
+            try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                ch.truncate(valid);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to truncate " + file, e);
+            }
+        }
+        return result;
+    }
+
+    private static void decode(byte[] payload, Map<Integer, BuildSummary> into) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        int number = in.readInt();
+        if (in.readByte() == DELETED) {
+            into.remove(number);
+            return;
+        }
+        long timestamp = in.readLong();
+        long duration = in.readLong();
+        String result = in.readUTF();
+        String displayName = in.readBoolean() ? in.readUTF() : null;
+        long queueId = in.readLong();
+        String builtOn = in.readBoolean() ? in.readUTF() : null;
+        into.put(number, new BuildSummary(number, timestamp, duration, result.isEmpty() ? null : Result.fromString(result),
+                displayName, queueId, builtOn));
+    }
+
+    private static byte[] encode(int number, @CheckForNull BuildSummary s) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(baos);
+        out.writeInt(number);
+        if (s == null) {
+            out.writeByte(DELETED);
+        } else {
+            out.writeByte(SUMMARY);
+            out.writeLong(s.getTimestamp());
+            out.writeLong(s.getDuration());
+            out.writeUTF(s.getResult() == null ? "" : s.getResult().toString());
+            writeNullable(out, s.getCustomDisplayName());
+            out.writeLong(s.getQueueId());
+            writeNullable(out, s.getBuiltOn());
+        }
+        return baos.toByteArray();
+    }
+
+    private static void writeNullable(DataOutputStream out, @CheckForNull String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            out.writeUTF(s);
+        }
+    }
+
+    private static void write(OutputStream out, byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer buf = ByteBuffer.allocate(4 + payload.length + 8);
+        buf.putInt(payload.length).put(payload).putLong(crc.getValue());
+        out.write(buf.array());
+    }
+
+    private void append(int number, @CheckForNull BuildSummary s) {
+        assert Thread.holdsLock(this);
+        File file = getFile();
+        try {
+            if (records > 2 * live + 100) {
+                compact();
+                return;
+            }
+            byte[] payload = encode(number, s);
+            boolean empty = file.length() == 0;
+            try (OutputStream out = Files.newOutputStream(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                if (empty) {
+                    out.write(ByteBuffer.allocate(4).putInt(MAGIC).array());
+                }
+                write(out, payload);
+            }
+            records++;
+        } catch (UTFDataFormatException e) {
+            // display name too long to index; callers will load the build instead
+            LOGGER.log(Level.FINE, "Not indexing #" + number + " in " + file, e);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to update " + file, e);
+        }
+    }
+
+    /**
+     * Rewrites the file with only the current summaries.
+     */
+    private void compact() throws IOException {
+        assert Thread.holdsLock(this);
+        Path target = getFile().toPath();
+        Path tmp = target.resolveSibling(FILE_NAME + ".tmp");
+        int written = 0;
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            out.write(ByteBuffer.allocate(4).putInt(MAGIC).array());
+            for (BuildSummary s : summaries.values()) {
+                try {
+                    write(out, encode(s.getNumber(), s));
+                    written++;
+                } catch (UTFDataFormatException e) {
+                    // skip
+                }
+            }
+        }
+        try {
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        records = written;
+    }
+
+    @Restricted(NoExternalUse.class)
+    @Extension
+    public static final class RunListenerImpl extends RunListener<Run<?, ?>> {
+        @Override
+        public void onFinalized(Run<?, ?> r) {
+            BuildSummaryIndex index = r.getParent().getBuildSummaries();
+            if (index != null) {
+                index.record(r);
+            }
+        }
+
+        @Override
+        public void onDeleted(Run<?, ?> r) {
+            BuildSummaryIndex index = r.getParent().getBuildSummaries();
+            if (index != null) {
+                index.remove(r.getNumber());
+            }
+        }
+    }
+
+    /**
+     * Picks up changes to completed builds, such as a new display name.
+     */
+    @Restricted(NoExternalUse.class)
+    @Extension
+    public static final class SaveableListenerImpl extends SaveableListener {
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof Run) {
+                Run<?, ?> r = (Run<?, ?>) o;
+                BuildSummaryIndex index = r.getParent().getBuildSummaries();
+                if (index != null) {
+                    index.record(r);
+                }
+            }
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(BuildSummaryIndex.class.getName());
+}
@@ -106,11 +106,8 @@ public abstract class LazyBuildMixIn<JobT extends Job<JobT, RunT> & Queue.Task &
     @SuppressWarnings("unchecked")
     public void onLoad(ItemGroup<? extends Item> parent, String name) throws IOException {
         RunMap<RunT> _builds = createBuildRunMap();
-        int max = _builds.maxNumberOnDisk();
-        int next = asJob().getNextBuildNumber();
-        if (next <= max) {
-            LOGGER.log(Level.WARNING, "JENKINS-27530: improper nextBuildNumber {0} detected in {1} with highest build number {2}; adjusting", new Object[] {next, asJob(), max});
-            asJob().updateNextBuildNumber(max + 1);
+        if (!AbstractLazyLoadRunMap.DEFER_SCAN) {
+            checkNextBuildNumber(_builds);
         }
         RunMap<RunT> currentBuilds = this.builds;
         if (parent != null) {
@@ -140,6 +137,15 @@ public abstract class LazyBuildMixIn<JobT extends Job<JobT, RunT> & Queue.Task &
         this.builds = _builds;
     }
 
+    private void checkNextBuildNumber(RunMap<RunT> _builds) throws IOException {
+        int max = _builds.maxNumberOnDisk();
+        int next = asJob().getNextBuildNumber();
+        if (next <= max) {
+            LOGGER.log(Level.WARNING, "JENKINS-27530: improper nextBuildNumber {0} detected in {1} with highest build number {2}; adjusting", new Object[] {next, asJob(), max});
+            asJob().updateNextBuildNumber(max + 1);
+        }
+    }
+
     private RunMap<RunT> createBuildRunMap() {
         RunMap<RunT> r = new RunMap<>(asJob(), new RunMap.Constructor<RunT>() {
             @Override
@@ -182,6 +188,10 @@ public abstract class LazyBuildMixIn<JobT extends Job<JobT, RunT> & Queue.Task &
      * Suitable for {@link SubTask#createExecutable}.
      */
     public final synchronized RunT newBuild() throws IOException {
+        if (AbstractLazyLoadRunMap.DEFER_SCAN) {
+            // not done in onLoad so as not to scan the build directory
+            checkNextBuildNumber(builds);
+        }
         try {
             RunT lastBuild = getBuildClass().getConstructor(asJob().getClass()).newInstance(asJob());
             var rootDir = lastBuild.getRootDir().toPath();
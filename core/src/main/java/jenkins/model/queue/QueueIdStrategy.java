@@ -37,6 +37,13 @@ public abstract class QueueIdStrategy implements ExtensionPoint {
      */
     public void load(@NonNull Queue.State queueState) {}
 
+    /**
+     * Called after {@link #load} with the items actually restored into the queue,
+     * which may include items queued after the state was persisted, such as those replayed from {@link Queue#JOURNAL}.
+     * @since TODO
+     */
+    public void loaded(@NonNull List<Queue.Item> items) {}
+
     /**
      * Generates a new ID for the given project and actions.
      * @param project The task to be queued.
@@ -78,6 +85,14 @@ public abstract class QueueIdStrategy implements ExtensionPoint {
             }
         }
 
+        @Override
+        public void loaded(List<Queue.Item> items) {
+            items.stream()
+                    .mapToLong(Queue.Item::getId)
+                    .max()
+                    .ifPresent(maxId -> COUNTER.accumulateAndGet(maxId, Math::max));
+        }
+
         @Restricted(DoNotUse.class) // testing only
         public static long getCurrentCounterValue() {
             return COUNTER.get();
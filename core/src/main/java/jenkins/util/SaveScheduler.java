@@ -0,0 +1,303 @@
+package jenkins.util;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.BulkChange;
+import hudson.model.Saveable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.model.Jenkins;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.Beta;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Write-behind for {@link Saveable#save}.
+ * Rather than being written as soon as it changes, an object is marked as changed
+ * and written by a background thread once {@link #DELAY} has passed,
+ * so that many changes in a row to the same object are written once,
+ * and request handling and executor threads do not wait for the disk.
+ *
+ * <p>
+ * A {@code save()} method opts in by returning early when {@link #defer} returns true, right after checking {@link BulkChange}:
+ * <pre>{@code
+ * public synchronized void save() throws IOException {
+ *     if (BulkChange.contains(this))   return;
+ *     if (SaveScheduler.defer(this))   return;
+ *     getConfigFile().write(this);
+ *     SaveableListener.fireOnChange(this, getConfigFile());
+ * }
+ * }</pre>
+ * The background writer calls the same method, for which {@link #defer} then returns false,
+ * so what is written is the state of the object at that time.
+ * An object in a {@link BulkChange} is only marked as changed when the bulk change is committed.
+ *
+ * <p>
+ * Code which reads the file an object is saved in, such as to serve or copy it, first calls {@link #flush(Saveable)}
+ * so that it sees the latest changes, and code about to delete that file calls {@link #cancel}
+ * so that it is not written again afterwards.
+ * {@link #flush()} writes everything, for example before reloading all configuration.
+ * Failures of deferred saves are logged, as the caller of {@code save()} has moved on by then.
+ * Everything still pending is written when Jenkins shuts down.
+ *
+ * @since TODO
+ */
+@Restricted(Beta.class)
+public final class SaveScheduler {
+    /**
+     * Whether to defer saves.
+     * A crash may then lose the changes of the last {@link #DELAY}.
+     */
+    @Restricted(NoExternalUse.class)
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* Script Console modifiable */ boolean ENABLED = SystemProperties.getBoolean(SaveScheduler.class.getName() + ".enabled");
+
+    /**
+     * Milliseconds for which changes are collected before being written.
+     */
+    @Restricted(NoExternalUse.class)
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* Script Console modifiable */ long DELAY = SystemProperties.getLong(SaveScheduler.class.getName() + ".delay", 1000L);
+
+    private static final Logger LOGGER = Logger.getLogger(SaveScheduler.class.getName());
+
+    private static final Object LOCK = new Object();
+
+    /**
+     * Objects to write, compared by identity as {@link BulkChange} does.
+     */
+    private static final Set<Saveable> pending = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * Objects of the batch the background writer is working on which it has not started writing yet.
+     */
+    private static final Set<Saveable> inFlight = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * The object the background writer is writing, if any.
+     */
+    private static Saveable current;
+
+    /**
+     * The scheduled or running writer, if any. Only one runs at a time.
+     */
+    private static Future<?> writer;
+
+    private static long batchesStarted;
+    private static long batchesFinished;
+
+    /**
+     * Whether the current thread is writing, and so must not defer.
+     */
+    private static final ThreadLocal<Boolean> WRITING = new ThreadLocal<>();
+
+    private SaveScheduler() {}
+
+    /**
+     * Marks an object as changed, to be saved later by calling its {@link Saveable#save} again.
+     *
+     * @return false if the object should rather be saved right away,
+     *     such as when deferring is disabled, when Jenkins is shutting down, or when called while writing
+     */
+    public static boolean defer(@NonNull Saveable saveable) {
+        if (!ENABLED || Boolean.TRUE.equals(WRITING.get())) {
+            return false;
+        }
+        Jenkins j = Jenkins.getInstanceOrNull();
+        if (j == null || j.isTerminating()) {
+            return false;
+        }
+        synchronized (LOCK) {
+            pending.add(saveable);
+            if (writer == null || writer.isDone()) {
+                writer = Timer.get().schedule(SaveScheduler::write, DELAY, TimeUnit.MILLISECONDS);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether an object has changes which were not written yet.
+     */
+    public static boolean isPending(@NonNull Saveable saveable) {
+        synchronized (LOCK) {
+            return pending.contains(saveable);
+        }
+    }
+
+    /**
+     * Durability barrier: writes everything marked as changed so far, and waits for what the background writer is writing.
+     * Must not be called while holding the monitor of a {@link Saveable}, whose {@code save()} the writer may be waiting for.
+     *
+     * @throws IOException if any of the objects written here failed to save
+     */
+    public static void flush() throws IOException {
+        List<Saveable> batch;
+        long started;
+        synchronized (LOCK) {
+            if (pending.isEmpty() && batchesFinished == batchesStarted) {
+                return;
+            }
+            batch = new ArrayList<>(pending);
+            pending.clear();
+            started = batchesStarted;
+        }
+        IOException failure = save(batch);
+        if (!Boolean.TRUE.equals(WRITING.get())) {
+            synchronized (LOCK) {
+                while (batchesFinished < started) {
+                    try {
+                        LOCK.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while waiting for saves to be written");
+                    }
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Writes one object right away if it has changes which were not written yet,
+     * and waits for it if the background writer is writing it, without waiting for anything else.
+     *
+     * @throws IOException if the object failed to save
+     */
+    public static void flush(@NonNull Saveable saveable) throws IOException {
+        boolean write;
+        synchronized (LOCK) {
+            write = pending.remove(saveable) | inFlight.remove(saveable);
+            // the writer may be waiting for the monitor of the object, in which case it writes it again afterwards
+            if (!Thread.holdsLock(saveable) && !Boolean.TRUE.equals(WRITING.get())) {
+                awaitCurrent(saveable);
+            }
+        }
+        if (write) {
+            IOException failure = save(List.of(saveable));
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Forgets the changes of an object which are not written yet, and waits for it if the background writer is writing it,
+     * for example before deleting the file it is saved in.
+     */
+    public static void cancel(@NonNull Saveable saveable) throws IOException {
+        synchronized (LOCK) {
+            pending.remove(saveable);
+            inFlight.remove(saveable);
+            if (!Thread.holdsLock(saveable) && !Boolean.TRUE.equals(WRITING.get())) {
+                awaitCurrent(saveable);
+            }
+        }
+    }
+
+    /**
+     * Like {@link #cancel(Saveable)} for every object matching a condition, such as the builds of a job being deleted.
+     */
+    public static void cancelAll(@NonNull Predicate<? super Saveable> filter) throws IOException {
+        synchronized (LOCK) {
+            pending.removeIf(filter);
+            inFlight.removeIf(filter);
+            Saveable c = current;
+            if (c != null && filter.test(c) && !Thread.holdsLock(c) && !Boolean.TRUE.equals(WRITING.get())) {
+                awaitCurrent(c);
+            }
+        }
+    }
+
+    private static void awaitCurrent(Saveable saveable) throws IOException {
+        assert Thread.holdsLock(LOCK);
+        while (current == saveable) {
+            try {
+                LOCK.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for " + saveable + " to be written");
+            }
+        }
+    }
+
+    private static void write() {
+        List<Saveable> batch;
+        long id;
+        synchronized (LOCK) {
+            batch = new ArrayList<>(pending);
+            pending.clear();
+            inFlight.addAll(batch);
+            id = ++batchesStarted;
+        }
+        Boolean writing = WRITING.get();
+        WRITING.set(true);
+        try {
+            for (Saveable saveable : batch) {
+                synchronized (LOCK) {
+                    if (!inFlight.remove(saveable)) {
+                        // written or cancelled meanwhile
+                        continue;
+                    }
+                    current = saveable;
+                }
+                try {
+                    save(List.of(saveable));
+                } finally {
+                    synchronized (LOCK) {
+                        current = null;
+                        LOCK.notifyAll();
+                    }
+                }
+            }
+        } finally {
+            WRITING.set(writing);
+            synchronized (LOCK) {
+                inFlight.clear();
+                batchesFinished = id;
+                LOCK.notifyAll();
+                // what changed in the meantime waits for the next one
+                writer = pending.isEmpty() ? null : Timer.get().schedule(SaveScheduler::write, DELAY, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * @return the first failure, if any
+     */
+    private static @CheckForNull IOException save(List<Saveable> batch) {
+        IOException failure = null;
+        Boolean writing = WRITING.get();
+        WRITING.set(true);
+        try {
+            for (Saveable saveable : batch) {
+                try {
+                    saveable.save();
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Failed to save " + saveable, e);
+                    if (failure == null) {
+                        failure = e instanceof IOException ? (IOException) e : new IOException(e);
+                    } else {
+                        failure.addSuppressed(e);
+                    }
+                }
+            }
+        } finally {
+            WRITING.set(writing);
+        }
+        return failure;
+    }
+}
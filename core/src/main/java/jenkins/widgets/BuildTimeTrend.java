@@ -24,19 +24,86 @@
 
 package jenkins.widgets;
 
+import hudson.Util;
 import hudson.model.AbstractBuild;
 import hudson.model.BallColor;
+import hudson.model.Job;
 import hudson.model.Node;
 import hudson.model.Run;
 import jenkins.console.ConsoleUrlProvider;
 import jenkins.model.Jenkins;
+import jenkins.model.lazy.BuildSummary;
+import jenkins.model.lazy.BuildSummaryIndex;
 import net.sf.json.JSONObject;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.DoNotUse;
+import org.kohsuke.stapler.Stapler;
 
 @Restricted(DoNotUse.class) // only for buildTimeTrend.jelly
 public class BuildTimeTrend extends RunListProgressiveRendering {
 
+    private Job<?, ?> job;
+
+    /** Jelly cannot call a constructor with arguments. */
+    public void setJob(Job<?, ?> job) {
+        this.job = job;
+        setBuilds(job.getBuilds());
+    }
+
+    @Override protected void compute() throws Exception {
+        // other providers may need the build to pick a console URL
+        BuildSummaryIndex summaries = job == null || ConsoleUrlProvider.isEnabled() ? null : job.getBuildSummaries();
+        if (summaries == null) {
+            super.compute();
+            return;
+        }
+        String contextPath = Stapler.getCurrentRequest().getContextPath();
+        for (int n : summaries.getNumbers()) {
+            if (canceled()) {
+                return;
+            }
+            JSONObject element = new JSONObject();
+            BuildSummary s = summaries.get(n);
+            if (s != null && s.getResult() != null) {
+                calculate(s, contextPath, element);
+            } else {
+                Run<?, ?> build = job.getBuildByNumber(n);
+                if (build == null) {
+                    continue;
+                }
+                calculate(build, element);
+            }
+            add(element);
+        }
+    }
+
+    /**
+     * Like {@link #calculate(Run, JSONObject)} for a completed build, without loading it.
+     */
+    private void calculate(BuildSummary s, String contextPath, JSONObject element) {
+        BallColor iconColor = s.getResult().color;
+        element.put("iconName", iconColor.getIconName());
+        element.put("iconColorOrdinal", iconColor.ordinal());
+        element.put("iconColorDescription", iconColor.getDescription());
+        element.put("number", s.getNumber());
+        element.put("displayName", s.getDisplayName());
+        element.put("duration", s.getDuration());
+        element.put("durationString", Util.getTimeSpanString(s.getDuration()));
+        element.put("consoleUrl", contextPath + '/' + job.getUrl() + s.getNumber() + "/console");
+        String ns = s.getBuiltOn();
+        if (ns != null) {
+            Node n = ns.isEmpty() ? Jenkins.get() : Jenkins.get().getNode(ns);
+            if (n == null) {
+                element.put("builtOnStr", ns);
+            } else if (n != Jenkins.get()) {
+                element.put("builtOn", n.getNodeName());
+                element.put("builtOnStr", n.getDisplayName());
+            } else {
+                element.put("builtOnStr", hudson.model.Messages.Hudson_Computer_DisplayName());
+            }
+        }
+    }
+
     @Override protected void calculate(Run<?, ?> build, JSONObject element) {
         BallColor iconColor = build.getIconColor();
         element.put("iconName", iconColor.getIconName());
@@ -13,11 +13,17 @@ import hudson.util.XStream2;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.util.Collections;
 import jenkins.model.Jenkins;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 public class XmlFileTest {
 
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
     @Test
     public void canReadXml1_0Test() throws IOException {
         URL configUrl = getClass().getResource("/hudson/config_1_0.xml");
@@ -80,4 +86,50 @@ public class XmlFileTest {
             assertThat(n.getLabelString(), is("LESS_TERMCAP_mb=\u001B[01;31m"));
         }
     }
+
+    @Test
+    public void readWhileReading() throws IOException {
+        XStream2 xs = Holder.XSTREAM;
+        File inner = tmp.newFile("inner.xml");
+        new XmlFile(xs, inner).write(new Holder("inner", null));
+        File outer = tmp.newFile("outer.xml");
+        new XmlFile(xs, outer).write(new Holder(String.join("", Collections.nCopies(10000, "outer ")), inner));
+        for (int i = 0; i < 3; i++) {
+            Holder h = (Holder) new XmlFile(xs, outer).read();
+            assertThat(h.value.length(), is(60000));
+            assertThat(h.nested.value, is("inner"));
+        }
+    }
+
+    @Test
+    public void readLargeFile() throws IOException {
+        XStream2 xs = new XStream2();
+        File f = tmp.newFile("large.xml");
+        String value = String.join("", Collections.nCopies(300000, "large "));
+        new XmlFile(xs, f).write(new Holder(value, null));
+        assertThat(((Holder) new XmlFile(xs, f).read()).value, is(value));
+        Holder h = new Holder(null, null);
+        new XmlFile(xs, f).unmarshal(h);
+        assertThat(h.value, is(value));
+    }
+
+    public static final class Holder {
+        static final XStream2 XSTREAM = new XStream2();
+
+        String value;
+        File file;
+        transient Holder nested;
+
+        Holder(String value, File file) {
+            this.value = value;
+            this.file = file;
+        }
+
+        private Object readResolve() throws IOException {
+            if (file != null) {
+                nested = (Holder) new XmlFile(XSTREAM, file).read();
+            }
+            return this;
+        }
+    }
 }
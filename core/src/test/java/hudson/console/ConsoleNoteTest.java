@@ -0,0 +1,53 @@
+package hudson.console;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+public class ConsoleNoteTest {
+
+    private static int naiveFindPreamble(byte[] buf, int start, int len) {
+        OUTER:
+        for (int i = start; i <= start + len - ConsoleNote.PREAMBLE.length; i++) {
+            for (int j = 0; j < ConsoleNote.PREAMBLE.length; j++) {
+                if (buf[i + j] != ConsoleNote.PREAMBLE[j]) {
+                    continue OUTER;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    @Test
+    public void findPreamble() {
+        String note = HyperlinkNote.encodeTo("/job/x", "x");
+        for (String s : new String[] {"", "x", note, "abc" + note, "\u001B[8mh\u001B[8mha:", ":::ha:\u001B[8mha:" + note, "some text without any note at all"}) {
+            byte[] buf = s.getBytes(StandardCharsets.UTF_8);
+            for (int start = 0; start <= buf.length; start++) {
+                for (int len = 0; start + len <= buf.length; len++) {
+                    assertEquals(s + " " + start + " " + len, naiveFindPreamble(buf, start, len), ConsoleNote.findPreamble(buf, start, len));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void removeNotes() throws Exception {
+        String x = HyperlinkNote.encodeTo("/job/x", "x");
+        String y = HyperlinkNote.encodeTo("/job/y", "y");
+        assertEquals("plain", ConsoleNote.removeNotes("plain"));
+        assertEquals("a x b y", ConsoleNote.removeNotes("a " + x + " b " + y));
+        assertEquals("xy", ConsoleNote.removeNotes(x + y));
+        assertEquals("a " + ConsoleNote.PREAMBLE_STR + "unterminated", ConsoleNote.removeNotes("a " + ConsoleNote.PREAMBLE_STR + "unterminated"));
+
+        String line = "a " + x + " b " + y + y + " c\r\n";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (PlainTextConsoleOutputStream plain = new PlainTextConsoleOutputStream(out)) {
+            plain.write(line.getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals(ConsoleNote.removeNotes(line), out.toString(StandardCharsets.UTF_8));
+    }
+}
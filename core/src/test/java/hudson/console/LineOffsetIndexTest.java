@@ -0,0 +1,148 @@
+package hudson.console;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LineOffsetIndexTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Before
+    public void enable() {
+        LineOffsetIndex.ENABLED = true;
+        LineOffsetIndex.INTERVAL = 3;
+    }
+
+    @After
+    public void disable() {
+        LineOffsetIndex.ENABLED = false;
+        LineOffsetIndex.INTERVAL = 1000;
+    }
+
+    private static String content(int lines) {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            b.append("line").append(i).append('\n');
+        }
+        return b.toString();
+    }
+
+    private static void assertOffsets(LineOffsetIndex index, String content) throws Exception {
+        long expected = 0;
+        long line = 0;
+        while (true) {
+            assertEquals("line " + line, expected, index.getOffset(line));
+            int nl = content.indexOf('\n', (int) expected);
+            if (nl < 0) {
+                break;
+            }
+            expected = nl + 1;
+            line++;
+        }
+        assertEquals(-1, index.getOffset(line + 1));
+        assertEquals(line, index.countNewlines());
+    }
+
+    @Test
+    public void recordedWhileWriting() throws Exception {
+        File log = tmp.newFile("log");
+        String content = content(10) + "partial";
+        try (OutputStream out = LineOffsetIndex.record(log, Files.newOutputStream(log.toPath()))) {
+            byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+            // mix both write methods
+            out.write(bytes, 0, 17);
+            for (int i = 17; i < 30; i++) {
+                out.write(bytes[i]);
+            }
+            out.write(bytes, 30, bytes.length - 30);
+        }
+        File file = LineOffsetIndex.getIndexFile(log);
+        // header and lines 3, 6 and 9
+        assertEquals(8 + 3 * 8, file.length());
+        LineOffsetIndex index = LineOffsetIndex.of(log, false);
+        assertNotNull(index);
+        assertOffsets(index, content);
+    }
+
+    @Test
+    public void recordingResumed() throws Exception {
+        File log = tmp.newFile("log");
+        String before = content(7) + "par";
+        try (OutputStream out = LineOffsetIndex.record(log, Files.newOutputStream(log.toPath()))) {
+            out.write(before.getBytes(StandardCharsets.UTF_8));
+        }
+        File file = LineOffsetIndex.getIndexFile(log);
+        // as if stopped in the middle of a record
+        Files.write(file.toPath(), new byte[] {1, 2, 3}, StandardOpenOption.APPEND);
+        String after = "tial\n" + content(10);
+        try (OutputStream out = LineOffsetIndex.record(log, Files.newOutputStream(log.toPath(), StandardOpenOption.APPEND))) {
+            out.write(after.getBytes(StandardCharsets.UTF_8));
+        }
+        // lines 3, 6, 9, 12, 15 and 18
+        assertEquals(8 + 6 * 8, file.length());
+        assertOffsets(LineOffsetIndex.of(log, false), before + after);
+    }
+
+    @Test
+    public void recordingResumedWithoutIndex() throws Exception {
+        File log = tmp.newFile("log");
+        String before = content(5);
+        Files.writeString(log.toPath(), before, StandardCharsets.UTF_8);
+        String after = content(5);
+        try (OutputStream out = LineOffsetIndex.record(log, Files.newOutputStream(log.toPath(), StandardOpenOption.APPEND))) {
+            out.write(after.getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals(8 + 3 * 8, LineOffsetIndex.getIndexFile(log).length());
+        assertOffsets(LineOffsetIndex.of(log, false), before + after);
+    }
+
+    @Test
+    public void builtLazilyForCompleteLogs() throws Exception {
+        File log = tmp.newFile("log");
+        String content = content(8);
+        Files.writeString(log.toPath(), content, StandardCharsets.UTF_8);
+        File file = LineOffsetIndex.getIndexFile(log);
+
+        assertOffsets(LineOffsetIndex.of(log, false), content);
+        assertFalse("not written while the log may grow", file.exists());
+
+        assertOffsets(LineOffsetIndex.of(log, true), content);
+        assertEquals(8 + 2 * 8, file.length());
+        // read back
+        assertOffsets(LineOffsetIndex.of(log, true), content);
+    }
+
+    @Test
+    public void staleIndexDiscarded() throws Exception {
+        File log = tmp.newFile("log");
+        Files.writeString(log.toPath(), content(20), StandardCharsets.UTF_8);
+        assertNotNull(LineOffsetIndex.of(log, true));
+        String content = content(4);
+        Files.writeString(log.toPath(), content, StandardCharsets.UTF_8);
+        assertOffsets(LineOffsetIndex.of(log, true), content);
+    }
+
+    @Test
+    public void notUsedForCompressedLogs() throws Exception {
+        File log = tmp.newFile("log.gz");
+        assertNull(LineOffsetIndex.of(log, true));
+        LineOffsetIndex.ENABLED = false;
+        assertNull(LineOffsetIndex.of(tmp.newFile("log"), true));
+        assertTrue(log.isFile());
+    }
+}
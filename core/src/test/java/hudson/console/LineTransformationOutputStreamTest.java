@@ -30,6 +30,8 @@ import static org.hamcrest.Matchers.is;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 import org.junit.Test;
 
@@ -47,6 +49,32 @@ public final class LineTransformationOutputStreamTest {
         test("\r");
     }
 
+    @Test public void bulkWritesSplitLikeSingleBytes() throws Exception {
+        byte[] data = "a\r\nb\rc\n\r\r\nd\n\ne\r".getBytes(StandardCharsets.US_ASCII);
+        List<String> expected = new ArrayList<>();
+        try (var out = collector(expected)) {
+            for (byte c : data) {
+                out.write(c);
+            }
+        }
+        for (int split = 0; split <= data.length; split++) {
+            List<String> actual = new ArrayList<>();
+            try (var out = collector(actual)) {
+                out.write(data, 0, split);
+                out.write(data, split, data.length - split);
+            }
+            assertThat("split at " + split, actual, is(expected));
+        }
+    }
+
+    private static LineTransformationOutputStream collector(List<String> lines) {
+        return new LineTransformationOutputStream() {
+            @Override protected void eol(byte[] b, int len) {
+                lines.add(new String(b, 0, len, StandardCharsets.US_ASCII));
+            }
+        };
+    }
+
     private void test(String linefeed) throws Exception {
         var count = new AtomicLong();
         long max = 1_000_000; // to see OOME in cr without fix: 1_000_000_000
@@ -0,0 +1,164 @@
+package hudson.console;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import org.mockito.ArgumentCaptor;
+
+public class PlainTextLogTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File log(String content) throws Exception {
+        File f = tmp.newFile();
+        Files.writeString(f.toPath(), content, StandardCharsets.UTF_8);
+        return f;
+    }
+
+    private static String stripped(String content) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (PlainTextConsoleOutputStream plain = new PlainTextConsoleOutputStream(out)) {
+            plain.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private static String transfer(PlainTextLog log, long start, long end) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        log.transferTo(start, end, Channels.newChannel(out));
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void notesRemoved() throws Exception {
+        String content = "Started by " + HyperlinkNote.encodeTo("/user/alice", "alice") + "\n"
+                + "\u001B[8m not a note\n"
+                + HyperlinkNote.encodeTo("/job/x", "x") + HyperlinkNote.encodeTo("/job/y", "y") + " built\n"
+                + "Finished: SUCCESS";
+        String expected = stripped(content);
+        PlainTextLog log = PlainTextLog.scan(log(content));
+        assertNotNull(log);
+        assertEquals(expected.length(), log.length());
+        for (int start = 0; start <= expected.length(); start++) {
+            for (int end = start; end <= expected.length(); end += 7) {
+                assertEquals(start + "-" + end, expected.substring(start, end), transfer(log, start, end));
+            }
+        }
+    }
+
+    @Test
+    public void incompleteNote() throws Exception {
+        assertNull(PlainTextLog.scan(log("a " + ConsoleNote.PREAMBLE_STR + "AAAA\nb")));
+        assertNull(PlainTextLog.scan(log("a " + ConsoleNote.PREAMBLE_STR + "AAAA")));
+        assertNotNull(PlainTextLog.scan(log("a \u001B[8mh")));
+    }
+
+    @Test
+    public void notesSaved() throws Exception {
+        String content = "a " + HyperlinkNote.encodeTo("/job/x", "x") + " b\n";
+        File f = log(content);
+        File notes = PlainTextLog.getNotesFile(f);
+        assertEquals("a x b\n", transfer(PlainTextLog.of(f), 0, 6));
+        assertTrue(notes.isFile());
+        assertEquals("a x b\n", transfer(PlainTextLog.of(f), 0, 6));
+
+        // read back rather than scanned again
+        byte[] saved = Files.readAllBytes(notes.toPath());
+        ByteBuffer.wrap(saved).putInt(20, 0);
+        Files.write(notes.toPath(), Arrays.copyOf(saved, 24));
+        assertEquals(f.length(), PlainTextLog.of(f).length());
+
+        // scanned again once changed
+        Files.writeString(f.toPath(), content + "c " + HyperlinkNote.encodeTo("/job/y", "y") + "\n", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        assertEquals("a x b\nc y\n", transfer(PlainTextLog.of(f), 0, 10));
+    }
+
+    @Test
+    public void incompleteNoteSaved() throws Exception {
+        File f = log("a " + ConsoleNote.PREAMBLE_STR + "AAAA");
+        assertNull(PlainTextLog.of(f));
+        assertTrue(PlainTextLog.getNotesFile(f).isFile());
+        assertNull(PlainTextLog.of(f));
+    }
+
+    @Test
+    public void ranges() throws Exception {
+        String content = "0123456789" + HyperlinkNote.encodeTo("/", "abc") + "\n";
+        PlainTextLog log = PlainTextLog.scan(log(content));
+        assertEquals("", serve(log, null, HttpServletResponse.SC_OK, "0123456789abc\n"));
+        assertEquals("bytes 2-4/14", serve(log, "bytes=2-4", HttpServletResponse.SC_PARTIAL_CONTENT, "234"));
+        assertEquals("bytes 10-13/14", serve(log, "bytes=10-", HttpServletResponse.SC_PARTIAL_CONTENT, "abc\n"));
+        assertEquals("bytes 11-13/14", serve(log, "bytes=-3", HttpServletResponse.SC_PARTIAL_CONTENT, "bc\n"));
+        assertEquals("bytes 12-13/14", serve(log, "bytes=12-100", HttpServletResponse.SC_PARTIAL_CONTENT, "c\n"));
+        assertEquals("", serve(log, "bytes=0-1,4-5", HttpServletResponse.SC_OK, "0123456789abc\n"));
+
+        StaplerRequest req = mock(StaplerRequest.class);
+        StaplerResponse rsp = mock(StaplerResponse.class);
+        when(req.getHeader("Range")).thenReturn("bytes=14-");
+        log.serve(req, rsp);
+        verify(rsp).setHeader("Content-Range", "bytes */14");
+        verify(rsp).sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+    }
+
+    /**
+     * @return the {@code Content-Range}, or empty
+     */
+    private static String serve(PlainTextLog log, String range, int status, String expected) throws Exception {
+        StaplerRequest req = mock(StaplerRequest.class);
+        StaplerResponse rsp = mock(StaplerResponse.class);
+        when(req.getHeader("Range")).thenReturn(range);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        when(rsp.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                body.write(b);
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+        });
+        log.serve(req, rsp);
+        assertEquals(expected, body.toString(StandardCharsets.UTF_8));
+        verify(rsp).setHeader("Content-Length", Integer.toString(expected.length()));
+        if (status == HttpServletResponse.SC_PARTIAL_CONTENT) {
+            verify(rsp).setStatus(status);
+            return expected.isEmpty() ? "" : rangeOf(rsp);
+        }
+        return "";
+    }
+
+    private static String rangeOf(StaplerResponse rsp) {
+        ArgumentCaptor<String> value = ArgumentCaptor.forClass(String.class);
+        verify(rsp).setHeader(eq("Content-Range"), value.capture());
+        return value.getValue();
+    }
+}
@@ -31,12 +31,18 @@ import static org.junit.Assert.assertTrue;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.console.AnnotatedLargeText;
+import hudson.console.LineOffsetIndex;
+import hudson.util.BlockCompressedFile;
 import java.io.File;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.PrintWriter;
+import java.io.Reader;
 import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Set;
@@ -46,6 +52,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import jenkins.model.Jenkins;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.jelly.XMLOutput;
 import org.junit.Rule;
 import org.junit.Test;
@@ -222,6 +229,68 @@ public class RunTest {
         assertEquals("c3", logLines.get(3));
     }
 
+    @SuppressWarnings("deprecation")
+    @Test
+    public void getLogUsingLineOffsetIndex() throws Exception {
+        Job j = Mockito.mock(Job.class);
+        File tempBuildDir = tmp.newFolder();
+        Mockito.when(j.getBuildDir()).thenReturn(tempBuildDir);
+        Run<? extends Job<?, ?>, ? extends Run<?, ?>> r = new Run(j, 0) {};
+        File f = r.getLogFile();
+        f.getParentFile().mkdirs();
+        for (String content : new String[] {"", "\n", "\n\n", "a1\nb2\n\nc3", "a1\r\nb2\r\n", "0\n1\n2\n3\n4\n5\n6\n7\n8\n9\n10", "0\n1\n2\n3\n4\n5\n6\n7\n8\n9\n"}) {
+            Files.writeString(f.toPath(), content, StandardCharsets.UTF_8);
+            for (int maxLines = 1; maxLines <= 12; maxLines++) {
+                LineOffsetIndex.ENABLED = false;
+                List<String> expected = r.getLog(maxLines);
+                LineOffsetIndex.ENABLED = true;
+                LineOffsetIndex.INTERVAL = 2;
+                try {
+                    Files.deleteIfExists(LineOffsetIndex.getIndexFile(f).toPath());
+                    LineOffsetIndex.of(f, true);
+                    assertEquals(content + " " + maxLines, expected, r.getLog(maxLines));
+                } finally {
+                    LineOffsetIndex.ENABLED = false;
+                    LineOffsetIndex.INTERVAL = 1000;
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    @Test
+    public void getLogFromBlockCompressedFile() throws Exception {
+        Job j = Mockito.mock(Job.class);
+        File tempBuildDir = tmp.newFolder();
+        Mockito.when(j.getBuildDir()).thenReturn(tempBuildDir);
+        Run<? extends Job<?, ?>, ? extends Run<?, ?>> r = new Run(j, 0) {};
+        File f = r.getLogFile();
+        f.getParentFile().mkdirs();
+        BlockCompressedFile blocks = new BlockCompressedFile(new File(f.getParentFile(), "log.blocks"));
+        for (String content : new String[] {"", "\n", "a1\nb2\n\nc3", "a1\r\nb2\r\n", "0\n1\n2\n3\n4\n5\n6\n7\n8\n9\n"}) {
+            Files.writeString(f.toPath(), content, StandardCharsets.UTF_8);
+            List<List<String>> expected = new ArrayList<>();
+            for (int maxLines = 1; maxLines <= 12; maxLines++) {
+                expected.add(r.getLog(maxLines));
+            }
+            Files.delete(f.toPath());
+            try (OutputStream out = blocks.write()) {
+                out.write(content.getBytes(StandardCharsets.UTF_8));
+            }
+            for (int maxLines = 1; maxLines <= 12; maxLines++) {
+                assertEquals(content + " " + maxLines, expected.get(maxLines - 1), r.getLog(maxLines));
+            }
+            assertEquals(content, r.getLog());
+            try (InputStream in = r.getLogInputStream()) {
+                assertEquals(content, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+            assertEquals(content.getBytes(StandardCharsets.UTF_8).length, r.getLogText().length());
+            try (Reader reader = r.getLogText().readAll()) {
+                assertEquals(content, IOUtils.toString(reader));
+            }
+        }
+    }
+
     @Test
     public void compareRunsFromSameJobWithDifferentNumbers() throws Exception {
         final Jenkins group = Mockito.mock(Jenkins.class);
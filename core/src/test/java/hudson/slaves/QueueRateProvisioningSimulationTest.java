@@ -0,0 +1,163 @@
+package hudson.slaves;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * Simulates, second by second, a burst of builds arriving while the static executors are busy,
+ * and compares how soon {@link NodeProvisioner.StandardStrategyImpl} and {@link QueueRateProvisioningStrategy}
+ * get them onto cloud executors.
+ */
+public class QueueRateProvisioningSimulationTest {
+
+    private static final int CLOCK = 10;
+    private static final float DECAY = 0.9f;
+    private static final int LAUNCH = 30;
+    private static final int BUILD = 120;
+    private static final int BURST = 200;
+    private static final int BURST_START = 5;
+    private static final int BURST_PER_SECOND = 50;
+    private static final int STATIC_EXECUTORS = 4;
+
+    @Test
+    public void burst() {
+        Result standard = simulate(false);
+        Result queueRate = simulate(true);
+        assertEquals(BURST, standard.started);
+        assertEquals(BURST, queueRate.started);
+        // one review right after the first arrival, then the launch
+        assertThat(queueRate.timeToFirstExecutor, lessThanOrEqualTo(1 + LAUNCH));
+        assertThat(queueRate.timeToFirstExecutor, lessThanOrEqualTo(standard.timeToFirstExecutor));
+        assertThat("queue rate: " + queueRate + ", standard: " + standard, queueRate.meanWait(), lessThan(standard.meanWait()));
+    }
+
+    @Test
+    public void arrivalRate() {
+        long second = TimeUnit.SECONDS.toNanos(1);
+        QueueRateProvisioningStrategy.ArrivalRate rate = new QueueRateProvisioningStrategy.ArrivalRate(0);
+        for (int i = 1; i <= 600; i++) {
+            rate.arrive(i * second / 2);
+        }
+        // steady two arrivals per second
+        assertEquals(2, rate.get(300 * second), 0.1);
+        // nothing for a while
+        assertThat(rate.get(400 * second), lessThan(0.01));
+    }
+
+    static final class Result {
+        int started;
+        long totalWait;
+        int timeToFirstExecutor = -1;
+        int provisioned;
+
+        double meanWait() {
+            return (double) totalWait / started;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d builds, first cloud executor after %ds, %.1fs mean wait, %d executors provisioned",
+                    started, timeToFirstExecutor, meanWait(), provisioned);
+        }
+    }
+
+    private static Result simulate(boolean queueRate) {
+        Result result = new Result();
+        Deque<Integer> queue = new ArrayDeque<>(); // arrival times
+        List<Integer> launches = new ArrayList<>(); // times at which planned executors come online
+        List<Integer> running = new ArrayList<>(); // end times of builds on executors
+        int executors = STATIC_EXECUTORS;
+        // static executors are busy for a while
+        for (int i = 0; i < STATIC_EXECUTORS; i++) {
+            running.add(10 * BUILD);
+        }
+        QueueRateProvisioningStrategy.ArrivalRate rate = new QueueRateProvisioningStrategy.ArrivalRate(0);
+        long second = TimeUnit.SECONDS.toNanos(1);
+        float queueEma = 0;
+        float availableEma = 0;
+        float plannedEma = 0;
+        int arrived = 0;
+        boolean reviewRequested = false;
+
+        for (int t = 0; result.started < BURST; t++) {
+            for (int i = launches.size() - 1; i >= 0; i--) {
+                if (launches.get(i) <= t) {
+                    launches.remove(i);
+                    executors++;
+                    if (result.timeToFirstExecutor < 0) {
+                        result.timeToFirstExecutor = t - BURST_START;
+                    }
+                }
+            }
+            int now = t;
+            running.removeIf(end -> end <= now);
+            while (!queue.isEmpty() && running.size() < executors) {
+                result.totalWait += t - queue.poll();
+                result.started++;
+                running.add(t + BUILD);
+            }
+
+            int available = executors - running.size();
+            int planned = launches.size();
+
+            boolean review = reviewRequested;
+            reviewRequested = false;
+            if (t % CLOCK == 0) {
+                // LoadStatistics and NodeProvisionerInvoker both run every CLOCK
+                queueEma = queueEma * DECAY + queue.size() * (1 - DECAY);
+                availableEma = availableEma * DECAY + available * (1 - DECAY);
+                plannedEma = plannedEma * DECAY + planned * (1 - DECAY);
+                review = true;
+            }
+            if (review && queue.size() > available) {
+                int toProvision;
+                if (queueRate) {
+                    toProvision = QueueRateProvisioningStrategy.excessWorkload(queue.size(), available, 0, planned, rate.get(t * second));
+                } else {
+                    toProvision = standard(queue.size(), queueEma, available, availableEma, planned, plannedEma, executors);
+                }
+                for (int i = 0; i < toProvision; i++) {
+                    launches.add(t + LAUNCH);
+                    result.provisioned++;
+                }
+            }
+
+            for (int i = 0; i < BURST_PER_SECOND && t >= BURST_START && arrived < BURST; i++) {
+                queue.add(t);
+                arrived++;
+                rate.arrive(t * second);
+                // NodeProvisioner.suggestReviewNow runs at most once a second
+                reviewRequested = queueRate;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Mirrors the arithmetic of {@link NodeProvisioner.StandardStrategyImpl#apply} with the default margins.
+     */
+    private static int standard(int queueLength, float queueEma, int available, float availableEma,
+                                int planned, float plannedEma, int total) {
+        if (Math.max(available, availableEma) >= 0.1f) {
+            return 0;
+        }
+        float qlen = Math.min(queueEma, queueLength);
+        float plannedCapacity = Math.max(plannedEma, planned);
+        // nothing is ever connecting here
+        float excessWorkload = qlen - plannedCapacity;
+        float m = (float) (0.1 + (0.5 - 0.1) * Math.pow(0.5, total));
+        if (excessWorkload > 1 - m) {
+            return (int) Math.round(Math.floor(excessWorkload + m));
+        }
+        return 0;
+    }
+}
@@ -21,7 +21,12 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -184,4 +189,36 @@ public class AtomicFileWriterTest {
 
         assertThat(Files.getPosixFilePermissions(filePath), equalTo(DEFAULT_GIVEN_PERMISSIONS));
     }
+
+    @Test
+    public void concurrentCommitsIntoOneDirectory() throws Exception {
+        final File dir = tmp.newFolder();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> commits = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                final int n = i;
+                commits.add(executor.submit(() -> {
+                    AtomicFileWriter w = new AtomicFileWriter(new File(dir, "f" + (n % 20)).toPath(), StandardCharsets.UTF_8);
+                    try {
+                        w.write("content " + (n % 20));
+                        w.commit();
+                    } finally {
+                        w.abort();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> commit : commits) {
+                commit.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        String[] names = dir.list();
+        assertEquals(20, names.length);
+        for (int i = 0; i < 20; i++) {
+            assertEquals("content " + i, Files.readString(new File(dir, "f" + i).toPath(), StandardCharsets.UTF_8));
+        }
+    }
 }
@@ -0,0 +1,93 @@
+package hudson.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BlockCompressedFileTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static byte[] content(int length) {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; b.length() < length; i++) {
+            b.append("line ").append(i).append(" of a console log\n");
+        }
+        return Arrays.copyOf(b.toString().getBytes(StandardCharsets.US_ASCII), length);
+    }
+
+    private static byte[] read(BlockCompressedFile f, long start) throws Exception {
+        try (InputStream in = f.read(start)) {
+            return in.readAllBytes();
+        }
+    }
+
+    @Test
+    public void randomAccess() throws Exception {
+        BlockCompressedFile f = new BlockCompressedFile(tmp.newFile("log.blocks"));
+        byte[] content = content(3 * BlockCompressedFile.BLOCK_SIZE + 1234);
+        try (OutputStream out = f.write()) {
+            out.write(content, 0, 100);
+            for (int i = 100; i < 200; i++) {
+                out.write(content[i]);
+            }
+            out.write(content, 200, content.length - 200);
+        }
+        assertTrue(f.exists());
+        assertEquals(content.length, f.length());
+        assertTrue("compressed", f.getFile().length() < content.length / 5);
+        for (int start : new int[] {0, 1, BlockCompressedFile.BLOCK_SIZE - 1, BlockCompressedFile.BLOCK_SIZE, 2 * BlockCompressedFile.BLOCK_SIZE + 7, content.length - 1, content.length, content.length + 10}) {
+            byte[] expected = start >= content.length ? new byte[0] : Arrays.copyOfRange(content, start, content.length);
+            assertArrayEquals("from " + start, expected, read(f, start));
+        }
+        try (InputStream in = f.read(10)) {
+            assertEquals(BlockCompressedFile.BLOCK_SIZE, in.skip(BlockCompressedFile.BLOCK_SIZE));
+            assertEquals(content[10 + BlockCompressedFile.BLOCK_SIZE], in.read());
+        }
+    }
+
+    @Test
+    public void readWhileWriting() throws Exception {
+        BlockCompressedFile f = new BlockCompressedFile(tmp.newFile("log.blocks"));
+        byte[] content = content(BlockCompressedFile.BLOCK_SIZE + 10);
+        try (OutputStream out = f.write()) {
+            out.write(content);
+            // only the full block is visible so far
+            assertEquals(BlockCompressedFile.BLOCK_SIZE, f.length());
+            assertArrayEquals(Arrays.copyOf(content, BlockCompressedFile.BLOCK_SIZE), read(f, 0));
+            Thread.sleep(BlockCompressedFile.FLUSH_INTERVAL * 3);
+            assertEquals("flushed in the background", content.length, f.length());
+        }
+        assertArrayEquals(content, read(f, 0));
+    }
+
+    @Test
+    public void halfWrittenIndexEntryIgnored() throws Exception {
+        BlockCompressedFile f = new BlockCompressedFile(tmp.newFile("log.blocks"));
+        byte[] content = content(BlockCompressedFile.BLOCK_SIZE + 10);
+        try (OutputStream out = f.write()) {
+            out.write(content);
+        }
+        File index = new File(f.getFile().getPath() + "-index");
+        try (RandomAccessFile raf = new RandomAccessFile(index, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+        assertEquals(BlockCompressedFile.BLOCK_SIZE, f.length());
+        assertArrayEquals(Arrays.copyOf(content, BlockCompressedFile.BLOCK_SIZE), read(f, 0));
+
+        assertTrue(index.delete());
+        assertFalse(f.exists());
+    }
+}
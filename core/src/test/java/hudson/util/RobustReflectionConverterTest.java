@@ -76,6 +76,20 @@ public class RobustReflectionConverterTest {
         return (Point) xs.fromXML("<" + clsName + "><x>1</x><y>2</y><z>3</z></" + clsName + '>');
     }
 
+    @Test
+    public void fieldAliasedAfterUnmarshalling() {
+        XStream2 xs = new XStream2();
+        String clsName = Point.class.getName();
+        String xml = "<" + clsName + "><y>2</y><horizontal>5</horizontal></" + clsName + '>';
+        Point p = (Point) xs.fromXML(xml);
+        assertEquals(0, p.x);
+        assertEquals(2, p.y);
+        xs.aliasField("horizontal", Point.class, "x");
+        p = (Point) xs.fromXML(xml);
+        assertEquals(5, p.x);
+        assertEquals(2, p.y);
+    }
+
     @Test
     public void ifWorkaroundNeeded() {
         XStream xs = new XStream(XStream2.getDefaultDriver());
@@ -421,4 +421,24 @@ public class AbstractLazyLoadRunMapTest {
         assertSame(second, first);
     }
 
+    @Test
+    public void deferScan() throws Exception {
+        AbstractLazyLoadRunMap.DEFER_SCAN = true;
+        try {
+            localBuilder.add(1).add(2);
+            FakeMap m = localBuilder.make();
+            // not scanned yet, so a build added meanwhile is found
+            localBuilder.add(3);
+            assertEquals(3, m.maxNumberOnDisk());
+            assertEquals(3, m.getByNumber(3).n);
+            assertEquals("[3, 2, 1]", m.keySet().toString());
+
+            localBuilder.add(4);
+            m.purgeCache();
+            assertEquals(4, m.newestBuild().n);
+        } finally {
+            AbstractLazyLoadRunMap.DEFER_SCAN = false;
+        }
+    }
+
 }
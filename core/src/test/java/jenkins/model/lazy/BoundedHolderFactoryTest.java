@@ -0,0 +1,114 @@
+package jenkins.model.lazy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class BoundedHolderFactoryTest {
+
+    @After
+    public void reset() {
+        BoundedHolderFactory.MAX_BUILDS = 0;
+        BoundedHolderFactory.MAX_BYTES = 0;
+    }
+
+    @Test
+    public void disabledByDefault() {
+        assertNull(new BoundedHolderFactory().make(new Build(1)));
+    }
+
+    @Test
+    public void leastRecentlyUsedEvicted() {
+        BoundedHolderFactory.MAX_BUILDS = 2;
+        BoundedHolderFactory f = new BoundedHolderFactory();
+        Build b1 = new Build(1);
+        Build b2 = new Build(2);
+        Build b3 = new Build(3);
+        BuildReference.Holder<Build> h1 = f.make(b1);
+        BuildReference.Holder<Build> h2 = f.make(b2);
+        assertSame(b1, h1.get());
+        f.make(b3);
+        assertEquals(2, f.getSize());
+        BoundedHolderFactory.Statistics s = f.getStatistics("");
+        assertEquals(1, s.getEvictions());
+        assertEquals(1, s.getHits());
+
+        // #2 was evicted, but is still in use, so it comes back rather than being loaded again
+        assertSame(b2, h2.get());
+        assertEquals(2, f.getSize());
+        assertEquals(2, s.getEvictions());
+        assertEquals(0, s.getMisses());
+    }
+
+    @Test
+    public void evictedAndCollected() {
+        BoundedHolderFactory.MAX_BYTES = 1;
+        BoundedHolderFactory f = new BoundedHolderFactory();
+        BoundedHolderFactory.CachedHolder<Build> h1 = (BoundedHolderFactory.CachedHolder<Build>) f.make(new Build(1));
+        Build b2 = new Build(2);
+        f.make(b2);
+        assertEquals(1, f.getSize());
+        assertEquals(1, f.getBytes());
+        // as the garbage collector would once nothing else refers to #1
+        h1.weak.clear();
+        assertNull(h1.get());
+        assertEquals(1, f.getStatistics("").getMisses());
+    }
+
+    @Test
+    public void referencedGetsSecondChance() {
+        BoundedHolderFactory.MAX_BUILDS = 2;
+        BoundedHolderFactory f = new BoundedHolderFactory();
+        Build b1 = new Build(1);
+        BuildReference.Holder<Build> h1 = f.make(b1);
+        BoundedHolderFactory.CachedHolder<Build> h2 = (BoundedHolderFactory.CachedHolder<Build>) f.make(new Build(2));
+        assertSame(b1, h1.get());
+        f.make(new Build(3));
+        // #1 was used since it was admitted, so #2 went instead
+        h2.weak.clear();
+        assertNull(h2.get());
+        assertSame(b1, h1.get());
+        assertEquals(2, f.getSize());
+    }
+
+    @Test
+    public void released() {
+        BoundedHolderFactory.MAX_BUILDS = 2;
+        BoundedHolderFactory f = new BoundedHolderFactory();
+        Build b1 = new Build(1);
+        BuildReference.Holder<Build> h1 = f.make(b1);
+        f.make(new Build(2));
+        BoundedHolderFactory.release(h1);
+        assertEquals(1, f.getSize());
+        // still reachable, so it comes back
+        assertSame(b1, h1.get());
+        assertEquals(2, f.getSize());
+
+        f.deleted("");
+        assertEquals(0, f.getSize());
+        assertEquals(0, f.getBytes());
+    }
+
+    @Test
+    public void statisticsFollowJobs() {
+        BoundedHolderFactory.MAX_BUILDS = 2;
+        BoundedHolderFactory f = new BoundedHolderFactory();
+        f.make(new Build(1));
+        BoundedHolderFactory.Statistics s = f.getStatistics("");
+        assertNotNull(s);
+
+        f.moved("", "folder/job");
+        assertNull(f.getStatistics(""));
+        assertSame(s, f.getStatistics("folder/job"));
+
+        f.deleted("folder/jo");
+        assertSame(s, f.getStatistics("folder/job"));
+        f.deleted("folder");
+        assertTrue(f.getStatistics().isEmpty());
+    }
+}
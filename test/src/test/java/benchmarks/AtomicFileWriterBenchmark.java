@@ -0,0 +1,75 @@
+package benchmarks;
+
+import hudson.util.AtomicFileWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Measures saves per second of small files into one directory from several threads, as when many builds save at once,
+ * with each save doing its own directory fsync or sharing it with the others through {@link AtomicFileWriter#GROUP_COMMIT}.
+ * Run it on the local file system of interest, as it mostly measures the fsyncs.
+ */
+@JmhBenchmark
+public class AtomicFileWriterBenchmark {
+    @State(Scope.Benchmark)
+    public static class DirectoryState {
+        @Param({"false", "true"})
+        public boolean groupCommit;
+
+        File dir;
+        final AtomicInteger files = new AtomicInteger();
+
+        @Setup
+        public void setup() throws IOException {
+            AtomicFileWriter.GROUP_COMMIT = groupCommit;
+            dir = Files.createTempDirectory("atomic-file-writer").toFile();
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            AtomicFileWriter.GROUP_COMMIT = true;
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class FileState {
+        File file;
+        int n;
+
+        @Setup
+        public void setup(DirectoryState directory) {
+            file = new File(directory.dir, "build" + directory.files.incrementAndGet() + ".xml");
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Threads(16)
+    public void save(FileState state) throws IOException {
+        AtomicFileWriter w = new AtomicFileWriter(state.file.toPath(), StandardCharsets.UTF_8);
+        try {
+            w.write("<?xml version='1.1' encoding='UTF-8'?>\n<build>\n  <number>" + state.n++ + "</number>\n</build>\n");
+            w.commit();
+        } finally {
+            w.abort();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package benchmarks;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Run;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+import jenkins.model.lazy.BuildSummary;
+import jenkins.model.lazy.BuildSummaryIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures listing what the build time trend page shows for every build of a job with a deep history,
+ * right after a restart, by loading every {@code build.xml} or from the {@link BuildSummaryIndex}.
+ */
+@JmhBenchmark
+public class BuildHistoryBenchmark {
+    public static class JobState extends JmhBenchmarkState {
+        @Param({"20000"})
+        public int builds;
+
+        @Param({"false", "true"})
+        public boolean indexed;
+
+        FreeStyleProject project;
+
+        @Override
+        public void setup() throws Exception {
+            BuildSummaryIndex.ENABLED = indexed;
+            project = getJenkins().createProject(FreeStyleProject.class, "deep");
+            FreeStyleBuild first = project.scheduleBuild2(0).get();
+            // copies are much faster to set up than real builds
+            Path buildXml = new File(first.getRootDir(), "build.xml").toPath();
+            for (int i = 2; i <= builds; i++) {
+                Path dir = project.getBuildDir().toPath().resolve(Integer.toString(i));
+                Files.createDirectories(dir);
+                Files.copy(buildXml, dir.resolve("build.xml"));
+            }
+            project.updateNextBuildNumber(builds + 1);
+            project._getRuns().purgeCache();
+            if (indexed) {
+                project.getBuildSummaries().rebuild();
+            }
+        }
+
+        @Override
+        public void tearDown() {
+            BuildSummaryIndex.ENABLED = false;
+        }
+    }
+
+    @Benchmark
+    public void listBuilds(JobState state, Blackhole blackhole) {
+        // as after a restart
+        state.project._getRuns().purgeCache();
+        BuildSummaryIndex index = state.project.getBuildSummaries();
+        if (index != null) {
+            for (int n : index.getNumbers()) {
+                BuildSummary s = index.get(n);
+                blackhole.consume(s.getDisplayName());
+                blackhole.consume(s.getDuration());
+                blackhole.consume(s.getResult());
+            }
+        } else {
+            for (Run<?, ?> r : state.project.getBuilds()) {
+                blackhole.consume(r.getDisplayName());
+                blackhole.consume(r.getDuration());
+                blackhole.consume(r.getResult());
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package benchmarks;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.ParametersAction;
+import hudson.model.ParametersDefinitionProperty;
+import hudson.model.Run;
+import hudson.model.StringParameterDefinition;
+import hudson.model.StringParameterValue;
+import hudson.util.RobustReflectionConverter;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+import jenkins.model.Jenkins;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures unmarshalling the {@code build.xml} of a {@link FreeStyleBuild}, as when loading build history,
+ * with or without {@link RobustReflectionConverter#PLANS}.
+ */
+@JmhBenchmark
+public class BuildXmlUnmarshalBenchmark {
+    public static class BuildState extends JmhBenchmarkState {
+        @Param({"false", "true"})
+        public boolean plans;
+
+        FreeStyleBuild build;
+        String xml;
+
+        @Override
+        public void setup() throws Exception {
+            RobustReflectionConverter.PLANS = plans;
+            Jenkins j = getJenkins();
+            j.setNumExecutors(1);
+            FreeStyleProject p = j.createProject(FreeStyleProject.class, "p");
+            p.addProperty(new ParametersDefinitionProperty(new StringParameterDefinition("branch", "main")));
+            build = p.scheduleBuild2(0, null, new ParametersAction(new StringParameterValue("branch", "main"))).get();
+            build.setDescription("a representative build");
+            xml = Files.readString(new File(build.getRootDir(), "build.xml").toPath(), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void tearDown() {
+            RobustReflectionConverter.PLANS = true;
+        }
+    }
+
+    @Benchmark
+    public void unmarshal(BuildState state, Blackhole blackhole) {
+        blackhole.consume(Run.XSTREAM.fromXML(state.xml, state.build));
+    }
+}
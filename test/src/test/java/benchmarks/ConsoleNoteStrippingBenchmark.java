@@ -0,0 +1,72 @@
+package benchmarks;
+
+import hudson.console.ConsoleNote;
+import hudson.console.HyperlinkNote;
+import hudson.console.PlainTextConsoleOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures stripping console notes from the log of a chatty build, as when serving it as plain text.
+ * Run with {@code -prof gc} to see the allocation rate.
+ */
+@JmhBenchmark
+public class ConsoleNoteStrippingBenchmark {
+    @State(Scope.Benchmark)
+    public static class LogState {
+        @Param({"100000"})
+        public int lines;
+
+        /**
+         * One line in how many carries a note.
+         */
+        @Param({"10"})
+        public int noteEvery;
+
+        byte[] log;
+        List<String> tail;
+
+        @Setup
+        public void setup() throws IOException {
+            String note = HyperlinkNote.encodeTo("/job/some-job/", "some-job");
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            tail = new ArrayList<>();
+            for (int i = 0; i < lines; i++) {
+                String line = i % noteEvery == 0
+                        ? "[" + i + "] Triggering " + note + " with a parameter\n"
+                        : "[" + i + "] compiling src/main/java/org/example/Module" + i + ".java with some warnings\n";
+                out.write(line.getBytes(StandardCharsets.UTF_8));
+                if (i >= lines - 1000) {
+                    tail.add(line);
+                }
+            }
+            log = out.toByteArray();
+        }
+    }
+
+    @Benchmark
+    public void plainTextConsoleOutputStream(LogState state) throws IOException {
+        try (OutputStream out = new PlainTextConsoleOutputStream(OutputStream.nullOutputStream())) {
+            // as LargeText writes it
+            for (int off = 0; off < state.log.length; off += 8192) {
+                out.write(state.log, off, Math.min(8192, state.log.length - off));
+            }
+        }
+    }
+
+    @Benchmark
+    public void removeNotes(LogState state, Blackhole blackhole) {
+        blackhole.consume(ConsoleNote.removeNotes(state.tail));
+    }
+}
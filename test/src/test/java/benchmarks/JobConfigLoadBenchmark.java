@@ -0,0 +1,71 @@
+package benchmarks;
+
+import hudson.XmlFile;
+import hudson.model.FreeStyleProject;
+import hudson.model.Items;
+import hudson.model.ParametersDefinitionProperty;
+import hudson.model.StringParameterDefinition;
+import hudson.tasks.Shell;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+import jenkins.model.Jenkins;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures reading the {@code config.xml} of every job of a home with many jobs, as during startup,
+ * with or without {@link XmlFile#POOLED_READERS}.
+ */
+@JmhBenchmark
+public class JobConfigLoadBenchmark {
+    public static class HomeState extends JmhBenchmarkState {
+        @Param({"false", "true"})
+        public boolean pooledReaders;
+
+        @Param("10000")
+        public int jobs;
+
+        File[] configs;
+        Path home;
+
+        @Override
+        public void setup() throws Exception {
+            XmlFile.POOLED_READERS = pooledReaders;
+            Jenkins j = getJenkins();
+            FreeStyleProject p = j.createProject(FreeStyleProject.class, "p");
+            p.setDescription("a representative job");
+            p.addProperty(new ParametersDefinitionProperty(new StringParameterDefinition("branch", "main")));
+            p.getBuildersList().add(new Shell("make"));
+            home = Files.createTempDirectory("jobs");
+            configs = new File[jobs];
+            for (int i = 0; i < jobs; i++) {
+                Path dir = Files.createDirectory(home.resolve("job" + i));
+                configs[i] = Files.copy(p.getConfigFile().getFile().toPath(), dir.resolve("config.xml")).toFile();
+            }
+        }
+
+        @Override
+        public void tearDown() {
+            XmlFile.POOLED_READERS = true;
+            FileUtils.deleteQuietly(home.toFile());
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void readAll(HomeState state, Blackhole blackhole) throws Exception {
+        for (File config : state.configs) {
+            blackhole.consume(new XmlFile(Items.XSTREAM, config).read());
+        }
+    }
+}
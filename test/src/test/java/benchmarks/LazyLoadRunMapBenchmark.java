@@ -0,0 +1,74 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+import jenkins.model.lazy.AbstractLazyLoadRunMap;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures loading every build of a job with a deep history one at a time, as when paging through it,
+ * where each load used to copy the index of the builds loaded so far.
+ * Loading is stubbed out so that only the bookkeeping of {@link AbstractLazyLoadRunMap} is measured.
+ */
+@JmhBenchmark
+public class LazyLoadRunMapBenchmark {
+    public static class MapState extends JmhBenchmarkState {
+        @Param({"10000"})
+        public int builds;
+
+        File dir;
+        StubMap map;
+
+        @Override
+        public void setup() throws Exception {
+            dir = Files.createTempDirectory("builds").toFile();
+            for (int i = 1; i <= builds; i++) {
+                Files.createDirectory(new File(dir, Integer.toString(i)).toPath());
+            }
+            map = new StubMap(dir);
+        }
+
+        @Override
+        public void tearDown() {
+            FileUtils.deleteQuietly(dir);
+        }
+    }
+
+    @Benchmark
+    public void loadSequentially(MapState state, Blackhole blackhole) {
+        state.map.purgeCache();
+        for (int i = 1; i <= state.builds; i++) {
+            blackhole.consume(state.map.getByNumber(i));
+        }
+    }
+
+    static final class StubBuild {
+        final int number;
+
+        StubBuild(int number) {
+            this.number = number;
+        }
+    }
+
+    static final class StubMap extends AbstractLazyLoadRunMap<StubBuild> {
+        StubMap(File dir) {
+            initBaseDir(dir);
+        }
+
+        @Override
+        protected int getNumberOf(StubBuild b) {
+            return b.number;
+        }
+
+        @Override
+        protected StubBuild retrieve(File dir) throws IOException {
+            return new StubBuild(Integer.parseInt(dir.getName()));
+        }
+    }
+}
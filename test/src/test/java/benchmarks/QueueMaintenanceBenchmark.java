@@ -0,0 +1,110 @@
+package benchmarks;
+
+import hudson.ExtensionList;
+import hudson.model.Label;
+import hudson.model.Node;
+import hudson.model.Queue;
+import hudson.model.queue.CauseOfBlockage;
+import hudson.model.queue.QueueTaskDispatcher;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+import jenkins.model.Jenkins;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * Measures {@link Queue#maintain(boolean)} when thousands of items wait for a few parked executors which never take them,
+ * with and without {@link Queue#INCREMENTAL_MAINTENANCE}.
+ * An incremental pass should take about the same time regardless of the size of the queue.
+ */
+@JmhBenchmark
+public class QueueMaintenanceBenchmark {
+    public static class QueueState extends JmhBenchmarkState {
+        @Param({"1000", "5000", "10000"})
+        public int queueSize;
+
+        @Param({"false", "true"})
+        public boolean incremental;
+
+        @Override
+        public void setup() throws Exception {
+            Jenkins j = getJenkins();
+            j.setNumExecutors(4);
+            ExtensionList.lookup(QueueTaskDispatcher.class).add(new Refusal());
+            Queue.INCREMENTAL_MAINTENANCE = incremental;
+            Label label = j.getSelfLabel();
+            for (int i = 0; i < queueSize; i++) {
+                j.getQueue().schedule2(new QueuedTask(i, label), 0);
+            }
+            // move everything from the waiting list to the buildables
+            j.getQueue().maintain();
+        }
+
+        @Override
+        public void tearDown() {
+            Queue.INCREMENTAL_MAINTENANCE = false;
+        }
+    }
+
+    @Benchmark
+    public void maintain(QueueState state) {
+        state.getJenkins().getQueue().maintain(!state.incremental);
+    }
+
+    /**
+     * Has every parked executor look at every item it is offered, and turn it down.
+     */
+    private static final class Refusal extends QueueTaskDispatcher {
+        private static final CauseOfBlockage REFUSED = new CauseOfBlockage() {
+            @Override
+            public String getShortDescription() {
+                return "refused";
+            }
+        };
+
+        @Override
+        public CauseOfBlockage canTake(Node node, Queue.BuildableItem item) {
+            return item.task instanceof QueuedTask ? REFUSED : null;
+        }
+    }
+
+    private static final class QueuedTask implements Queue.Task {
+        private final int id;
+        private final Label label;
+
+        QueuedTask(int id, Label label) {
+            this.id = id;
+            this.label = label;
+        }
+
+        @Override
+        public Label getAssignedLabel() {
+            return label;
+        }
+
+        @Override
+        public String getName() {
+            return "task" + id;
+        }
+
+        @Override
+        public String getFullDisplayName() {
+            return getName();
+        }
+
+        @Override
+        public String getDisplayName() {
+            return getName();
+        }
+
+        @Override
+        public String getUrl() {
+            return "task/" + id + "/";
+        }
+
+        @Override
+        public Queue.Executable createExecutable() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package benchmarks;
+
+import hudson.model.FreeStyleProject;
+import hudson.model.ParametersAction;
+import hudson.model.ParametersDefinitionProperty;
+import hudson.model.Queue;
+import hudson.model.StringParameterDefinition;
+import hudson.model.StringParameterValue;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+import jenkins.model.Jenkins;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * Measures persisting a change to a queue of thousands of items,
+ * by rewriting {@code queue.xml} as {@link Queue.Saver} does by default, or by appending to the {@link Queue#JOURNAL}.
+ */
+@JmhBenchmark
+public class QueueSaveBenchmark {
+    public static class QueueState extends JmhBenchmarkState {
+        @Param({"1000", "10000"})
+        public int queueSize;
+
+        @Param({"false", "true"})
+        public boolean journal;
+
+        FreeStyleProject project;
+        int n;
+
+        @Override
+        public void setup() throws Exception {
+            Jenkins j = getJenkins();
+            j.setNumExecutors(0);
+            Queue.JOURNAL = journal;
+            FreeStyleProject[] projects = new FreeStyleProject[100];
+            for (int i = 0; i < projects.length; i++) {
+                projects[i] = j.createProject(FreeStyleProject.class, "p" + i);
+                projects[i].addProperty(new ParametersDefinitionProperty(new StringParameterDefinition("n", "")));
+            }
+            for (int i = 0; i < queueSize; i++) {
+                projects[i % projects.length].scheduleBuild2(0, null, parameters(i));
+            }
+            project = projects[0];
+            n = queueSize;
+            j.getQueue().save();
+        }
+
+        @Override
+        public void tearDown() {
+            Queue.JOURNAL = false;
+        }
+    }
+
+    @Benchmark
+    public void enterAndLeave(QueueState state) {
+        Queue q = state.getJenkins().getQueue();
+        Queue.Item item = q.schedule2(state.project, 0, parameters(state.n++)).getCreateItem();
+        q.cancel(item);
+        if (!state.journal) {
+            q.save();
+        }
+    }
+
+    private static ParametersAction parameters(int i) {
+        return new ParametersAction(new StringParameterValue("n", Integer.toString(i)));
+    }
+}
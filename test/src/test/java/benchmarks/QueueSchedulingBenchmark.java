@@ -0,0 +1,115 @@
+package benchmarks;
+
+import hudson.ExtensionList;
+import hudson.model.Action;
+import hudson.model.Label;
+import hudson.model.Queue;
+import hudson.model.queue.QueueDecisionHandler;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the throughput of scheduling and cancelling unrelated tasks from many threads,
+ * with and without {@link Queue#STRIPED_LOCKING},
+ * when {@link QueueDecisionHandler}s take more or less time to decide.
+ */
+@JmhBenchmark
+public class QueueSchedulingBenchmark {
+    private static final AtomicInteger IDS = new AtomicInteger();
+
+    public static class QueueState extends JmhBenchmarkState {
+        @Param({"false", "true"})
+        public boolean stripedLocking;
+
+        /**
+         * Work done by a {@link QueueDecisionHandler} for each task, in {@link Blackhole#consumeCPU} tokens.
+         */
+        @Param({"0", "10000"})
+        public long decisionCost;
+
+        @Override
+        public void setup() throws Exception {
+            Queue.STRIPED_LOCKING = stripedLocking;
+            ExtensionList.lookup(QueueDecisionHandler.class).add(new CostlyDecisionHandler(decisionCost));
+        }
+
+        @Override
+        public void tearDown() {
+            Queue.STRIPED_LOCKING = false;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class TaskState {
+        final Queue.Task task = new QueuedTask(IDS.incrementAndGet());
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void scheduleAndCancel(QueueState state, TaskState task) {
+        Queue q = state.getJenkins().getQueue();
+        // long quiet period so that nothing leaves the queue on its own
+        q.schedule2(task.task, 3600);
+        q.cancel(task.task);
+    }
+
+    private static final class CostlyDecisionHandler extends QueueDecisionHandler {
+        private final long cost;
+
+        CostlyDecisionHandler(long cost) {
+            this.cost = cost;
+        }
+
+        @Override
+        public boolean shouldSchedule(Queue.Task p, List<Action> actions) {
+            Blackhole.consumeCPU(cost);
+            return true;
+        }
+    }
+
+    private static final class QueuedTask implements Queue.Task {
+        private final int id;
+
+        QueuedTask(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public Label getAssignedLabel() {
+            return null;
+        }
+
+        @Override
+        public String getName() {
+            return "task" + id;
+        }
+
+        @Override
+        public String getFullDisplayName() {
+            return getName();
+        }
+
+        @Override
+        public String getDisplayName() {
+            return getName();
+        }
+
+        @Override
+        public String getUrl() {
+            return "task/" + id + "/";
+        }
+
+        @Override
+        public Queue.Executable createExecutable() {
+            return null;
+        }
+    }
+}
@@ -29,21 +29,28 @@ import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.matchesRegex;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import hudson.MarkupText;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import org.junit.ClassRule;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.jvnet.hudson.test.For;
 import org.jvnet.hudson.test.Issue;
 import org.jvnet.hudson.test.JenkinsRule;
 import org.jvnet.hudson.test.LoggerRule;
+import org.jvnet.hudson.test.TestExtension;
 import org.kohsuke.stapler.framework.io.ByteBuffer;
 
 @For({AnnotatedLargeText.class, ConsoleNote.class, ConsoleAnnotationOutputStream.class, PlainTextConsoleOutputStream.class})
@@ -52,6 +59,9 @@ public class AnnotatedLargeTextTest {
     @ClassRule
     public static JenkinsRule r = new JenkinsRule();
 
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
     @Rule
     public LoggerRule logging = new LoggerRule().record(ConsoleAnnotationOutputStream.class, Level.FINE).record(PlainTextConsoleOutputStream.class, Level.FINE).capture(100);
 
@@ -162,6 +172,99 @@ public class AnnotatedLargeTextTest {
         assertThat(logging.getMessages(), hasItem(matchesRegex("Failed to resurrect annotation from .+")));
     }
 
+    @Test
+    public void decodedNotesCached() throws Exception {
+        DecodedNoteCache.SIZE = 1000;
+        try {
+            decodedNotesCached(DecodedNoteCache.get());
+        } finally {
+            DecodedNoteCache.SIZE = 0;
+        }
+    }
+
+    private void decodedNotesCached(DecodedNoteCache cache) throws Exception {
+        cache.clear();
+        String note = TestNote.encodeTo("/root", "home");
+        ByteBuffer buf = new ByteBuffer();
+        PrintStream ps = new PrintStream(buf, true, StandardCharsets.UTF_8);
+        ps.print("Go " + note + ", " + note + ".\n");
+        ps.print("Or " + TestNote.encodeTo("/elsewhere", "away") + " or " + note + ".\n");
+        AnnotatedLargeText<Void> text = new AnnotatedLargeText<>(buf, StandardCharsets.UTF_8, true, null);
+        long hits = cache.getHits();
+        long misses = cache.getMisses();
+        String html = "Go <a href='/root'>home</a>, <a href='/root'>home</a>.\nOr <a href='/elsewhere'>away</a> or <a href='/root'>home</a>.\n";
+        StringWriter w = new StringWriter();
+        text.writeHtmlTo(0, w);
+        assertEquals(html, w.toString());
+        assertEquals(2, cache.getMisses() - misses);
+        assertEquals(2, cache.getHits() - hits);
+        assertEquals(2, cache.size());
+
+        w = new StringWriter();
+        text.writeHtmlTo(0, w);
+        assertEquals(html, w.toString());
+        assertEquals(2, cache.getMisses() - misses);
+        assertEquals(6, cache.getHits() - hits);
+    }
+
+    @Test
+    public void htmlCachedAcrossRequests() throws Exception {
+        AnnotatedHtmlCache.ENABLED = true;
+        try {
+            File log = tmp.newFile();
+            Files.writeString(log.toPath(), "one\ntwo " + TestNote.encodeTo("/root", "home") + "\nthree\npart", StandardCharsets.UTF_8);
+            Viewer viewer = new Viewer();
+            AnnotatedLargeText<Viewer> text = new AnnotatedLargeText<>(log, StandardCharsets.UTF_8, false, viewer);
+            StringWriter w = new StringWriter();
+            long end = text.writeHtmlTo(0, w);
+            String html = "<b>one\n</b><b>two <a href='/root'>home</a>\n</b><b>three\n</b>";
+            assertEquals(html, w.toString());
+            assertEquals(3, viewer.lines.get());
+
+            w = new StringWriter();
+            assertEquals(end, text.writeHtmlTo(0, w));
+            assertEquals(html, w.toString());
+            assertEquals("served from the cache", 3, viewer.lines.get());
+
+            Files.writeString(log.toPath(), "\nfour\n", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+            text = new AnnotatedLargeText<>(log, StandardCharsets.UTF_8, true, viewer);
+            w = new StringWriter();
+            long newEnd = text.writeHtmlTo(0, w);
+            assertEquals(html + "<b>part\n</b><b>four\n</b>", w.toString());
+            assertEquals("only the new lines annotated", 5, viewer.lines.get());
+
+            w = new StringWriter();
+            assertEquals(newEnd, text.writeHtmlTo(0, w));
+            assertEquals(html + "<b>part\n</b><b>four\n</b>", w.toString());
+            assertEquals(5, viewer.lines.get());
+            assertTrue(AnnotatedHtmlCache.get().size() > 0);
+        } finally {
+            AnnotatedHtmlCache.ENABLED = false;
+            AnnotatedHtmlCache.get().clear();
+        }
+    }
+
+    static class Viewer {
+        final AtomicInteger lines = new AtomicInteger();
+    }
+
+    @TestExtension
+    public static class BoldAnnotatorFactory extends ConsoleAnnotatorFactory<Viewer> {
+        @Override
+        public ConsoleAnnotator<Viewer> newInstance(Viewer context) {
+            return new BoldAnnotator();
+        }
+    }
+
+    static class BoldAnnotator extends ConsoleAnnotator<Viewer> {
+        @Override
+        public ConsoleAnnotator<Viewer> annotate(Viewer context, MarkupText text) {
+            context.lines.incrementAndGet();
+            text.wrapBy("<b>", "</b>");
+            return this;
+        }
+    }
+
     /** Simplified version of {@link HyperlinkNote}. */
     static class TestNote extends ConsoleNote<Void> {
         private final String url;
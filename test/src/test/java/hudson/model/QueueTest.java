@@ -27,6 +27,7 @@ package hudson.model;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.everyItem;
 import static org.hamcrest.Matchers.hasProperty;
@@ -80,6 +81,7 @@ import hudson.triggers.TimerTrigger.TimerTriggerCause;
 import hudson.util.OneShotEvent;
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.io.UncheckedIOException;
 import java.net.HttpURLConnection;
 import java.net.URI;
@@ -93,6 +95,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -224,6 +229,52 @@ public class QueueTest {
         assertEquals(1, QueueIdStrategy.DefaultStrategy.getCurrentCounterValue());
     }
 
+    /**
+     * Can {@link Queue} recover changes made since the last save from its journal, even when a crash tore the last record?
+     */
+    @Test public void journalRecovery() throws Exception {
+        Queue q = r.jenkins.getQueue();
+        Queue.JOURNAL = true;
+        try {
+            // prevent execution to push stuff into the queue
+            r.jenkins.setNumExecutors(0);
+            FreeStyleProject a = r.createFreeStyleProject("a");
+            FreeStyleProject b = r.createFreeStyleProject("b");
+            FreeStyleProject c = r.createFreeStyleProject("c");
+
+            assertNotNull(a.scheduleBuild2(0, new UserIdCause()));
+            q.save();
+            assertNotNull(b.scheduleBuild2(0, new UserIdCause()));
+            assertTrue(q.cancel(a));
+            assertNotNull(c.scheduleBuild2(0, new UserIdCause()));
+            assertEquals(2, q.getItems().length);
+
+            // crash in the middle of writing the last record
+            File journal = q.getJournalFile();
+            try (RandomAccessFile raf = new RandomAccessFile(journal, "rw")) {
+                raf.setLength(raf.length() - 3);
+            }
+            q.load();
+            assertEquals(1, q.getItems().length);
+            assertSame(b, q.getItems()[0].task);
+            long bId = q.getItems()[0].getId();
+
+            // loading compacted the journal into queue.xml, with nothing saved since
+            q.load();
+            assertEquals(1, q.getItems().length);
+            assertSame(b, q.getItems()[0].task);
+            assertEquals(bId, q.getItems()[0].getId());
+
+            // ids of items replayed from the journal are not handed out again
+            assertNotNull(a.scheduleBuild2(0, new UserIdCause()));
+            assertTrue(q.getItem(a).getId() > bId);
+            assertTrue(q.cancel(a));
+            assertTrue(q.cancel(b));
+        } finally {
+            Queue.JOURNAL = false;
+        }
+    }
+
     /**
      * Forces a reset of the private queue COUNTER.
      * Could make changes to Queue to make that easier, but decided against that.
@@ -619,6 +670,113 @@ public class QueueTest {
         r.waitUntilNoActivity();
     }
 
+    @Test public void incrementalMaintenance() throws Exception {
+        Queue.INCREMENTAL_MAINTENANCE = true;
+        try {
+            Queue q = r.jenkins.getQueue();
+            AtomicInteger cnt = new AtomicInteger();
+            TestTask task = new TestTask(cnt, true);
+            AtomicInteger otherCnt = new AtomicInteger();
+            TestTask other = new TestTask(otherCnt, true);
+            // We need to call Queue#maintain without any interleaving maintenance to observe the difference.
+            // Passes submitted meanwhile wait for the lock and then find nothing left to do.
+            Queue.withLock(() -> {
+                q.schedule2(task, 0);
+                q.schedule2(other, 0);
+                q.maintain(false);
+                assertThat(q.getItem(task), instanceOf(BlockedItem.class));
+                task.isBlocked = false;
+                other.isBlocked = false;
+                // nobody reported that change through scheduleMaintenance, so blocked items are left alone
+                q.maintain(false);
+                assertThat(q.getItem(task), instanceOf(BlockedItem.class));
+                // nor does a change to the executors unblock anything
+                q.scheduleMaintenanceForExecutors();
+                q.maintain(false);
+                assertThat(q.getItem(task), instanceOf(BlockedItem.class));
+                // only the items of the task reported are looked at again
+                q.scheduleMaintenance(task);
+                q.maintain(false);
+                assertThat(q.getItem(task), not(instanceOf(BlockedItem.class)));
+                assertThat(q.getItem(other), instanceOf(BlockedItem.class));
+                q.maintain(true);
+                assertThat(q.getItem(other), not(instanceOf(BlockedItem.class)));
+            });
+            r.waitUntilNoActivity();
+            assertEquals(1, cnt.get());
+            assertEquals(1, otherCnt.get());
+        } finally {
+            Queue.INCREMENTAL_MAINTENANCE = false;
+        }
+    }
+
+    @Test public void snapshotVersion() throws Exception {
+        Queue q = r.jenkins.getQueue();
+        AtomicInteger cnt = new AtomicInteger();
+        TestTask task = new TestTask(cnt, true);
+        Queue.withLock(() -> {
+            long initial = q.getSnapshotVersion();
+            q.schedule2(task, 0);
+            long scheduled = q.getSnapshotVersion();
+            assertThat(initial, lessThan(scheduled));
+            assertEquals(1, q.getItems().length);
+            q.maintain();
+            long blocked = q.getSnapshotVersion();
+            assertThat(scheduled, lessThan(blocked));
+            // nothing changed, so nothing needs to be published
+            q.maintain();
+            assertEquals(blocked, q.getSnapshotVersion());
+            assertThat(q.getItem(task), instanceOf(BlockedItem.class));
+        });
+        q.cancel(task);
+        assertEquals(0, q.getItems().length);
+    }
+
+    @Test public void stripedLocking() throws Exception {
+        Queue q = r.jenkins.getQueue();
+        for (boolean striped : new boolean[] {false, true}) {
+            Queue.STRIPED_LOCKING = striped;
+            try {
+                int threads = 64;
+                int tasksPerThread = 50;
+                List<TestTask> tasks = new ArrayList<>();
+                for (int i = 0; i < threads * tasksPerThread; i++) {
+                    tasks.add(new TestTask(new AtomicInteger()));
+                }
+                ExecutorService es = Executors.newFixedThreadPool(threads);
+                try {
+                    CountDownLatch start = new CountDownLatch(1);
+                    List<Future<?>> futures = new ArrayList<>();
+                    for (int t = 0; t < threads; t++) {
+                        List<TestTask> mine = tasks.subList(t * tasksPerThread, (t + 1) * tasksPerThread);
+                        futures.add(es.submit(() -> {
+                            start.await();
+                            for (TestTask task : mine) {
+                                // long quiet period so that nothing leaves the queue on its own
+                                assertTrue(q.schedule2(task, 3600).isCreated());
+                                assertFalse(q.schedule2(task, 3600).isCreated());
+                            }
+                            for (TestTask task : mine) {
+                                assertTrue(q.cancel(task));
+                                assertFalse(q.cancel(task));
+                            }
+                            return null;
+                        }));
+                    }
+                    start.countDown();
+                    for (Future<?> f : futures) {
+                        f.get();
+                    }
+                } finally {
+                    es.shutdownNow();
+                }
+                assertEquals(0, q.getItems().length);
+            } finally {
+                Queue.STRIPED_LOCKING = false;
+            }
+        }
+    }
+
     public static class TestFlyweightTask extends TestTask implements Queue.FlyweightTask {
         Executor exec;
         private final Label assignedLabel;
@@ -802,6 +960,76 @@ public class QueueTest {
         }
     }
 
+    @Test public void labelIndexedOffers() throws Exception {
+        r.jenkins.setNumExecutors(0); // restrict builds to those agents
+        DumbSlave a = r.createSlave(Label.get("a"));
+        DumbSlave b = r.createSlave(Label.get("b"));
+        DumbSlave c = r.createSlave(Label.get("c"));
+
+        FreeStyleProject p = r.createFreeStyleProject();
+        for (Label label : Arrays.asList(Label.get("b"), Label.get("a||c"), Label.get("!b"), a.getSelfLabel(), null)) {
+            p.setAssignedLabel(label);
+            String indexed = builtOn(p, true);
+            assertEquals(String.valueOf(label), indexed, builtOn(p, false));
+            if (label != null) {
+                assertTrue(label + " on " + indexed, label.matches(r.jenkins.getNode(indexed)));
+            }
+        }
+        assertEquals(b.getNodeName(), builtOn(p, true));
+    }
+
+    @Test public void labelIndexedOffersWithStaleLabels() throws Exception {
+        r.jenkins.setNumExecutors(0); // restrict builds to those agents
+        r.createSlave(Label.get("a"));
+        DumbSlave c = r.createSlave(Label.get("c"));
+        Label d = Label.get("d");
+        FreeStyleProject p = r.createFreeStyleProject();
+        p.setAssignedLabel(d);
+        assertThat(d.getNodes(), empty());
+        // without telling Jenkins, so the nodes of the label are not computed again
+        c.setLabelString("c d");
+        assertThat(d.getNodes(), empty());
+
+        Queue q = r.jenkins.getQueue();
+        QueueTaskFuture<FreeStyleBuild> f = p.scheduleBuild2(0);
+        // whether offers are looked up by label or all asked, the item is only taken once Jenkins knows about the new label
+        for (boolean indexed : new boolean[] {true, false, true}) {
+            Queue.LABEL_INDEXED_OFFERS = indexed;
+            try {
+                waitForParkedExecutors();
+                q.maintain();
+                assertFalse(String.valueOf(indexed), f.isDone());
+                assertThat(q.getItem(p), instanceOf(Queue.BuildableItem.class));
+            } finally {
+                Queue.LABEL_INDEXED_OFFERS = true;
+            }
+        }
+        r.jenkins.updateNode(c);
+        assertEquals(c, r.assertBuildStatusSuccess(f).getBuiltOn());
+    }
+
+    private String builtOn(FreeStyleProject p, boolean indexed) throws Exception {
+        Queue.LABEL_INDEXED_OFFERS = indexed;
+        try {
+            // so that every executor gets the same offer either way
+            waitForParkedExecutors();
+            return r.buildAndAssertSuccess(p).getBuiltOnStr();
+        } finally {
+            Queue.LABEL_INDEXED_OFFERS = true;
+        }
+    }
+
+    private void waitForParkedExecutors() throws InterruptedException {
+        r.waitUntilNoActivity();
+        for (Computer comp : r.jenkins.getComputers()) {
+            for (Executor e : comp.getExecutors()) {
+                while (comp.isOnline() && !e.isParking()) {
+                    Thread.sleep(10);
+                }
+            }
+        }
+    }
+
     private static class AliceCannotBuild extends GlobalMatrixAuthorizationStrategy {
         private final String blocked;
 
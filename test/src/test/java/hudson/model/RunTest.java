@@ -26,18 +26,22 @@ package hudson.model;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.startsWith;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import hudson.FilePath;
 import hudson.Launcher;
+import hudson.console.LineOffsetIndex;
 import hudson.tasks.ArtifactArchiver;
 import hudson.tasks.BuildTrigger;
 import hudson.tasks.Builder;
 import hudson.tasks.Fingerprinter;
+import java.io.File;
 import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.nio.charset.StandardCharsets;
@@ -60,6 +64,7 @@ import org.junit.experimental.categories.Category;
 import org.jvnet.hudson.test.Issue;
 import org.jvnet.hudson.test.JenkinsRule;
 import org.jvnet.hudson.test.SmokeTest;
+import org.jvnet.hudson.test.TestBuilder;
 import org.jvnet.hudson.test.TestExtension;
 import org.kohsuke.stapler.DataBoundConstructor;
 
@@ -152,6 +157,70 @@ public class RunTest  {
         ensureXssIsPrevented(up, "Down", "<img");
     }
 
+    @Test public void compressedLogConsoleTail() throws Exception {
+        Run.COMPRESS_LOG = true;
+        try {
+            FreeStyleProject p = j.createFreeStyleProject();
+            p.getBuildersList().add(new TestBuilder() {
+                @Override
+                public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) {
+                    listener.getLogger().println("first line");
+                    for (int i = 0; i < 4000; i++) {
+                        listener.getLogger().println("filler line " + i + " " + "x".repeat(80));
+                    }
+                    listener.getLogger().println("last line");
+                    return true;
+                }
+            });
+            FreeStyleBuild b = j.buildAndAssertSuccess(p);
+            assertTrue(new File(b.getRootDir(), "log.blocks").exists());
+            assertThat(b.getLogText().length(), greaterThan(300 * 1024L));
+
+            String console = j.createWebClient().getPage(b, "console").asNormalizedText();
+            assertThat(console, containsString("Skipping"));
+            assertThat(console, not(containsString("first line")));
+            assertThat(console, containsString("last line"));
+        } finally {
+            Run.COMPRESS_LOG = false;
+        }
+    }
+
+    @Test public void progressiveTextFromLine() throws Exception {
+        LineOffsetIndex.ENABLED = true;
+        LineOffsetIndex.INTERVAL = 4;
+        try {
+            FreeStyleProject p = j.createFreeStyleProject();
+            p.getBuildersList().add(new TestBuilder() {
+                @Override
+                public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) {
+                    for (int i = 0; i < 20; i++) {
+                        listener.getLogger().println("numbered line " + i);
+                    }
+                    return true;
+                }
+            });
+            FreeStyleBuild b = j.buildAndAssertSuccess(p);
+            assertTrue(LineOffsetIndex.getIndexFile(b.getLogFile()).exists());
+            List<String> lines = b.getLog(Integer.MAX_VALUE);
+            int first = lines.indexOf("numbered line 0");
+            assertTrue(first >= 0);
+
+            JenkinsRule.WebClient wc = j.createWebClient();
+            String text = wc.goTo(b.getUrl() + "logText/progressiveText?line=" + (first + 9), "text/plain").getWebResponse().getContentAsString();
+            assertThat(text, startsWith("numbered line 9\n"));
+            assertThat(text, containsString("numbered line 19\n"));
+            String html = wc.goTo(b.getUrl() + "logText/progressiveHtml?line=" + (first + 17), "text/html").getWebResponse().getContentAsString();
+            assertThat(html, startsWith("numbered line 17\n"));
+            assertThat(html, not(containsString("numbered line 16")));
+            String past = wc.goTo(b.getUrl() + "logText/progressiveText?line=100000", "text/plain").getWebResponse().getContentAsString();
+            assertEquals("", past);
+            assertEquals(-1, b.getLogText().getLineOffset(100000));
+        } finally {
+            LineOffsetIndex.ENABLED = false;
+            LineOffsetIndex.INTERVAL = 1000;
+        }
+    }
+
     private void ensureXssIsPrevented(FreeStyleProject upProject, String validationPart, String dangerousPart) throws Exception {
         JenkinsRule.WebClient wc = j.createWebClient();
         HtmlPage htmlPage = wc.goTo(upProject.getUrl());
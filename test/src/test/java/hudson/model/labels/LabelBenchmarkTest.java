@@ -7,6 +7,11 @@ import hudson.slaves.DumbSlave;
 import hudson.slaves.JNLPLauncher;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import jenkins.benchmark.jmh.JmhBenchmark;
 import jenkins.benchmark.jmh.JmhBenchmarkState;
@@ -58,6 +63,43 @@ public class LabelBenchmarkTest {
         }
     }
 
+    /**
+     * Matches thousands of distinct expressions against the label sets of thousands of nodes,
+     * as {@link Label#getNodes()} does for every label after the nodes changed.
+     */
+    @JmhBenchmark
+    public static class ExpressionMatchBenchmark {
+        public static class StateImpl extends JmhBenchmarkState {
+            final List<Label> expressions = new ArrayList<>();
+            final List<Set<LabelAtom>> labelSets = new ArrayList<>();
+
+            @Override
+            public void setup() throws Exception {
+                Random random = new Random(42);
+                for (int i = 0; i < 1000; i++) {
+                    expressions.add(Label.parseExpression(String.format("a%d && (b%d || !c%d)",
+                            random.nextInt(50), random.nextInt(50), random.nextInt(50))));
+                }
+                for (int i = 0; i < 1000; i++) {
+                    Set<LabelAtom> labels = new HashSet<>();
+                    labels.add(new LabelAtom("node" + i));
+                    for (int j = 0; j < 10; j++) {
+                        labels.add(new LabelAtom("abc".charAt(random.nextInt(3)) + Integer.toString(random.nextInt(50))));
+                    }
+                    labelSets.add(labels);
+                }
+            }
+        }
+
+        @Benchmark
+        public void matchAll(StateImpl state, Blackhole blackhole) {
+            for (Label expression : state.expressions) {
+                for (Set<LabelAtom> labels : state.labelSets) {
+                    blackhole.consume(expression.matches(labels));
+                }
+            }
+        }
+    }
 
     @JmhBenchmark
     public static class LabelBenchmark {
@@ -25,8 +25,12 @@
 package hudson.model.labels;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
@@ -41,10 +45,15 @@ import hudson.model.BuildListener;
 import hudson.model.FreeStyleBuild;
 import hudson.model.FreeStyleProject;
 import hudson.model.Label;
+import hudson.model.Node;
 import hudson.slaves.DumbSlave;
 import hudson.slaves.RetentionStrategy;
 import java.lang.reflect.Field;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.Future;
 import org.junit.Rule;
@@ -379,4 +388,103 @@ public class LabelExpressionTest {
 
         assertEquals(result.size(), expected.length);
     }
+
+    @Test
+    public void matchesIsConsistentAcrossLabelSets() {
+        Label l = Label.parseExpression("a && (b || !c) && (d -> e) && (f <-> !a)");
+        String[] names = {"a", "b", "c", "d", "e", "f", "g"};
+        for (int mask = 0; mask < 1 << names.length; mask++) {
+            Set<LabelAtom> labels = new HashSet<>();
+            for (int i = 0; i < names.length; i++) {
+                if ((mask & 1 << i) != 0) {
+                    labels.add(new LabelAtom(names[i]));
+                }
+            }
+            boolean expected = l.matches(name -> labels.contains(new LabelAtom(name)));
+            // twice, as the second time the result is remembered
+            assertEquals(labels.toString(), expected, l.matches(labels));
+            assertEquals(labels.toString(), expected, l.matches(labels));
+        }
+    }
+
+    @Test
+    public void compiledMatchesAgreeWithInterpretation() {
+        Random r = new Random(42);
+        String[] names = {"a", "b", "c", "d", "e"};
+        String[] ops = {"&&", "||", "->", "<->"};
+        for (int n = 0; n < 200; n++) {
+            String expr = names[r.nextInt(names.length)];
+            for (int k = r.nextInt(6); k > 0; k--) {
+                String rhs = (r.nextBoolean() ? "!" : "") + names[r.nextInt(names.length)];
+                expr = (r.nextBoolean() ? "(" + expr + ")" : expr) + " " + ops[r.nextInt(ops.length)] + " " + rhs;
+            }
+            Label l = Label.parseExpression(expr);
+            CompiledLabelExpression c = CompiledLabelExpression.compile(l);
+            assertNotNull(expr, c);
+            for (int mask = 0; mask < 1 << names.length; mask++) {
+                Set<LabelAtom> labels = new HashSet<>();
+                for (int i = 0; i < names.length; i++) {
+                    if ((mask & 1 << i) != 0) {
+                        labels.add(new LabelAtom(names[i]));
+                    }
+                }
+                assertEquals(expr + " " + labels, l.matches(name -> labels.contains(new LabelAtom(name))), c.matches(CompiledLabelExpression.toBits(labels)));
+            }
+        }
+    }
+
+    @Test
+    public void compiledLabelsFindSameNodes() throws Exception {
+        DumbSlave w32 = j.createSlave("win 32bit", null);
+        DumbSlave w64 = j.createSlave("win 64bit", null);
+        DumbSlave l32 = j.createSlave("linux 32bit", null);
+        String[] exprs = {"win", "win && 32bit", "win || linux", "!win", "32bit -> win", "win <-> 64bit", "(linux || win) && !32bit", "nowhere", w32.getNodeName()};
+        Map<String, Set<Node>> expected = new HashMap<>();
+        for (String e : exprs) {
+            expected.put(e, j.jenkins.getLabel(e).getNodes());
+        }
+        CompiledLabelExpression.ENABLED = true;
+        try {
+            // reset the nodes of every label
+            j.jenkins.setNodes(j.jenkins.getNodes());
+            for (String e : exprs) {
+                Label l = j.jenkins.getLabel(e);
+                assertNotNull(e, l.getCompiled());
+                assertEquals(e, expected.get(e), l.getNodes());
+            }
+
+            Label gone = j.jenkins.getLabel("win && 64bit");
+            Label kept = j.jenkins.getLabel("linux && 32bit");
+            w64.setLabelString("linux 64bit");
+            j.jenkins.setNodes(j.jenkins.getNodes());
+            assertEquals(Set.of(w32), j.jenkins.getLabel("win").getNodes());
+            assertEquals(Set.of(l32, w64), j.jenkins.getLabel("linux").getNodes());
+            assertEquals(Set.of(w64), j.jenkins.getLabel("(linux || win) && !32bit").getNodes());
+            // trimmed as no node has it any more
+            assertNotSame(gone, j.jenkins.getLabel("win && 64bit"));
+            assertSame(kept, j.jenkins.getLabel("linux && 32bit"));
+        } finally {
+            CompiledLabelExpression.ENABLED = false;
+        }
+    }
+
+    @Test
+    public void compiledLabelsBeyondMaxAtoms() throws Exception {
+        // not seen by earlier tests in this JVM
+        String atom = "unnumbered" + System.nanoTime();
+        DumbSlave s = j.createSlave(atom, null);
+        int max = CompiledLabelExpression.MAX_ATOMS;
+        CompiledLabelExpression.MAX_ATOMS = 0;
+        CompiledLabelExpression.ENABLED = true;
+        try {
+            j.jenkins.setNodes(j.jenkins.getNodes());
+            Label l = j.jenkins.getLabel(atom + " || " + atom + "-other");
+            assertNull(l.getCompiled());
+            assertEquals(Set.of(s), l.getNodes());
+            assertThat(j.jenkins.getLabel("!" + atom + "-other").getNodes(), hasItem(s));
+        } finally {
+            CompiledLabelExpression.ENABLED = false;
+            CompiledLabelExpression.MAX_ATOMS = max;
+        }
+    }
 }
@@ -0,0 +1,80 @@
+package hudson.model.queue;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertEquals;
+
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.Executor;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Label;
+import hudson.util.OneShotEvent;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestBuilder;
+
+public class HistoricalLoadPredictorTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    @Before
+    public void enable() {
+        HistoricalLoadPredictor.ENABLED = true;
+    }
+
+    @After
+    public void disable() {
+        HistoricalLoadPredictor.ENABLED = false;
+    }
+
+    @Test
+    public void forecastsFromHistory() throws Exception {
+        HistoricalLoadPredictor predictor = HistoricalLoadPredictor.get();
+        FreeStyleProject p = j.createFreeStyleProject();
+        OneShotEvent started = new OneShotEvent();
+        OneShotEvent release = new OneShotEvent();
+        p.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws InterruptedException {
+                started.signal();
+                release.block();
+                return true;
+            }
+        });
+        QueueTaskFuture<FreeStyleBuild> f = p.scheduleBuild2(0);
+        started.block();
+        Executor e = f.getStartCondition().get().getExecutor();
+        String node = e.getOwner().getName();
+        // neither history on the node nor an estimated duration to fall back to
+        assertEquals(-1, predictor.getEstimatedRemainingTimeMillis(e));
+        assertEquals(0, predictor.countFreeWithin(null, Long.MAX_VALUE));
+
+        predictor.record(p.getFullName(), node, TimeUnit.MINUTES.toMillis(10));
+        predictor.record(p.getFullName(), node, TimeUnit.MINUTES.toMillis(20));
+        predictor.record(p.getFullName(), "elsewhere", TimeUnit.HOURS.toMillis(5));
+        // 10 + 0.3 * (20 - 10) minutes, less the time the build has been running, which is far less than a minute
+        long thirteenMinutes = TimeUnit.MINUTES.toMillis(13);
+        assertThat(predictor.getEstimatedRemainingTimeMillis(e), allOf(greaterThan(TimeUnit.MINUTES.toMillis(12)), lessThanOrEqualTo(thirteenMinutes)));
+        assertEquals(1, predictor.countFreeWithin(null, thirteenMinutes));
+        assertEquals(0, predictor.countFreeWithin(null, TimeUnit.MINUTES.toMillis(12)));
+        assertEquals(1, predictor.countFreeWithin(j.jenkins.getSelfLabel(), thirteenMinutes));
+        assertEquals(0, predictor.countFreeWithin(Label.get("elsewhere"), thirteenMinutes));
+
+        release.signal();
+        j.assertBuildStatusSuccess(f);
+        // the first build had no estimated duration to compare with
+        assertEquals(0, predictor.getForecastCount());
+        j.buildAndAssertSuccess(p);
+        assertEquals(1, predictor.getForecastCount());
+    }
+}
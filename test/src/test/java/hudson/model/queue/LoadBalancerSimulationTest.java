@@ -0,0 +1,362 @@
+package hudson.model.queue;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assume.assumeNotNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import hudson.FilePath;
+import hudson.model.Computer;
+import hudson.model.Executor;
+import hudson.model.FreeStyleProject;
+import hudson.model.LoadBalancer;
+import hudson.model.LoadStatistics;
+import hudson.model.Node;
+import hudson.model.Queue;
+import hudson.model.Queue.BuildableItem;
+import hudson.model.Queue.WaitingItem;
+import hudson.model.TopLevelItem;
+import hudson.security.ACL;
+import hudson.slaves.WorkspaceList;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+import java.util.logging.Logger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+/**
+ * Replays a queue trace through {@link LoadBalancer#CONSISTENT_HASH} and {@link LocalityLoadBalancer}
+ * onto simulated nodes, to compare how long builds wait in the queue and how often they find a warm workspace.
+ *
+ * <p>
+ * A trace is a list of {@code time,job,duration} lines, times in seconds.
+ * Builds which do not get the workspace left by an earlier build of the same job on that node,
+ * because there is none or because {@link WorkspaceList} hands out another one while it is in use,
+ * take {@link #COLD_PENALTY} times longer.
+ * Set {@code hudson.model.queue.LoadBalancerSimulationTest.trace} to a trace file to compare the balancers on a recorded workload.
+ */
+public class LoadBalancerSimulationTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    static final double COLD_PENALTY = 2;
+
+    private static final Logger LOGGER = Logger.getLogger(LoadBalancerSimulationTest.class.getName());
+
+    @Test
+    public void parseTrace() throws IOException {
+        List<Arrival> trace = Arrival.parse(new StringReader("# time,job,duration\n0,a,10\n\n5,b,2.5\n"));
+        assertEquals(2, trace.size());
+        assertEquals("b", trace.get(1).job);
+        assertEquals(2.5, trace.get(1).duration, 0);
+    }
+
+    @Test
+    public void localityKeepsWorkspacesWarm() throws Exception {
+        List<Arrival> trace = Arrival.generate(new Random(1), 1000, 20, 30);
+        Result hash = simulate(trace, LoadBalancer.CONSISTENT_HASH, 6, 4);
+        Result locality = simulate(trace, new LocalityLoadBalancer(), 6, 4);
+        assertEquals(trace.size(), hash.builds);
+        assertEquals(trace.size(), locality.builds);
+        assertThat(locality.hitRate(), greaterThan(hash.hitRate()));
+        assertThat(locality.averageWait(), lessThanOrEqualTo(hash.averageWait()));
+    }
+
+    @Test
+    public void replayTrace() throws Exception {
+        String file = System.getProperty(LoadBalancerSimulationTest.class.getName() + ".trace");
+        assumeNotNull(file);
+        List<Arrival> trace;
+        try (Reader r = Files.newBufferedReader(Paths.get(file))) {
+            trace = Arrival.parse(r);
+        }
+        int nodes = Integer.getInteger(LoadBalancerSimulationTest.class.getName() + ".nodes", 8);
+        int executors = Integer.getInteger(LoadBalancerSimulationTest.class.getName() + ".executors", 4);
+        Result hash = simulate(trace, LoadBalancer.CONSISTENT_HASH, nodes, executors);
+        Result locality = simulate(trace, new LocalityLoadBalancer(), nodes, executors);
+        LOGGER.info(() -> "consistent hash: " + hash + "; locality: " + locality);
+        assertEquals(trace.size(), hash.builds);
+        assertEquals(trace.size(), locality.builds);
+    }
+
+    @Test
+    public void workspaceInUseIsNotWarm() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject("p");
+        SimNode a = new SimNode("a", 2);
+        SimNode b = new SimNode("b", 2);
+        for (int i = 0; i < 50; i++) {
+            // b has been busier, so is preferred when neither is warm
+            b.stats.busyExecutors.update(1);
+        }
+        LocalityLoadBalancer balancer = new LocalityLoadBalancer();
+        assertEquals("a", map(balancer, p, List.of(a)).assigned(0).getName());
+        assertEquals("a", map(balancer, p, List.of(a, b)).assigned(0).getName());
+
+        try (WorkspaceList.Lease lease = a.workspaces.acquire(a.node.getWorkspaceFor(p))) {
+            assertNotNull(lease);
+            assertEquals("b", map(balancer, p, List.of(a, b)).assigned(0).getName());
+        }
+        assertEquals("a", map(balancer, p, List.of(a, b)).assigned(0).getName());
+    }
+
+    private static MappingWorksheet.Mapping map(LoadBalancer balancer, Queue.Task task, List<SimNode> nodes) {
+        List<MappingWorksheet.ExecutorSlot> offers = new ArrayList<>();
+        for (SimNode n : nodes) {
+            offers.addAll(n.freeSlots());
+        }
+        MappingWorksheet ws = new MappingWorksheet(new BuildableItem(new WaitingItem(new GregorianCalendar(), task, new ArrayList<>())),
+                offers, Collections.emptyList());
+        return balancer.map(task, ws);
+    }
+
+    static final class Arrival {
+        final double time;
+        final String job;
+        final double duration;
+
+        Arrival(double time, String job, double duration) {
+            this.time = time;
+            this.job = job;
+            this.duration = duration;
+        }
+
+        static List<Arrival> parse(Reader r) throws IOException {
+            List<Arrival> trace = new ArrayList<>();
+            BufferedReader br = new BufferedReader(r);
+            String line;
+            while ((line = br.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                trace.add(new Arrival(Double.parseDouble(fields[0]), fields[1], Double.parseDouble(fields[2])));
+            }
+            trace.sort(Comparator.comparingDouble(a -> a.time));
+            return trace;
+        }
+
+        /**
+         * A few jobs built very often and many built rarely, arriving at random.
+         */
+        static List<Arrival> generate(Random r, int builds, int jobs, double meanDuration) {
+            List<Arrival> trace = new ArrayList<>(builds);
+            double time = 0;
+            for (int i = 0; i < builds; i++) {
+                time += r.nextDouble() * meanDuration / 8;
+                int job = (int) (jobs * Math.pow(r.nextDouble(), 2));
+                trace.add(new Arrival(time, "job" + job, meanDuration * (0.5 + r.nextDouble())));
+            }
+            return trace;
+        }
+    }
+
+    /**
+     * A node whose executors are offered to the balancers, with its own {@link WorkspaceList} and load statistics.
+     */
+    static final class SimNode {
+        final String name;
+        final Node node = mock(Node.class);
+        final Computer computer = mock(Computer.class);
+        final WorkspaceList workspaces = new WorkspaceList();
+        final LoadStatistics stats = new LoadStatistics(0, 0) {
+            @Override
+            public int computeIdleExecutors() {
+                return 0;
+            }
+
+            @Override
+            public int computeTotalExecutors() {
+                return 0;
+            }
+
+            @Override
+            public int computeQueueLength() {
+                return 0;
+            }
+
+            @Override
+            protected Iterable<Node> getNodes() {
+                return Collections.emptyList();
+            }
+
+            @Override
+            protected boolean matches(Queue.Item item, SubTask subTask) {
+                return false;
+            }
+        };
+        final List<Slot> slots = new ArrayList<>();
+        /**
+         * Jobs which have left a workspace here.
+         */
+        final Set<String> built = new HashSet<>();
+        int busy;
+
+        SimNode(String name, int executors) {
+            this.name = name;
+            when(node.getNodeName()).thenReturn(name);
+            when(node.getACL()).thenReturn(ACL.lambda2((a, p) -> true));
+            when(node.getWorkspaceFor(any(TopLevelItem.class)))
+                    .thenAnswer(invocation -> new FilePath(new File(name, invocation.<TopLevelItem>getArgument(0).getName())));
+            when(computer.getNode()).thenReturn(node);
+            when(computer.countExecutors()).thenReturn(executors);
+            when(computer.getWorkspaceList()).thenReturn(workspaces);
+            when(computer.getLoadStatistics()).thenReturn(stats);
+            for (int i = 0; i < executors; i++) {
+                Executor e = mock(Executor.class);
+                when(e.getOwner()).thenReturn(computer);
+                slots.add(new Slot(e));
+            }
+        }
+
+        List<Slot> freeSlots() {
+            return slots.subList(busy, slots.size());
+        }
+
+        void setBusy(int busy) {
+            this.busy = busy;
+            stats.busyExecutors.update(busy);
+        }
+    }
+
+    static final class Slot extends MappingWorksheet.ExecutorSlot {
+        private final Executor executor;
+
+        Slot(Executor executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public Executor getExecutor() {
+            return executor;
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+
+        @Override
+        protected void set(WorkUnit p) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    static final class Result {
+        int builds;
+        int hits;
+        double totalWait;
+
+        double hitRate() {
+            return (double) hits / builds;
+        }
+
+        double averageWait() {
+            return totalWait / builds;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d builds, %.1f%% warm, %.2fs average wait", builds, 100 * hitRate(), averageWait());
+        }
+    }
+
+    private static final class Completion {
+        final double time;
+        final SimNode node;
+        final WorkspaceList.Lease lease;
+
+        Completion(double time, SimNode node, WorkspaceList.Lease lease) {
+            this.time = time;
+            this.node = node;
+            this.lease = lease;
+        }
+    }
+
+    private Result simulate(List<Arrival> trace, LoadBalancer balancer, int nodeCount, int executors) throws Exception {
+        List<SimNode> nodes = new ArrayList<>();
+        Map<String, SimNode> byName = new HashMap<>();
+        for (int i = 0; i < nodeCount; i++) {
+            SimNode n = new SimNode("node" + i, executors);
+            nodes.add(n);
+            byName.put(n.name, n);
+        }
+        Map<String, FreeStyleProject> projects = new HashMap<>();
+        for (Arrival a : trace) {
+            if (!projects.containsKey(a.job)) {
+                FreeStyleProject p = j.jenkins.getItemByFullName(a.job, FreeStyleProject.class);
+                projects.put(a.job, p != null ? p : j.createFreeStyleProject(a.job));
+            }
+        }
+        int free = nodeCount * executors;
+        PriorityQueue<Completion> running = new PriorityQueue<>(Comparator.comparingDouble(c -> c.time));
+        Deque<Arrival> waiting = new ArrayDeque<>();
+        Result result = new Result();
+        int next = 0;
+        while (next < trace.size() || !waiting.isEmpty() || !running.isEmpty()) {
+            double now;
+            if (next < trace.size() && (running.isEmpty() || trace.get(next).time <= running.peek().time)) {
+                Arrival a = trace.get(next++);
+                now = a.time;
+                waiting.add(a);
+            } else {
+                Completion c = running.poll();
+                now = c.time;
+                c.node.setBusy(c.node.busy - 1);
+                c.lease.release();
+                free++;
+            }
+            // like Queue.maintain, try everything that is waiting in order
+            for (Iterator<Arrival> it = waiting.iterator(); it.hasNext() && free > 0;) {
+                Arrival a = it.next();
+                FreeStyleProject p = projects.get(a.job);
+                MappingWorksheet.Mapping m = map(balancer, p, nodes);
+                if (m == null) {
+                    continue;
+                }
+                it.remove();
+                SimNode n = byName.get(m.assigned(0).getName());
+                FilePath workspace = n.node.getWorkspaceFor(p);
+                WorkspaceList.Lease lease = n.workspaces.allocate(workspace);
+                boolean own = lease.path.equals(workspace);
+                boolean warm = own && n.built.contains(a.job);
+                if (own) {
+                    n.built.add(a.job);
+                }
+                n.setBusy(n.busy + 1);
+                free--;
+                result.builds++;
+                result.hits += warm ? 1 : 0;
+                result.totalWait += now - a.time;
+                running.add(new Completion(now + (warm ? a.duration : a.duration * COLD_PENALTY), n, lease));
+            }
+        }
+        return result;
+    }
+}
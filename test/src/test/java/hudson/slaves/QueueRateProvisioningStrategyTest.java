@@ -0,0 +1,112 @@
+package hudson.slaves;
+
+import static org.junit.Assert.assertEquals;
+
+import hudson.model.LoadStatistics;
+import hudson.model.Node;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+public class QueueRateProvisioningStrategyTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    private NodeProvisioner provisioner;
+    private int available;
+
+    @Before
+    public void setUp() {
+        QueueRateProvisioningStrategy.ENABLED = true;
+        provisioner = new NodeProvisioner(null, j.jenkins.unlabeledLoad);
+        available = snapshot(0).getAvailableExecutors();
+    }
+
+    @After
+    public void tearDown() {
+        QueueRateProvisioningStrategy.ENABLED = false;
+    }
+
+    private LoadStatistics.LoadStatisticsSnapshot snapshot(int queueLength) {
+        return LoadStatistics.LoadStatisticsSnapshot.builder().with(j.jenkins.toComputer()).withQueueLength(queueLength).build();
+    }
+
+    private NodeProvisioner.StrategyState state(int queueLength, int planned) {
+        return provisioner.new StrategyState(snapshot(queueLength), null, planned);
+    }
+
+    @Test
+    public void provisionsForQueueBeyondCapacity() {
+        TestCloud cloud = new TestCloud("cloud", Integer.MAX_VALUE);
+        j.jenkins.clouds.add(cloud);
+        NodeProvisioner.StrategyState state = state(available + 4, 1);
+        assertEquals(NodeProvisioner.StrategyDecision.PROVISIONING_COMPLETED, new QueueRateProvisioningStrategy().apply(state));
+        assertEquals(3, cloud.provisioned);
+        assertEquals(3, state.getAdditionalPlannedCapacity());
+    }
+
+    @Test
+    public void nothingToProvision() {
+        TestCloud cloud = new TestCloud("cloud", Integer.MAX_VALUE);
+        j.jenkins.clouds.add(cloud);
+        assertEquals(NodeProvisioner.StrategyDecision.PROVISIONING_COMPLETED, new QueueRateProvisioningStrategy().apply(state(available + 2, 2)));
+        assertEquals(0, cloud.provisioned);
+    }
+
+    @Test
+    public void remainderFromNextCloudThenStandardStrategy() {
+        TestCloud first = new TestCloud("first", 2);
+        TestCloud second = new TestCloud("second", 1);
+        j.jenkins.clouds.add(first);
+        j.jenkins.clouds.add(second);
+        NodeProvisioner.StrategyState state = state(available + 5, 0);
+        assertEquals(NodeProvisioner.StrategyDecision.CONSULT_REMAINING_STRATEGIES, new QueueRateProvisioningStrategy().apply(state));
+        assertEquals(2, first.provisioned);
+        assertEquals(1, second.provisioned);
+        assertEquals(3, state.getAdditionalPlannedCapacity());
+    }
+
+    @Test
+    public void disabled() {
+        QueueRateProvisioningStrategy.ENABLED = false;
+        TestCloud cloud = new TestCloud("cloud", Integer.MAX_VALUE);
+        j.jenkins.clouds.add(cloud);
+        assertEquals(NodeProvisioner.StrategyDecision.CONSULT_REMAINING_STRATEGIES, new QueueRateProvisioningStrategy().apply(state(available + 4, 0)));
+        assertEquals(0, cloud.provisioned);
+    }
+
+    /**
+     * Plans up to a number of single executor nodes, which never come online.
+     */
+    private static final class TestCloud extends Cloud {
+        private final int max;
+        int provisioned;
+
+        TestCloud(String name, int max) {
+            super(name);
+            this.max = max;
+        }
+
+        @Override
+        public boolean canProvision(CloudState state) {
+            return true;
+        }
+
+        @Override
+        public Collection<NodeProvisioner.PlannedNode> provision(CloudState state, int excessWorkload) {
+            List<NodeProvisioner.PlannedNode> r = new ArrayList<>();
+            while (excessWorkload-- > 0 && provisioned < max) {
+                provisioned++;
+                r.add(new NodeProvisioner.PlannedNode(name + " #" + provisioned, new CompletableFuture<Node>(), 1));
+            }
+            return r;
+        }
+    }
+}
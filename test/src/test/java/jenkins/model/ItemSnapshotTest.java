@@ -0,0 +1,62 @@
+package jenkins.model;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import hudson.model.FreeStyleProject;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+public class ItemSnapshotTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    @Before
+    public void setUp() {
+        ItemSnapshot.ENABLED = true;
+    }
+
+    @After
+    public void tearDown() {
+        ItemSnapshot.ENABLED = false;
+    }
+
+    private static Path age(FreeStyleProject p) throws Exception {
+        Path config = p.getConfigFile().getFile().toPath();
+        Files.setLastModifiedTime(config, FileTime.from(Instant.now().minus(1, ChronoUnit.HOURS)));
+        return config;
+    }
+
+    @Test
+    public void restoredUnlessChanged() throws Exception {
+        FreeStyleProject a = j.createFreeStyleProject("a");
+        a.setDescription("from a");
+        age(a);
+        FreeStyleProject b = j.createFreeStyleProject("b");
+        b.setDescription("from b");
+        Path config = age(b);
+        ItemSnapshot.write(j.jenkins);
+
+        j.jenkins.reload();
+        assertThat(ItemSnapshot.getRestored(), is(2));
+        assertThat(j.jenkins.getItemByFullName("a", FreeStyleProject.class).getDescription(), is("from a"));
+        assertThat(j.jenkins.getItemByFullName("b", FreeStyleProject.class).getDescription(), is("from b"));
+
+        String xml = Files.readString(config, StandardCharsets.UTF_8);
+        Files.writeString(config, xml.replace("from b", "changed on disk"), StandardCharsets.UTF_8);
+        j.jenkins.reload();
+        assertThat(ItemSnapshot.getRestored(), is(1));
+        assertThat(j.jenkins.getItemByFullName("a", FreeStyleProject.class).getDescription(), is("from a"));
+        assertThat(j.jenkins.getItemByFullName("b", FreeStyleProject.class).getDescription(), is("changed on disk"));
+    }
+}
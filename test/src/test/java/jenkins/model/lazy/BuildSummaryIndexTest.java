@@ -0,0 +1,101 @@
+package jenkins.model.lazy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Result;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.FailureBuilder;
+import org.jvnet.hudson.test.JenkinsRule;
+
+public class BuildSummaryIndexTest {
+
+    @Rule
+    public JenkinsRule r = new JenkinsRule();
+
+    @Before
+    public void enable() {
+        BuildSummaryIndex.ENABLED = true;
+    }
+
+    @After
+    public void disable() {
+        BuildSummaryIndex.ENABLED = false;
+    }
+
+    @Test
+    public void summariesWithoutLoading() throws Exception {
+        FreeStyleProject p = r.createFreeStyleProject();
+        p.getBuildersList().add(new FailureBuilder());
+        r.buildAndAssertStatus(Result.FAILURE, p);
+        p.getBuildersList().clear();
+        FreeStyleBuild b2 = r.buildAndAssertSuccess(p);
+        b2.setDisplayName("second");
+        p.getBuildersList().add(new FailureBuilder());
+        FreeStyleBuild b3 = r.buildAndAssertStatus(Result.FAILURE, p);
+        p.getBuildersList().clear();
+        FreeStyleBuild b4 = r.buildAndAssertSuccess(p);
+
+        p._getRuns().purgeCache();
+        BuildSummaryIndex index = p.getBuildSummaries();
+        assertNotNull(index);
+        assertEquals(List.of(4, 3, 2, 1), index.getNumbers());
+        assertEquals("second", index.get(2).getDisplayName());
+        assertEquals(Result.FAILURE, index.get(3).getResult());
+        assertEquals(b3.getDuration(), index.get(3).getDuration());
+        assertEquals(b3.getQueueId(), index.get(3).getQueueId());
+        assertEquals(b4.getTimeInMillis(), index.get(4).getTimestamp());
+        assertEquals("#4", index.get(4).getDisplayName());
+        assertEquals("", index.get(4).getBuiltOn());
+        assertTrue(p._getRuns().getLoadedBuilds().isEmpty());
+
+        // looking for the previous failed build skips #2 without loading it
+        p.getBuildByNumber(3).delete();
+        assertEquals(List.of(4, 2, 1), index.getNumbers());
+        assertNull(index.get(3));
+        assertEquals(1, p.getLastFailedBuild().getNumber());
+        assertFalse(p._getRuns().getLoadedBuilds().containsKey(2));
+
+        p._getRuns().purgeCache();
+        assertNull(index.get(3));
+        assertEquals("second", index.get(2).getDisplayName());
+    }
+
+    @Test
+    public void recoverFromTornRecordAndRebuild() throws Exception {
+        FreeStyleProject p = r.createFreeStyleProject();
+        r.buildAndAssertSuccess(p);
+        r.buildAndAssertSuccess(p);
+
+        File file = new File(p.getBuildDir(), BuildSummaryIndex.FILE_NAME);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+        p._getRuns().purgeCache();
+        BuildSummaryIndex index = p.getBuildSummaries();
+        assertNotNull(index.get(1));
+        assertNull(index.get(2));
+        // loading the build fills in the index
+        assertNotNull(p.getBuildByNumber(2));
+        assertNotNull(index.get(2));
+
+        assertTrue(file.delete());
+        p._getRuns().purgeCache();
+        assertNull(index.get(1));
+        index.rebuild();
+        p._getRuns().purgeCache();
+        assertNotNull(index.get(1));
+        assertNotNull(index.get(2));
+    }
+}
@@ -0,0 +1,143 @@
+package jenkins.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import hudson.BulkChange;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.htmlunit.HttpMethod;
+import org.htmlunit.Page;
+import org.htmlunit.WebRequest;
+import org.htmlunit.util.NameValuePair;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+public class SaveSchedulerTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    private FreeStyleProject p;
+
+    @Before
+    public void setUp() throws Exception {
+        p = j.createFreeStyleProject("p");
+        SaveScheduler.ENABLED = true;
+        // only written by flush() unless a test says otherwise
+        SaveScheduler.DELAY = TimeUnit.HOURS.toMillis(1);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        SaveScheduler.ENABLED = false;
+        SaveScheduler.DELAY = 1000;
+        SaveScheduler.flush();
+    }
+
+    private String config() throws Exception {
+        return Files.readString(p.getConfigFile().getFile().toPath(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void flushWritesPendingSaves() throws Exception {
+        p.setDescription("first");
+        p.setDescription("second");
+        assertTrue(SaveScheduler.isPending(p));
+        assertThat(config(), not(containsString("second")));
+        SaveScheduler.flush();
+        assertFalse(SaveScheduler.isPending(p));
+        assertThat(config(), containsString("<description>second</description>"));
+    }
+
+    @Test
+    public void writtenInTheBackground() throws Exception {
+        SaveScheduler.DELAY = 10;
+        p.setDescription("later");
+        while (!config().contains("later")) {
+            Thread.sleep(10);
+        }
+        assertFalse(SaveScheduler.isPending(p));
+    }
+
+    @Test
+    public void bulkChange() throws Exception {
+        try (BulkChange bc = new BulkChange(p)) {
+            p.setDescription("bulk");
+            assertFalse(SaveScheduler.isPending(p));
+            bc.commit();
+        }
+        assertTrue(SaveScheduler.isPending(p));
+        SaveScheduler.flush();
+        assertThat(config(), containsString("bulk"));
+    }
+
+    @Test
+    public void notWrittenBackAfterDeletion() throws Exception {
+        SaveScheduler.ENABLED = false;
+        FreeStyleBuild b = j.buildAndAssertSuccess(p);
+        SaveScheduler.ENABLED = true;
+        b.setDescription("gone soon");
+        assertTrue(SaveScheduler.isPending(b));
+        File dir = p.getRootDir();
+        p.delete();
+        assertFalse(SaveScheduler.isPending(b));
+        SaveScheduler.flush();
+        assertFalse(dir.exists());
+    }
+
+    @Test
+    public void deletionOnlyCancelsWhatIsDeleted() throws Exception {
+        SaveScheduler.ENABLED = false;
+        FreeStyleBuild b = j.buildAndAssertSuccess(p);
+        SaveScheduler.ENABLED = true;
+        FreeStyleProject other = j.createFreeStyleProject("other");
+        other.setDescription("still pending");
+        b.setDescription("gone soon");
+        b.delete();
+        assertFalse(SaveScheduler.isPending(b));
+        assertTrue(SaveScheduler.isPending(other));
+        p.delete();
+        assertTrue(SaveScheduler.isPending(other));
+    }
+
+    @Test
+    public void configDotXmlAfterPost() throws Exception {
+        JenkinsRule.WebClient wc = j.createWebClient();
+        WebRequest req = new WebRequest(wc.createCrumbedUrl(p.getUrl() + "submitDescription"), HttpMethod.POST);
+        req.setRequestParameters(List.of(new NameValuePair("description", "posted")));
+        wc.getPage(req);
+        assertTrue(SaveScheduler.isPending(p));
+        Page page = wc.goTo(p.getUrl() + "config.xml", "application/xml");
+        assertThat(page.getWebResponse().getContentAsString(), containsString("<description>posted</description>"));
+        assertFalse(SaveScheduler.isPending(p));
+    }
+
+    @Test
+    public void copyRightAfterCreate() throws Exception {
+        FreeStyleProject src = j.createFreeStyleProject("src");
+        src.setDescription("copied");
+        assertTrue(SaveScheduler.isPending(src));
+        FreeStyleProject copy = j.jenkins.copy(src, "copy");
+        assertThat(copy.getDescription(), is("copied"));
+    }
+
+    @Test
+    public void reloadSeesPendingChanges() throws Exception {
+        p.setDescription("kept");
+        p.doReload();
+        assertThat(p.getDescription(), is("kept"));
+    }
+}
@@ -26,6 +26,7 @@ package jenkins.widgets;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assume.assumeFalse;
@@ -47,6 +48,9 @@ import java.io.IOException;
 import java.util.Optional;
 import java.util.SortedMap;
 import jenkins.model.Jenkins;
+import jenkins.model.lazy.BuildSummaryIndex;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
 import org.htmlunit.html.DomNode;
 import org.htmlunit.html.DomNodeList;
 import org.htmlunit.html.HtmlPage;
@@ -177,6 +181,35 @@ public class BuildTimeTrendTest {
         // with the correction, the last cell is just empty instead of throwing the TypeError
     }
 
+    @Test
+    public void withBuildSummaries() throws Exception {
+        BuildSummaryIndex.ENABLED = true;
+        try {
+            FreeStyleProject p = j.createFreeStyleProject();
+            j.buildAndAssertSuccess(p);
+            j.buildAndAssertSuccess(p);
+            p._getRuns().purgeCache();
+
+            JSONArray data = j.executeOnServer(() -> {
+                BuildTimeTrend trend = new BuildTimeTrend();
+                trend.setJob(p);
+                trend.compute();
+                return (JSONArray) trend.data();
+            });
+            assertEquals(2, data.size());
+            JSONObject latest = data.getJSONObject(0);
+            assertEquals(2, latest.getInt("number"));
+            assertEquals("#2", latest.getString("displayName"));
+            assertEquals("blue", latest.getString("iconName"));
+            assertEquals(hudson.model.Messages.Hudson_Computer_DisplayName(), latest.getString("builtOnStr"));
+            assertTrue(latest.getString("consoleUrl").endsWith("/" + p.getUrl() + "2/console"));
+            // nothing needed to be loaded
+            assertTrue(p._getRuns().getLoadedBuilds().isEmpty());
+        } finally {
+            BuildSummaryIndex.ENABLED = false;
+        }
+    }
+
     public static class NonAbstractBuild extends Run<NonAbstractJob, NonAbstractBuild> {
         protected NonAbstractBuild(@NonNull NonAbstractJob job) throws IOException {
             super(job);